@@ -4,6 +4,8 @@ import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.*;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalServerChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
@@ -33,6 +35,10 @@ import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by mwei on 9/16/15.
+ *
+ * Besides its TCP port, every server also listens on an in-JVM local address (see {@link #getLocalAddress(int)}),
+ * which clients in the same process may connect to with the "transport=local" protocol option. Messages on the
+ * local transport are handed over as buffers without copying or framing.
  */
 @Slf4j
 public abstract class AbstractNettyServer implements ICorfuDBServer {
@@ -64,10 +70,46 @@ public abstract class AbstractNettyServer implements ICorfuDBServer {
      */
     Long epoch;
 
+    /**
+     * The number of requests a client may have outstanding on a connection, advertised to clients
+     * when they connect. Set by the "maxOutstandingRequests" configuration key. The budget is only
+     * enforced by the client (see NettyRPCChannelInboundHandlerAdapter): the server does not count the
+     * requests outstanding on a connection, and serves every request it receives.
+     */
+    @Getter
+    int maxOutstandingRequests;
+
+    /**
+     * The number of request bytes a client may have outstanding on a connection, advertised to clients
+     * when they connect. Set by the "maxOutstandingBytes" configuration key. Like the request budget, it is
+     * only enforced by the client; the server only rejects single frames larger than it.
+     */
+    @Getter
+    long maxOutstandingBytes;
+
+    /**
+     * The size above which responses are sent in chunks, set by the "chunkSize" configuration key.
+     */
+    @Getter
+    int chunkSize;
+
+    public static final int DEFAULT_MAX_OUTSTANDING_REQUESTS = 1024;
+    public static final long DEFAULT_MAX_OUTSTANDING_BYTES = 64 * 1024 * 1024;
+
     EventLoopGroup bossGroup;
     EventLoopGroup workerGroup;
     EventExecutorGroup ee;
 
+    /** Get the in-JVM local address a server listening on the given port also listens on.
+     *
+     * @param port  The TCP port of the server.
+     * @return      The local address of the server.
+     */
+    public static LocalAddress getLocalAddress(int port)
+    {
+        return new LocalAddress("corfu-" + port);
+    }
+
     @Override
     public ICorfuDBServer getInstance(Map<String, Object> configuration) {
         baseParseConfiguration(configuration);
@@ -97,9 +139,24 @@ public abstract class AbstractNettyServer implements ICorfuDBServer {
         }
 
         epoch = 0L;
+        maxOutstandingRequests = ((Number) configuration.getOrDefault("maxOutstandingRequests",
+                DEFAULT_MAX_OUTSTANDING_REQUESTS)).intValue();
+        maxOutstandingBytes = ((Number) configuration.getOrDefault("maxOutstandingBytes",
+                DEFAULT_MAX_OUTSTANDING_BYTES)).longValue();
+        chunkSize = ((Number) configuration.getOrDefault("chunkSize",
+                NettyCorfuChunkCodec.DEFAULT_CHUNK_SIZE)).intValue();
         parseConfiguration(configuration);
     }
 
+    /** Get the largest frame accepted from a client, which is bounded by the outstanding byte budget.
+     *
+     * @return  The maximum frame length, in bytes.
+     */
+    int getMaxFrameLength()
+    {
+        return maxOutstandingBytes > 0 ? (int) Math.min(maxOutstandingBytes, Integer.MAX_VALUE) : Integer.MAX_VALUE;
+    }
+
     /** Process an incoming message
      *
      * @param msg   The message to process.
@@ -190,13 +247,28 @@ public abstract class AbstractNettyServer implements ICorfuDBServer {
                         @Override
                         public void initChannel(io.netty.channel.socket.SocketChannel ch) throws Exception {
                             ch.pipeline().addLast(new LengthFieldPrepender(4));
-                            ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(Integer.MAX_VALUE, 0, 4, 0, 4));
+                            ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(getMaxFrameLength(), 0, 4, 0, 4));
+                            ch.pipeline().addLast(new NettyCorfuChunkCodec(chunkSize, getMaxFrameLength()));
                             ch.pipeline().addLast(ee, new NettyCorfuMessageDecoder());
-                            ch.pipeline().addLast(ee, new NettyCorfuMessageEncoder());
+                            ch.pipeline().addLast(ee, new NettyCorfuMessageEncoder(null, chunkSize));
                             ch.pipeline().addLast(ee, new NettyServerHandler());
                         }
                     });
             ChannelFuture f = b.bind(port).sync();
+
+            // Local channels preserve message boundaries, so no framing is required.
+            ServerBootstrap lb = new ServerBootstrap();
+            lb.group(bossGroup, workerGroup)
+                    .channel(LocalServerChannel.class)
+                    .childHandler(new ChannelInitializer<Channel>() {
+                        @Override
+                        public void initChannel(Channel ch) throws Exception {
+                            ch.pipeline().addLast(ee, new NettyCorfuMessageDecoder());
+                            ch.pipeline().addLast(ee, new NettyCorfuMessageEncoder());
+                            ch.pipeline().addLast(ee, new NettyServerHandler());
+                        }
+                    });
+            lb.bind(getLocalAddress(port)).sync();
             while (running.get())
             {
                 try {
@@ -238,6 +310,11 @@ public abstract class AbstractNettyServer implements ICorfuDBServer {
                 reset();
             }
             break;
+            case HELLO: {
+                sendResponse(new NettyCorfuHelloMsg(((NettyCorfuHelloMsg) msg).isCompactHeader(),
+                        maxOutstandingRequests, maxOutstandingBytes), msg, ctx);
+            }
+            break;
             default:
                 processMessage(msg, ctx);
         }
@@ -247,15 +324,17 @@ public abstract class AbstractNettyServer implements ICorfuDBServer {
     public abstract void reset();
 
     /** Validate the epoch of a NettyCorfuMsg, and send a WRONG_EPOCH response if
-     * the server is in the wrong epoch. Ignored if the message type is reset (which
-     * is valid in any epoch).
+     * the server is in the wrong epoch. Ignored if the message type is reset or hello (which
+     * are valid in any epoch).
      * @param msg   The incoming message to validate.
      * @param ctx   The context of the channel handler.
      * @return      True, if the epoch is correct, but false otherwise.
      */
     public boolean validateEpoch(NettyCorfuMsg msg, ChannelHandlerContext ctx)
     {
-        if (msg.getMsgType() != NettyCorfuMsg.NettyCorfuMsgType.RESET && msg.getEpoch() != epoch)
+        if (msg.getMsgType() != NettyCorfuMsg.NettyCorfuMsgType.RESET
+                && msg.getMsgType() != NettyCorfuMsg.NettyCorfuMsgType.HELLO
+                && msg.getEpoch() != epoch)
         {
             NettyCorfuMsg m = new NettyCorfuMsg();
             m.setMsgType(NettyCorfuMsg.NettyCorfuMsgType.WRONG_EPOCH);
@@ -21,6 +21,10 @@ import com.google.common.collect.TreeRangeSet;
 import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -104,6 +108,40 @@ public class NettyLogUnitServer extends AbstractNettyServer {
      */
     RangeSet<Long> trimRange;
 
+    /**
+     * The longest a READ_WAIT request may wait for an address to be written, in milliseconds.
+     */
+    public static final long MAX_READ_WAIT = 60_000;
+
+    /**
+     * A READ_WAIT request parked until its address is written or filled, or its timeout elapses.
+     */
+    @RequiredArgsConstructor
+    class ReadWaiter {
+        final NettyLogUnitReadWaitMsg msg;
+        final ChannelHandlerContext ctx;
+        final AtomicBoolean released = new AtomicBoolean();
+        ScheduledFuture<?> timeout;
+
+        /** Answer the request with the current contents of the address, if it has not been answered yet. */
+        void release()
+        {
+            if (released.compareAndSet(false, true))
+            {
+                if (timeout != null)
+                {
+                    timeout.cancel(false);
+                }
+                read(msg, ctx);
+            }
+        }
+    }
+
+    /**
+     * READ_WAIT requests parked on empty addresses, by address.
+     */
+    ConcurrentHashMap<Long, Queue<ReadWaiter>> waitMap = new ConcurrentHashMap<>();
+
     @Override
     public void close() {
         if (gcThread != null)
@@ -142,6 +180,12 @@ public class NettyLogUnitServer extends AbstractNettyServer {
             case READ_REQUEST:
                 read((NettyLogUnitReadRequestMsg) msg, ctx);
             break;
+            case READ_WAIT:
+                readWait((NettyLogUnitReadWaitMsg) msg, ctx);
+            break;
+            case READ_MULTI_REQUEST:
+                readMulti((NettyLogUnitMultiReadRequestMsg) msg, ctx);
+            break;
             case GC_INTERVAL:
             {
                 NettyLogUnitGCIntervalMsg m = (NettyLogUnitGCIntervalMsg) msg;
@@ -157,6 +201,7 @@ public class NettyLogUnitServer extends AbstractNettyServer {
             {
                 NettyLogUnitFillHoleMsg m = (NettyLogUnitFillHoleMsg) msg;
                 dataCache.get(m.getAddress(), (address) -> new LogUnitEntry());
+                releaseWaiters(m.getAddress());
             }
             break;
             case TRIM:
@@ -187,6 +232,9 @@ public class NettyLogUnitServer extends AbstractNettyServer {
         dataCache = Caffeine.newBuilder()
                 .build(a -> null);
 
+        // Parked reads are answered with the (now empty) contents of their addresses.
+        waitMap.keySet().forEach(this::releaseWaiters);
+
         // Hints are always in memory and never persisted.
         /*
         hintCache = Caffeine.newBuilder()
@@ -201,23 +249,72 @@ public class NettyLogUnitServer extends AbstractNettyServer {
     /** Service an incoming read request. */
     public void read(NettyLogUnitReadRequestMsg msg, ChannelHandlerContext ctx)
     {
-        if (trimRange.contains (msg.getAddress()))
+        sendResponse(getReadResponse(msg.getAddress()), msg, ctx);
+    }
+
+    /** Service an incoming request to read several addresses. */
+    public void readMulti(NettyLogUnitMultiReadRequestMsg msg, ChannelHandlerContext ctx)
+    {
+        Map<Long, NettyLogUnitReadResponseMsg> responses = new LinkedHashMap<>();
+        msg.getAddresses().forEach(a -> responses.put(a, getReadResponse(a)));
+        sendResponse(new NettyLogUnitMultiReadResponseMsg(responses), msg, ctx);
+    }
+
+    /** Generate the response to a read of an address.
+     * @param address   The address read.
+     * @return          The read response for the address.
+     */
+    NettyLogUnitReadResponseMsg getReadResponse(long address)
+    {
+        if (trimRange.contains(address))
         {
-            sendResponse(new NettyLogUnitReadResponseMsg(ReadResultType.TRIMMED), msg, ctx);
+            return new NettyLogUnitReadResponseMsg(ReadResultType.TRIMMED);
         }
-        else
+        LogUnitEntry e = dataCache.get(address);
+        if (e == null)
         {
-            LogUnitEntry e = dataCache.get(msg.getAddress());
-            if (e == null)
-            {
-                sendResponse(new NettyLogUnitReadResponseMsg(ReadResultType.EMPTY), msg, ctx);
-            }
-            else if (e.isHole)
+            return new NettyLogUnitReadResponseMsg(ReadResultType.EMPTY);
+        }
+        else if (e.isHole)
+        {
+            return new NettyLogUnitReadResponseMsg(ReadResultType.FILLED_HOLE);
+        }
+        return new NettyLogUnitReadResponseMsg(e);
+    }
+
+    /** Service an incoming read request which waits for the address to be written, if it is empty. */
+    public void readWait(NettyLogUnitReadWaitMsg msg, ChannelHandlerContext ctx)
+    {
+        if (trimRange.contains(msg.getAddress()) || dataCache.get(msg.getAddress()) != null)
+        {
+            read(msg, ctx);
+            return;
+        }
+        ReadWaiter w = new ReadWaiter(msg, ctx);
+        waitMap.computeIfAbsent(msg.getAddress(), k -> new ConcurrentLinkedQueue<>()).add(w);
+        w.timeout = ctx.executor().schedule(() -> {
+            Queue<ReadWaiter> q = waitMap.get(msg.getAddress());
+            if (q != null)
             {
-                sendResponse(new NettyLogUnitReadResponseMsg(ReadResultType.FILLED_HOLE), msg, ctx);
-            } else {
-                sendResponse(new NettyLogUnitReadResponseMsg(e), msg, ctx);
+                q.remove(w);
             }
+            w.release();
+        }, Math.min(msg.getTimeout(), MAX_READ_WAIT), TimeUnit.MILLISECONDS);
+        // The address may have been written, and its waiters released, before this waiter was parked.
+        if (dataCache.get(msg.getAddress()) != null)
+        {
+            w.release();
+            releaseWaiters(msg.getAddress());
+        }
+    }
+
+    /** Answer every READ_WAIT request parked on an address, which has just been written or filled. */
+    void releaseWaiters(long address)
+    {
+        Queue<ReadWaiter> q = waitMap.remove(address);
+        if (q != null)
+        {
+            q.forEach(ReadWaiter::release);
         }
     }
 
@@ -234,6 +331,7 @@ public class NettyLogUnitServer extends AbstractNettyServer {
             e.getBuffer().retain();
             if (e == dataCache.get(msg.getAddress(), (address) -> e)) {
                 sendResponse(new NettyCorfuMsg(NettyCorfuMsg.NettyCorfuMsgType.ERROR_OK), msg, ctx);
+                releaseWaiters(msg.getAddress());
             }
             else
             {
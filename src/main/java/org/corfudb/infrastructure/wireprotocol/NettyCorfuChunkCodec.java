@@ -0,0 +1,162 @@
+package org.corfudb.infrastructure.wireprotocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.TooLongFrameException;
+import lombok.RequiredArgsConstructor;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Splits encoded messages larger than the chunk size into chunk frames, and reassembles received chunk
+ * frames into a CompositeByteBuf, so that neither end needs a large contiguous buffer for a large message.
+ *
+ * Every frame is prefixed with a flag byte which indicates whether it carries a whole message, or a chunk
+ * of one. The chunks of a large message are written one at a time, each once the previous one has been
+ * written to the socket, and smaller messages written in the meantime are sent between chunks, so a large
+ * message does not hold up the requests behind it. Large messages are sent one after another, so a
+ * receiver has at most one message under reassembly.
+ *
+ * The codec sits between the length field framing and the message codec, and must run on the
+ * event loop of the channel.
+ */
+public class NettyCorfuChunkCodec extends ChannelDuplexHandler {
+
+    /** The default size above which messages are sent in chunks, and the size of each chunk. */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    static final byte WHOLE = 0;
+    static final byte CHUNK = 1;
+    static final byte LAST_CHUNK = 2;
+
+    /** A large message waiting to be written in chunks. */
+    @RequiredArgsConstructor
+    static class ChunkedWrite {
+        final ByteBuf buffer;
+        final ChannelPromise promise;
+    }
+
+    /** The size of each chunk. */
+    final int chunkSize;
+
+    /** The largest message which will be reassembled. */
+    final int maxMessageLength;
+
+    /** Large messages being written, the head of which is being written now. */
+    final Queue<ChunkedWrite> chunkedWrites = new ArrayDeque<>();
+
+    /** The chunks of the message under reassembly, or null. */
+    CompositeByteBuf reassembly;
+
+    public NettyCorfuChunkCodec(int chunkSize, int maxMessageLength)
+    {
+        this.chunkSize = chunkSize;
+        this.maxMessageLength = maxMessageLength;
+    }
+
+    ByteBuf frame(ChannelHandlerContext ctx, byte flag, ByteBuf buffer)
+    {
+        return Unpooled.wrappedBuffer(ctx.alloc().buffer(1).writeByte(flag), buffer);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (!(msg instanceof ByteBuf))
+        {
+            ctx.write(msg, promise);
+            return;
+        }
+        ByteBuf buffer = (ByteBuf) msg;
+        if (buffer.readableBytes() <= chunkSize)
+        {
+            ctx.write(frame(ctx, WHOLE, buffer), promise);
+            return;
+        }
+        chunkedWrites.add(new ChunkedWrite(buffer, promise));
+        if (chunkedWrites.size() == 1)
+        {
+            writeNextChunk(ctx);
+        }
+    }
+
+    /** Write the next chunk of the large message at the head of the queue, if any.
+     * @param ctx   The context of this handler.
+     */
+    void writeNextChunk(ChannelHandlerContext ctx)
+    {
+        ChunkedWrite w = chunkedWrites.peek();
+        if (w == null)
+        {
+            return;
+        }
+        int length = Math.min(chunkSize, w.buffer.readableBytes());
+        boolean last = length == w.buffer.readableBytes();
+        ChannelFuture f = ctx.writeAndFlush(frame(ctx, last ? LAST_CHUNK : CHUNK, w.buffer.readSlice(length).retain()));
+        f.addListener(x -> {
+            // The write may already have been failed, if the channel went inactive.
+            if ((!x.isSuccess() || last) && chunkedWrites.remove(w))
+            {
+                w.buffer.release();
+                if (x.isSuccess()) {
+                    w.promise.trySuccess();
+                } else {
+                    w.promise.tryFailure(x.cause());
+                }
+            }
+            writeNextChunk(ctx);
+        });
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        ByteBuf buffer = (ByteBuf) msg;
+        byte flag = buffer.readByte();
+        if (flag == WHOLE)
+        {
+            ctx.fireChannelRead(buffer);
+            return;
+        }
+        if (reassembly == null)
+        {
+            reassembly = ctx.alloc().compositeBuffer(Integer.MAX_VALUE);
+        }
+        int length = buffer.readableBytes();
+        reassembly.addComponent(buffer);
+        reassembly.writerIndex(reassembly.writerIndex() + length);
+        if (reassembly.readableBytes() > maxMessageLength)
+        {
+            reassembly.release();
+            reassembly = null;
+            throw new TooLongFrameException("Chunked message exceeds " + maxMessageLength + " bytes");
+        }
+        if (flag == LAST_CHUNK)
+        {
+            ByteBuf message = reassembly;
+            reassembly = null;
+            ctx.fireChannelRead(message);
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (reassembly != null)
+        {
+            reassembly.release();
+            reassembly = null;
+        }
+        ChunkedWrite w;
+        while ((w = chunkedWrites.poll()) != null)
+        {
+            w.buffer.release();
+            w.promise.tryFailure(new ClosedChannelException());
+        }
+        super.channelInactive(ctx);
+    }
+}
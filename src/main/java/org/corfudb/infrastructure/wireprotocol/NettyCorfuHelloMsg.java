@@ -0,0 +1,72 @@
+package org.corfudb.infrastructure.wireprotocol;
+
+import io.netty.buffer.ByteBuf;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+
+/**
+ * The first message sent on a connection, used to negotiate the session.
+ *
+ * When compact headers are requested, the hello message is the last message sent with a full
+ * header in each direction: the client ID and epoch it carries are bound to the channel, and every
+ * message after it uses the compact header (see {@link NettyCorfuMsg}).
+ *
+ * The server's reply also advertises the flow control budgets of the connection: the client should not
+ * send new requests while either budget is used up by requests it has not yet received responses for.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class NettyCorfuHelloMsg extends NettyCorfuMsg {
+
+    /** Whether the messages following this one use compact headers. */
+    boolean compactHeader;
+
+    /** The number of requests a client may have outstanding on the connection, or 0 if unlimited. */
+    int maxOutstandingRequests;
+
+    /** The number of request bytes a client may have outstanding on the connection, or 0 if unlimited. */
+    long maxOutstandingBytes;
+
+    public NettyCorfuHelloMsg(boolean compactHeader)
+    {
+        this.msgType = NettyCorfuMsgType.HELLO;
+        this.compactHeader = compactHeader;
+    }
+
+    public NettyCorfuHelloMsg(boolean compactHeader, int maxOutstandingRequests, long maxOutstandingBytes)
+    {
+        this(compactHeader);
+        this.maxOutstandingRequests = maxOutstandingRequests;
+        this.maxOutstandingBytes = maxOutstandingBytes;
+    }
+
+    /**
+     * Serialize the message into the given bytebuffer.
+     *
+     * @param buffer The buffer to serialize to.
+     */
+    @Override
+    public void serialize(ByteBuf buffer) {
+        super.serialize(buffer);
+        buffer.writeBoolean(compactHeader);
+        buffer.writeInt(maxOutstandingRequests);
+        buffer.writeLong(maxOutstandingBytes);
+    }
+
+    /**
+     * Parse the rest of the message from the buffer. Classes that extend NettyCorfuMsg
+     * should parse their fields in this method.
+     *
+     * @param buffer
+     */
+    @Override
+    public void fromBuffer(ByteBuf buffer) {
+        super.fromBuffer(buffer);
+        compactHeader = buffer.readBoolean();
+        maxOutstandingRequests = buffer.readInt();
+        maxOutstandingBytes = buffer.readLong();
+    }
+}
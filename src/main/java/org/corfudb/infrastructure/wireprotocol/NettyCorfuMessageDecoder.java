@@ -6,18 +6,48 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
 
 import java.util.List;
+import java.util.UUID;
 
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * Created by mwei on 10/1/15.
+ *
+ * Decoders are per-channel: once a HELLO requesting compact headers has been read, every
+ * subsequent message on the channel is read with the compact header described in NettyCorfuMsg.
  */
 @Slf4j
 public class NettyCorfuMessageDecoder extends ByteToMessageDecoder {
 
+    /** The client ID bound to this channel, or null if compact headers are not in use. */
+    UUID clientID;
+
+    /** The epoch of the last message read on this channel. */
+    long epoch;
+
     @Override
     protected void decode(ChannelHandlerContext channelHandlerContext, ByteBuf byteBuf, List<Object> list) throws Exception {
-		list.add(NettyCorfuMsg.deserialize(byteBuf));
+        NettyCorfuMsg msg;
+        if (clientID != null)
+        {
+            boolean detached = (byteBuf.getByte(byteBuf.readerIndex()) & NettyCorfuMsg.COMPACT_DETACHED_FLAG) != 0;
+            msg = NettyCorfuMsg.deserializeCompact(byteBuf, clientID, epoch);
+            if (detached)
+            {
+                list.add(msg);
+                return;
+            }
+        }
+        else
+        {
+            msg = NettyCorfuMsg.deserialize(byteBuf);
+            if (msg instanceof NettyCorfuHelloMsg && ((NettyCorfuHelloMsg) msg).isCompactHeader())
+            {
+                clientID = msg.getClientID();
+            }
+        }
+        epoch = msg.getEpoch();
+		list.add(msg);
     }
 
 	@Override
@@ -5,18 +5,78 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.function.ObjIntConsumer;
+
 /**
  * Created by mwei on 10/1/15.
+ *
+ * Encoders are per-channel: once a HELLO requesting compact headers has been written, every
+ * subsequent message on the channel is written with the compact header described in NettyCorfuMsg.
+ *
+ * An optional listener is told the encoded size of every message, which clients use to account for
+ * the bytes they have outstanding. Messages larger than the chunk size are sent in chunks, and may be
+ * overtaken by smaller messages, so with compact headers they are written detached from the epoch of the channel.
  */
 @Slf4j
 public class NettyCorfuMessageEncoder extends MessageToByteEncoder<NettyCorfuMsg> {
 
+    /** Whether compact headers are in use on this channel. */
+    boolean compact = false;
+
+    /** The epoch of the last message written on this channel. */
+    long epoch;
+
+    /** Called with each message and its encoded size, or null. */
+    final ObjIntConsumer<NettyCorfuMsg> encodedListener;
+
+    /** The size above which encoded messages are sent in chunks. */
+    final int chunkSize;
+
+    public NettyCorfuMessageEncoder()
+    {
+        this(null, Integer.MAX_VALUE);
+    }
+
+    public NettyCorfuMessageEncoder(ObjIntConsumer<NettyCorfuMsg> encodedListener, int chunkSize)
+    {
+        this.encodedListener = encodedListener;
+        this.chunkSize = chunkSize;
+    }
+
     @Override
     protected void encode(ChannelHandlerContext channelHandlerContext,
                           NettyCorfuMsg nettyCorfuMsg,
                           ByteBuf byteBuf) throws Exception {
         try {
+            int start = byteBuf.writerIndex();
             nettyCorfuMsg.serialize(byteBuf);
+            if (compact)
+            {
+                // Overwrite the tail of the full header with the compact header, and skip the rest.
+                int end = byteBuf.writerIndex();
+                boolean detached = end - start > chunkSize;
+                boolean withEpoch = detached || nettyCorfuMsg.getEpoch() != epoch;
+                int headerStart = start + NettyCorfuMsg.HEADER_LENGTH
+                        - nettyCorfuMsg.getCompactHeaderLength(withEpoch);
+                byteBuf.writerIndex(headerStart);
+                nettyCorfuMsg.serializeCompactHeader(byteBuf, withEpoch, detached);
+                byteBuf.writerIndex(end);
+                byteBuf.readerIndex(headerStart);
+                if (!detached)
+                {
+                    epoch = nettyCorfuMsg.getEpoch();
+                }
+            }
+            else if (nettyCorfuMsg instanceof NettyCorfuHelloMsg
+                    && ((NettyCorfuHelloMsg) nettyCorfuMsg).isCompactHeader())
+            {
+                compact = true;
+                epoch = nettyCorfuMsg.getEpoch();
+            }
+            if (encodedListener != null)
+            {
+                encodedListener.accept(nettyCorfuMsg, byteBuf.readableBytes());
+            }
         } catch (Exception e)
         {
             log.error("Error during serialization!", e);
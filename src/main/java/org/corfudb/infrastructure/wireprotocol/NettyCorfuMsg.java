@@ -2,6 +2,7 @@ package org.corfudb.infrastructure.wireprotocol;
 
 import io.netty.buffer.ByteBuf;
 import lombok.*;
+import org.corfudb.util.Varint;
 
 import java.util.Arrays;
 import java.util.Map;
@@ -34,6 +35,7 @@ public class NettyCorfuMsg {
         SET_EPOCH(3, NettyCorfuSetEpochMsg.class),
         ACK(4, NettyCorfuMsg.class),
         WRONG_EPOCH(5, NettyCorfuMsg.class),
+        HELLO(6, NettyCorfuHelloMsg.class),
 
         // StreamingSequencer Messages
         TOKEN_REQ(20, NettyStreamingServerTokenRequestMsg.class),
@@ -47,6 +49,9 @@ public class NettyCorfuMsg {
         FILL_HOLE(34, NettyLogUnitFillHoleMsg.class),
         FORCE_GC(35, NettyCorfuMsg.class),
         GC_INTERVAL(36, NettyLogUnitGCIntervalMsg.class),
+        READ_WAIT(37, NettyLogUnitReadWaitMsg.class),
+        READ_MULTI_REQUEST(38, NettyLogUnitMultiReadRequestMsg.class),
+        READ_MULTI_RESPONSE(39, NettyLogUnitMultiReadResponseMsg.class),
 
         // Logging Unit Error Codes
         ERROR_OK(40, NettyCorfuMsg.class),
@@ -73,7 +78,24 @@ public class NettyCorfuMsg {
         | client ID(16) | request ID(8) |  epoch(8)   |  type(1)  |
         |  MSB  |  LSB  |               |             |           |
         0       7       15              23            31          32
+
+       On a channel which negotiated compact headers (see NettyCorfuHelloMsg), the client ID is
+       bound to the channel and the header is instead:
+        | type(1) | request ID(varint, 1-10) | epoch(8), only if the E or D bit is set |
+        |E|D| type|
+       where the E bit is set only when the epoch differs from the previous message on the channel.
+       The D bit marks a message which is sent in chunks (see NettyCorfuChunkCodec), and so may arrive
+       after messages encoded after it: it always carries its epoch, and is not "previous" to any message.
 */
+    /** The length of the full header, in bytes. */
+    public static final int HEADER_LENGTH = 33;
+
+    /** Set in the type byte of a compact header when the epoch follows the request ID. */
+    static final int COMPACT_EPOCH_FLAG = 0x80;
+
+    /** Set in the type byte of a compact header when the message does not update the epoch of the channel. */
+    static final int COMPACT_DETACHED_FLAG = 0x40;
+
     /** Serialize the message into the given bytebuffer.
      * @param buffer    The buffer to serialize to.
      * */
@@ -85,6 +107,27 @@ public class NettyCorfuMsg {
         buffer.writeByte(msgType.asByte());
     }
 
+    /** Get the length of the compact header for this message.
+     * @param withEpoch True, if the epoch is to be included in the header.
+     * @return          The length of the compact header, in bytes.
+     */
+    public int getCompactHeaderLength(boolean withEpoch) {
+        return 1 + Varint.varLongSize(requestID) + (withEpoch ? 8 : 0);
+    }
+
+    /** Serialize the compact header of this message into the given bytebuffer.
+     * @param buffer    The buffer to serialize to.
+     * @param withEpoch True, if the epoch is to be included in the header.
+     * @param detached  True, if the message does not update the epoch of the channel. Requires withEpoch.
+     */
+    public void serializeCompactHeader(ByteBuf buffer, boolean withEpoch, boolean detached) {
+        buffer.writeByte(msgType.asByte() | (withEpoch ? COMPACT_EPOCH_FLAG : 0) | (detached ? COMPACT_DETACHED_FLAG : 0));
+        Varint.writeVarLong(requestID, buffer);
+        if (withEpoch) {
+            buffer.writeLong(epoch);
+        }
+    }
+
     /** Parse the rest of the message from the buffer. Classes that extend NettyCorfuMsg
      * should parse their fields in this method.
      * @param buffer
@@ -106,12 +149,33 @@ public class NettyCorfuMsg {
      * @param buffer    The buffer to deserialize.
      * @return          The corresponding message.
      */
-    @SneakyThrows
     public static NettyCorfuMsg deserialize(ByteBuf buffer) {
         UUID clientID = new UUID(buffer.readLong(), buffer.readLong());
         long requestID = buffer.readLong();
         long epoch = buffer.readLong();
-        NettyCorfuMsgType message = typeMap.get(buffer.readByte());
+        return deserialize(typeMap.get(buffer.readByte()), clientID, requestID, epoch, buffer);
+    }
+
+    /** Take the given bytebuffer, which starts with a compact header, and deserialize it into a message.
+     *
+     * @param buffer    The buffer to deserialize.
+     * @param clientID  The client ID bound to the channel.
+     * @param epoch     The epoch of the previous message on the channel, used if the header omits it.
+     * @return          The corresponding message.
+     */
+    public static NettyCorfuMsg deserializeCompact(ByteBuf buffer, UUID clientID, long epoch) {
+        byte type = buffer.readByte();
+        long requestID = Varint.readVarLong(buffer);
+        if ((type & COMPACT_EPOCH_FLAG) != 0) {
+            epoch = buffer.readLong();
+        }
+        return deserialize(typeMap.get((byte) (type & ~(COMPACT_EPOCH_FLAG | COMPACT_DETACHED_FLAG))),
+                clientID, requestID, epoch, buffer);
+    }
+
+    @SneakyThrows
+    static NettyCorfuMsg deserialize(NettyCorfuMsgType message, UUID clientID, long requestID, long epoch,
+                                     ByteBuf buffer) {
         NettyCorfuMsg msg = message.messageType.getConstructor().newInstance();
         msg.clientID = clientID;
         msg.requestID = requestID;
@@ -0,0 +1,61 @@
+package org.corfudb.infrastructure.wireprotocol;
+
+import io.netty.buffer.ByteBuf;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * A request to read several addresses from a log unit, which is answered with a single
+ * NettyLogUnitMultiReadResponseMsg.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class NettyLogUnitMultiReadRequestMsg extends NettyCorfuMsg {
+
+    /** The addresses to read from */
+    List<Long> addresses;
+
+    public NettyLogUnitMultiReadRequestMsg(List<Long> addresses)
+    {
+        this.msgType = NettyCorfuMsgType.READ_MULTI_REQUEST;
+        this.addresses = addresses;
+    }
+
+    /**
+     * Serialize the message into the given bytebuffer.
+     *
+     * @param buffer The buffer to serialize to.
+     */
+    @Override
+    public void serialize(ByteBuf buffer) {
+        super.serialize(buffer);
+        buffer.writeInt(addresses.size());
+        for (long address : addresses)
+        {
+            buffer.writeLong(address);
+        }
+    }
+
+    /**
+     * Parse the rest of the message from the buffer. Classes that extend NettyCorfuMsg
+     * should parse their fields in this method.
+     *
+     * @param buffer
+     */
+    @Override
+    public void fromBuffer(ByteBuf buffer) {
+        super.fromBuffer(buffer);
+        int count = buffer.readInt();
+        addresses = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            addresses.add(buffer.readLong());
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.corfudb.infrastructure.wireprotocol;
+
+import io.netty.buffer.ByteBuf;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * The response to a NettyLogUnitMultiReadRequestMsg, which carries a read response for each address read.
+ *
+ * Each read response is embedded whole, header included, after the address it answers.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class NettyLogUnitMultiReadResponseMsg extends NettyCorfuMsg {
+
+    /** The read responses, by address. */
+    Map<Long, NettyLogUnitReadResponseMsg> responses;
+
+    public NettyLogUnitMultiReadResponseMsg(Map<Long, NettyLogUnitReadResponseMsg> responses)
+    {
+        this.msgType = NettyCorfuMsgType.READ_MULTI_RESPONSE;
+        this.responses = responses;
+    }
+
+    /**
+     * Serialize the message into the given bytebuffer.
+     *
+     * @param buffer The buffer to serialize to.
+     */
+    @Override
+    public void serialize(ByteBuf buffer) {
+        super.serialize(buffer);
+        buffer.writeInt(responses.size());
+        for (Map.Entry<Long, NettyLogUnitReadResponseMsg> e : responses.entrySet())
+        {
+            buffer.writeLong(e.getKey());
+            e.getValue().copyBaseFields(this);
+            e.getValue().serialize(buffer);
+        }
+    }
+
+    /**
+     * Parse the rest of the message from the buffer. Classes that extend NettyCorfuMsg
+     * should parse their fields in this method.
+     *
+     * @param buffer
+     */
+    @Override
+    public void fromBuffer(ByteBuf buffer) {
+        super.fromBuffer(buffer);
+        int count = buffer.readInt();
+        responses = new LinkedHashMap<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            long address = buffer.readLong();
+            responses.put(address, (NettyLogUnitReadResponseMsg) NettyCorfuMsg.deserialize(buffer));
+        }
+    }
+}
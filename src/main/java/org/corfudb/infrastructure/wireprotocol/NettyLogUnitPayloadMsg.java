@@ -24,6 +24,10 @@ public class NettyLogUnitPayloadMsg extends NettyLogUnitMetadataMsg {
     @Setter
     ByteBuf data;
 
+    /** The size of the payload, in bytes, once it has been serialized to send the message, or 0. */
+    @Getter
+    volatile int serializedSize;
+
     /** The serializer to use. */
     @Getter
     @Setter
@@ -48,6 +52,24 @@ public class NettyLogUnitPayloadMsg extends NettyLogUnitMetadataMsg {
         return data.duplicate();
     }
 
+    /** Release the received payload without deserializing it. */
+    public void releaseData()
+    {
+        if (data != null)
+        {
+            data.release();
+            data = null;
+        }
+    }
+
+    /** Get the size of the received payload, in its serialized form.
+     * @return  The number of bytes in the received payload, or 0, if no payload was received.
+     */
+    public int getDataSize()
+    {
+        return data == null ? 0 : data.readableBytes();
+    }
+
     /**
      * Serialize the message into the given bytebuffer.
      *
@@ -62,7 +84,8 @@ public class NettyLogUnitPayloadMsg extends NettyLogUnitMetadataMsg {
             serializer.serialize(payload, buffer);
             int finalIndex = buffer.writerIndex();
             //this is the total size written by the serializer
-            buffer.setInt(index, finalIndex - index - 4);
+            serializedSize = finalIndex - index - 4;
+            buffer.setInt(index, serializedSize);
         }
         else if (data != null)
         {
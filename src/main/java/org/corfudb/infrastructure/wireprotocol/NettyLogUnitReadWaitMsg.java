@@ -0,0 +1,50 @@
+package org.corfudb.infrastructure.wireprotocol;
+
+import io.netty.buffer.ByteBuf;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+
+/**
+ * A read request which, if the address is empty, waits on the log unit until the address is written
+ * or filled, or the timeout elapses, rather than returning EMPTY immediately.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class NettyLogUnitReadWaitMsg extends NettyLogUnitReadRequestMsg {
+
+    /** The maximum time to wait for the address to be written, in milliseconds. */
+    long timeout;
+
+    public NettyLogUnitReadWaitMsg(long address, long timeout)
+    {
+        super(address);
+        this.msgType = NettyCorfuMsgType.READ_WAIT;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Serialize the message into the given bytebuffer.
+     *
+     * @param buffer The buffer to serialize to.
+     */
+    @Override
+    public void serialize(ByteBuf buffer) {
+        super.serialize(buffer);
+        buffer.writeLong(timeout);
+    }
+
+    /**
+     * Parse the rest of the message from the buffer. Classes that extend NettyCorfuMsg
+     * should parse their fields in this method.
+     *
+     * @param buffer
+     */
+    @Override
+    public void fromBuffer(ByteBuf buffer) {
+        super.fromBuffer(buffer);
+        timeout = buffer.readLong();
+    }
+}
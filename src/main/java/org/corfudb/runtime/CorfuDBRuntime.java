@@ -69,6 +69,9 @@ public class CorfuDBRuntime implements AutoCloseable {
 
     private ICorfuDBInstance localInstance;
 
+    /** Options which tune the client, such as the sizes of its caches. */
+    private Map<String, Object> options;
+
     private static final Logger log = LoggerFactory.getLogger(CorfuDBRuntime.class);
 
     private class BooleanLock
@@ -97,7 +100,20 @@ public class CorfuDBRuntime implements AutoCloseable {
      *                              stream unit and sequencer.
      */
     public CorfuDBRuntime(String configurationString) {
+        this(configurationString, Collections.emptyMap());
+    }
+
+    /**
+     * Constructor. Generates an instance of a CorfuDB client with the given options.
+     *
+     * @param configurationString   A configuration string which describes how to reach the
+     *                              CorfuDB instance.
+     * @param options               Options which tune the client, for example "cacheMaximumWeight",
+     *                              the number of bytes of log entries the client caches.
+     */
+    public CorfuDBRuntime(String configurationString, Map<String, Object> options) {
         this.configurationString = configurationString;
+        this.options = options;
 
         viewLock = new StampedLock();
         remoteView = new org.corfudb.runtime.view.RemoteLogView();
@@ -176,6 +192,15 @@ public class CorfuDBRuntime implements AutoCloseable {
         return localInstance;
     }
 
+    /**
+     * Get the options this client was created with.
+     * @return  The options which tune this client.
+     */
+    public Map<String, Object> getOptions()
+    {
+        return options;
+    }
+
     /**
      * Retrieves the CorfuDBView from a configuration string. The view manager
      * uses this method to fetch the most recent view.
@@ -382,6 +407,10 @@ public class CorfuDBRuntime implements AutoCloseable {
     {
         closed = true;
         viewManagerThread.interrupt();
+        if (localInstance != null)
+        {
+            localInstance.close();
+        }
     }
 
     /**
@@ -472,7 +472,7 @@ public class CDBConcurrentSkipListMap<K,V> implements ICorfuDBObject<ConcurrentS
      */
     @Override
     public V put(K key, V value) {
-        return mutatorAccessorHelper((map, opts) -> map.put(key, value));
+        return mutatorAccessorHelper(key, (map, opts) -> map.put(key, value));
     }
 
     /**
@@ -507,7 +507,7 @@ public class CDBConcurrentSkipListMap<K,V> implements ICorfuDBObject<ConcurrentS
      */
     @Override
     public V remove(Object key) {
-        return mutatorAccessorHelper((map, opts) -> map.remove(key));
+        return mutatorAccessorHelper(key, (map, opts) -> map.remove(key));
     }
 
     /**
@@ -664,7 +664,7 @@ public class CDBConcurrentSkipListMap<K,V> implements ICorfuDBObject<ConcurrentS
      */
     @Override
     public V putIfAbsent(K key, V value) {
-        return mutatorAccessorHelper((map, opts) -> map.putIfAbsent(key, value));
+        return mutatorAccessorHelper(key, (map, opts) -> map.putIfAbsent(key, value));
     }
 
     /**
@@ -696,7 +696,7 @@ public class CDBConcurrentSkipListMap<K,V> implements ICorfuDBObject<ConcurrentS
      */
     @Override
     public boolean remove(Object key, Object value) {
-        return mutatorAccessorHelper((map, opts) -> map.remove(key, value));
+        return mutatorAccessorHelper(key, (map, opts) -> map.remove(key, value));
     }
 
     /**
@@ -729,7 +729,7 @@ public class CDBConcurrentSkipListMap<K,V> implements ICorfuDBObject<ConcurrentS
      */
     @Override
     public boolean replace(K key, V oldValue, V newValue) {
-        return mutatorAccessorHelper((map, opts) -> map.replace(key, oldValue, newValue));
+        return mutatorAccessorHelper(key, (map, opts) -> map.replace(key, oldValue, newValue));
     }
 
     /**
@@ -764,6 +764,6 @@ public class CDBConcurrentSkipListMap<K,V> implements ICorfuDBObject<ConcurrentS
      */
     @Override
     public V replace(K key, V value) {
-        return mutatorAccessorHelper((map, opts) -> map.replace(key, value));
+        return mutatorAccessorHelper(key, (map, opts) -> map.replace(key, value));
     }
 }
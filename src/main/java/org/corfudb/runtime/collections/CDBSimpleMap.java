@@ -145,7 +145,7 @@ public class CDBSimpleMap<K,V> implements ICorfuDBObject<ConcurrentHashMap<K,V>>
      */
     @Override
     public V put(K key, V value) {
-        return mutatorAccessorHelper((map, opts) -> {
+        return mutatorAccessorHelper(key, (map, opts) -> {
                     return map.put(key, value);
                 }
         );
@@ -170,7 +170,7 @@ public class CDBSimpleMap<K,V> implements ICorfuDBObject<ConcurrentHashMap<K,V>>
      *                                       or value prevents it from being stored in this map
      */
     public void fastPut(K key, V value) {
-        mutatorHelper((map, opts) -> map.put(key,value));
+        mutatorHelper(key, (map, opts) -> map.put(key,value));
     }
 
     /**
@@ -205,7 +205,7 @@ public class CDBSimpleMap<K,V> implements ICorfuDBObject<ConcurrentHashMap<K,V>>
      */
     @Override
     public V remove(Object key) {
-        return mutatorAccessorHelper((map, opts) -> {
+        return mutatorAccessorHelper(key, (map, opts) -> {
             return map.remove(key);
         });
     }
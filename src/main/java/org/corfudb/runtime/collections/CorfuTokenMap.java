@@ -143,7 +143,7 @@ public class CorfuTokenMap<K,V> implements ICorfuDBObject<HashMap<K,V>>, Concurr
      *                                       or value prevents it from being stored in this map
      */
     @Override
-    @MutatorAccessor
+    @MutatorAccessor(conflictKey = 0)
     public V put(K key, V value) {
         return getState().put(key,value);
     }
@@ -179,7 +179,7 @@ public class CorfuTokenMap<K,V> implements ICorfuDBObject<HashMap<K,V>>, Concurr
      *                                       (<a href="{@docRoot}/java/util/Collection.html#optional-restrictions">optional</a>)
      */
     @Override
-    @MutatorAccessor
+    @MutatorAccessor(conflictKey = 0)
     public V remove(Object key) {
         return getState().remove(key);
     }
@@ -318,7 +318,7 @@ public class CorfuTokenMap<K,V> implements ICorfuDBObject<HashMap<K,V>>, Concurr
      * inappropriate default provided in {@code Map}.
      */
     @Override
-    @MutatorAccessor
+    @MutatorAccessor(conflictKey = 0)
     public V putIfAbsent(K key, V value) {
         return getState().put(key, value);
     }
@@ -351,7 +351,7 @@ public class CorfuTokenMap<K,V> implements ICorfuDBObject<HashMap<K,V>>, Concurr
      * inappropriate default provided in {@code Map}.
      */
     @Override
-    @MutatorAccessor
+    @MutatorAccessor(conflictKey = 0)
     public boolean remove(Object key, Object value) {
         return getState().remove(key, value);
     }
@@ -385,7 +385,7 @@ public class CorfuTokenMap<K,V> implements ICorfuDBObject<HashMap<K,V>>, Concurr
      * inappropriate default provided in {@code Map}.
      */
     @Override
-    @MutatorAccessor
+    @MutatorAccessor(conflictKey = 0)
     public boolean replace(K key, V oldValue, V newValue) {
         return replace(key, oldValue, newValue);
     }
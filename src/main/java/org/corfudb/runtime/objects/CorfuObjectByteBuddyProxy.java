@@ -3,15 +3,20 @@ package org.corfudb.runtime.objects;
 import lombok.extern.slf4j.Slf4j;
 import net.bytebuddy.ByteBuddy;
 import net.bytebuddy.NamingStrategy;
+import net.bytebuddy.description.modifier.Visibility;
+import net.bytebuddy.dynamic.DynamicType;
 import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import net.bytebuddy.implementation.FieldAccessor;
 import net.bytebuddy.implementation.MethodDelegation;
 import net.bytebuddy.implementation.SuperMethodCall;
 import net.bytebuddy.implementation.bind.annotation.*;
 import org.corfudb.runtime.smr.ICorfuDBObject;
+import org.corfudb.runtime.smr.ISMREngine;
 import org.corfudb.runtime.smr.smrprotocol.MethodTokenSMRCommand;
 import org.corfudb.runtime.stream.ITimestamp;
 import org.corfudb.runtime.view.ICorfuDBInstance;
 
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
@@ -89,8 +94,13 @@ public class CorfuObjectByteBuddyProxy implements CorfuObjectProxy {
                 throws Exception
         {
             CompletableFuture<Object> cf = new CompletableFuture<>();
-            obj.getSMREngine().proposeAsync(new MethodTokenSMRCommand<>(getShortMethodName(method), allArguments), cf, false)
-                              .thenAccept(x -> obj.getSMREngine().sync((ITimestamp) x));
+            String token = getShortMethodName(method);
+            int methodId = MethodDispatchTable.forClass(obj.getClass()).getMethodId(token);
+            // The command completes when the engine it was proposed to applies it, so sync that engine, even if
+            // the instance has since dropped it for another.
+            ISMREngine engine = obj.getSMREngine();
+            engine.proposeAsync(new MethodTokenSMRCommand<>(token, methodId, allArguments), cf, false)
+                  .thenAccept(x -> engine.sync((ITimestamp) x));
             return cf.join();
         }
     }
@@ -102,7 +112,7 @@ public class CorfuObjectByteBuddyProxy implements CorfuObjectProxy {
                                              @Origin Method method)
                 throws Exception
         {
-            obj.getSMREngine().sync(null);
+            obj.getSMREngine().syncForRead();
             return originalCall.call();
         }
     }
@@ -119,31 +129,103 @@ public class CorfuObjectByteBuddyProxy implements CorfuObjectProxy {
     }
 
 
+    /** The generated subclasses of Corfu object classes which are bound to an SMR engine given when an object
+     * is built, rather than to the engine the instance keeps for its stream, by Corfu object class. */
+    final ClassValue<Class<?>> boundTypes = new ClassValue<Class<?>>() {
+        @Override
+        protected Class<?> computeValue(Class<?> corfuObjectClass) {
+            Class<?> type = getBuilder(corfuObjectClass)
+                    .defineField(BOUND_STREAM_ID, UUID.class, Visibility.PRIVATE)
+                    .defineField(BOUND_INSTANCE, ICorfuDBInstance.class, Visibility.PRIVATE)
+                    .defineField(BOUND_ENGINE, ISMREngine.class, Visibility.PRIVATE)
+                    .method(named("getStreamID")).intercept(FieldAccessor.ofField(BOUND_STREAM_ID))
+                    .method(named("getInstance")).intercept(FieldAccessor.ofField(BOUND_INSTANCE))
+                    .method(named("getSMREngine").or(named("getUnderlyingSMREngine")))
+                        .intercept(FieldAccessor.ofField(BOUND_ENGINE))
+                    .make()
+                    .load(getClass().getClassLoader(), ClassLoadingStrategy.Default.INJECTION)
+                    .getLoaded();
+            MethodDispatchTable.forClass(type);
+            return type;
+        }
+    };
+
+    /** The fields of a bound object which hold what the object is bound to. */
+    static final String BOUND_STREAM_ID = "boundStreamID";
+    static final String BOUND_INSTANCE = "boundInstance";
+    static final String BOUND_ENGINE = "boundEngine";
+
+    /** Get a builder of the generated subclass of a Corfu object class.
+     * @param corfuObjectClass  The Corfu object class.
+     * @return                  The builder, which has yet to be given the stream and instance of the objects.
+     */
+    DynamicType.Builder<?> getBuilder(Class<?> corfuObjectClass) {
+        return new ByteBuddy()
+                .subclass(corfuObjectClass)
+                .method(named("getUnderlyingType")).intercept(FixedValue.value(getStateType(corfuObjectClass)))
+                    // Redirected methods.
+                .method(named("getState"))
+                    .intercept(MethodDelegation.to(new CorfuObjectByteBuddyInterceptor()))
+                .method(isAnnotatedWith(MutatorAccessor.class))
+                    .intercept(MethodDelegation.to(new CorfuObjectMutatorAccessorInterceptor()))
+                .method(isAnnotatedWith(Accessor.class))
+                    .intercept(MethodDelegation.to(new CorfuObjectAccessorInterceptor()))
+                .method(isAnnotatedWith(Mutator.class))
+                .intercept(MethodDelegation.to(new CorfuObjectMutatorInterceptor()));
+    }
+
     @Override
     public Class<?> getType(Class<?> corfuObjectClass, ICorfuDBInstance instance, UUID id) {
         try {
-            return new ByteBuddy()
-                    .subclass(corfuObjectClass)
-                        // Dynamically generate base methods.
-                        .method(named("getStreamID")).intercept(FixedValue.value(id))
-                        .method(named("getInstance")).intercept(FixedValue.value(instance))
-                    .method(named("getUnderlyingType")).intercept(FixedValue.value(getStateType(corfuObjectClass)))
-                        // Redirected methods.
-                    .method(named("getState"))
-                        .intercept(MethodDelegation.to(new CorfuObjectByteBuddyInterceptor()))
-                    .method(isAnnotatedWith(MutatorAccessor.class))
-                        .intercept(MethodDelegation.to(new CorfuObjectMutatorAccessorInterceptor()))
-                    .method(isAnnotatedWith(Accessor.class))
-                        .intercept(MethodDelegation.to(new CorfuObjectAccessorInterceptor()))
-                    .method(isAnnotatedWith(Mutator.class))
-                    .intercept(MethodDelegation.to(new CorfuObjectMutatorInterceptor()))
+            Class<?> type = getBuilder(corfuObjectClass)
+                    // Dynamically generate base methods.
+                    .method(named("getStreamID")).intercept(FixedValue.value(id))
+                    .method(named("getInstance")).intercept(FixedValue.value(instance))
                     .make()
                     .load(getClass().getClassLoader(), ClassLoadingStrategy.Default.INJECTION)
                     .getLoaded();
+            // Build the dispatch table now, rather than when the first command is applied.
+            MethodDispatchTable.forClass(type);
+            return type;
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Get an object whose state is that of a given SMR engine, rather than of the engine the instance keeps
+     * for its stream. Commands which the engine applies by method token run against this object. The class
+     * of the object is generated once per Corfu object class, and the engine set on each object built.
+     *
+     * @param corfuObjectClass  The Corfu object class.
+     * @param instance          The instance the object belongs to.
+     * @param id                The ID of the stream the object is backed by.
+     * @param engine            The SMR engine the object is bound to.
+     * @return                  The object.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getObject(Class<T> corfuObjectClass, ICorfuDBInstance instance, UUID id, ISMREngine<?> engine) {
+        try {
+            Class<?> type = boundTypes.get(corfuObjectClass);
+            Object o = type.newInstance();
+            setField(type, o, BOUND_STREAM_ID, id);
+            setField(type, o, BOUND_INSTANCE, instance);
+            setField(type, o, BOUND_ENGINE, engine);
+            return (T) o;
         }
         catch (Exception e)
         {
             throw new RuntimeException(e);
         }
     }
+
+    static void setField(Class<?> type, Object o, String name, Object value)
+            throws ReflectiveOperationException
+    {
+        Field f = type.getDeclaredField(name);
+        f.setAccessible(true);
+        f.set(o, value);
+    }
 }
@@ -0,0 +1,216 @@
+package org.corfudb.runtime.objects;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps the method tokens of a generated Corfu object class to the methods which apply them.
+ *
+ * A method token names a method intercepted by the proxy, such as "put(java.lang.Object,java.lang.Object)".
+ * Applying a token calls the original implementation of the method, which the proxy keeps in a generated
+ * accessor method. The table finds each accessor once, and keeps a method handle to it, adapted to take
+ * the target object and an array of arguments, so applying a token is a map lookup and a direct call
+ * instead of a scan of the declared methods of the class and a reflective call.
+ *
+ * Each token also has a numeric method ID, which log entries carry in place of the token. The ID is derived
+ * from the token alone (from its hash), so it is the same in every client, and stays the same as methods
+ * are added to or removed from the class. Since entries carrying an ID may already be in the log, a token is
+ * never left without its ID, or given another: if two tokens of a class have the same ID, building the table
+ * of the class fails, and one of the methods has to be renamed.
+ *
+ * The table also records which argument of each token, if any, is its conflict key, as declared by the
+ * annotation of the original method.
+ *
+ * Tables are built once per class, when the proxy generates the class, and are dropped with the class.
+ */
+public class MethodDispatchTable {
+
+    static final ClassValue<MethodDispatchTable> tables = new ClassValue<MethodDispatchTable>() {
+        @Override
+        protected MethodDispatchTable computeValue(Class<?> type) {
+            return new MethodDispatchTable(type);
+        }
+    };
+
+    /** Get the dispatch table of a class, building it if it has not been built yet.
+     * @param type  The generated class.
+     * @return      The dispatch table of the class.
+     */
+    public static MethodDispatchTable forClass(Class<?> type)
+    {
+        return tables.get(type);
+    }
+
+    /** The number of bits of the hash of a token used as its method ID, so that an ID takes at most 3 bytes. */
+    static final int METHOD_ID_BITS = 21;
+
+    /** The invokers of each method token, which take the target object and an array of arguments. */
+    final Map<String, MethodHandle> invokers = new HashMap<>();
+
+    /** The invokers and method IDs of the tokens which have an ID. */
+    final Map<Integer, MethodHandle> invokersById = new HashMap<>();
+    final Map<String, Integer> methodIds = new HashMap<>();
+
+    /** The index of the conflict key argument of the tokens which have one. */
+    final Map<String, Integer> conflictArguments = new HashMap<>();
+    final Map<Integer, Integer> conflictArgumentsById = new HashMap<>();
+
+    /** Get the method ID a token would have, if no other token of its class has the same ID.
+     * @param token The method token.
+     * @return      The candidate method ID.
+     */
+    static int hashMethodId(String token)
+    {
+        return token.hashCode() & ((1 << METHOD_ID_BITS) - 1);
+    }
+
+    MethodDispatchTable(Class<?> type)
+    {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        for (Method m : type.getDeclaredMethods())
+        {
+            String token = CorfuObjectByteBuddyProxy.getAccessorShortMethodNameOrEmpty(m);
+            if (token.isEmpty() || invokers.containsKey(token))
+            {
+                continue;
+            }
+            try {
+                m.setAccessible(true);
+                int argCount = m.getParameterCount();
+                MethodHandle h = lookup.unreflect(m)
+                        .asType(MethodType.genericMethodType(argCount + 1))
+                        .asSpreader(Object[].class, argCount);
+                invokers.put(token, h);
+                int conflictArgument = getConflictArgument(type, token, m.getParameterTypes());
+                if (conflictArgument >= 0 && conflictArgument < argCount)
+                {
+                    conflictArguments.put(token, conflictArgument);
+                }
+            } catch (IllegalAccessException iae) {
+                throw new RuntimeException(iae);
+            }
+        }
+        Map<Integer, String> tokensById = new HashMap<>();
+        for (String token : invokers.keySet())
+        {
+            int id = hashMethodId(token);
+            if (tokensById.containsKey(id))
+            {
+                throw new IllegalStateException("Methods " + tokensById.get(id) + " and " + token + " of " +
+                        type.getSuperclass().getName() + " have the same method ID " + id);
+            }
+            tokensById.put(id, token);
+            methodIds.put(token, id);
+            invokersById.put(id, invokers.get(token));
+            if (conflictArguments.containsKey(token))
+            {
+                conflictArgumentsById.put(id, conflictArguments.get(token));
+            }
+        }
+    }
+
+    /**
+     * Find the conflict key argument declared by the original method of a token.
+     *
+     * @param type              The generated class.
+     * @param token             The method token.
+     * @param parameterTypes    The parameter types of the method.
+     * @return                  The index of the conflict key argument, or -1, if the method declares none.
+     */
+    static int getConflictArgument(Class<?> type, String token, Class<?>[] parameterTypes)
+    {
+        String name = token.substring(0, token.indexOf('('));
+        for (Class<?> c = type.getSuperclass(); c != null; c = c.getSuperclass())
+        {
+            try {
+                Method original = c.getDeclaredMethod(name, parameterTypes);
+                if (original.isAnnotationPresent(Mutator.class))
+                {
+                    return original.getAnnotation(Mutator.class).conflictKey();
+                }
+                if (original.isAnnotationPresent(MutatorAccessor.class))
+                {
+                    return original.getAnnotation(MutatorAccessor.class).conflictKey();
+                }
+                return -1;
+            } catch (NoSuchMethodException nsme) {
+                // Declared further up the hierarchy.
+            }
+        }
+        return -1;
+    }
+
+    /** Get the method ID of a token.
+     * @param token The method token.
+     * @return      The method ID, or -1, if the class has no method for the token.
+     */
+    public int getMethodId(String token)
+    {
+        Integer id = methodIds.get(token);
+        return id == null ? -1 : id;
+    }
+
+    /** Get the index of the conflict key argument of a token.
+     * @param token The method token.
+     * @return      The index of the argument, or -1, if the token has no conflict key.
+     */
+    public int getConflictArgument(String token)
+    {
+        Integer index = conflictArguments.get(token);
+        return index == null ? -1 : index;
+    }
+
+    /** Get the index of the conflict key argument of a method ID.
+     * @param methodId  The method ID.
+     * @return          The index of the argument, or -1, if the method has no conflict key.
+     */
+    public int getConflictArgument(int methodId)
+    {
+        Integer index = conflictArgumentsById.get(methodId);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Apply a method token to an object.
+     *
+     * @param target    The object to apply the token to, an instance of the class of the table.
+     * @param token     The method token.
+     * @param arguments The arguments to the method.
+     * @return          The value returned by the method.
+     * @throws Throwable    Whatever the method throws.
+     */
+    public Object invoke(Object target, String token, Object[] arguments)
+        throws Throwable
+    {
+        MethodHandle h = invokers.get(token);
+        if (h == null)
+        {
+            throw new NoSuchMethodException("No method for token " + token + " in " + target.getClass().getName());
+        }
+        return (Object) h.invokeExact(target, arguments);
+    }
+
+    /**
+     * Apply a method ID to an object.
+     *
+     * @param target    The object to apply the method to, an instance of the class of the table.
+     * @param methodId  The method ID.
+     * @param arguments The arguments to the method.
+     * @return          The value returned by the method.
+     * @throws Throwable    Whatever the method throws.
+     */
+    public Object invoke(Object target, int methodId, Object[] arguments)
+        throws Throwable
+    {
+        MethodHandle h = invokersById.get(methodId);
+        if (h == null)
+        {
+            throw new NoSuchMethodException("No method with ID " + methodId + " in " + target.getClass().getName());
+        }
+        return (Object) h.invokeExact(target, arguments);
+    }
+}
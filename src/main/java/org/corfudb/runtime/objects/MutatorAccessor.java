@@ -12,4 +12,11 @@ import java.lang.annotation.Target;
 @Target(ElementType.METHOD)
 @Retention(RetentionPolicy.RUNTIME)
 public @interface MutatorAccessor {
+
+    /**
+     * The index of the argument which is the only key of the state the mutator accessor reads or writes, or -1 if it may
+     * read or write any of the state. Commands with different keys may be applied concurrently, if the state
+     * allows concurrent access to different keys.
+     */
+    int conflictKey() default -1;
 }
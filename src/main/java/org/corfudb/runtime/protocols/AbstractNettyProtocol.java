@@ -1,9 +1,12 @@
 package org.corfudb.runtime.protocols;
 
 import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
@@ -15,12 +18,18 @@ import io.netty.util.concurrent.EventExecutorGroup;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.corfudb.infrastructure.AbstractNettyServer;
+import org.corfudb.infrastructure.wireprotocol.NettyCorfuChunkCodec;
 import org.corfudb.infrastructure.wireprotocol.NettyCorfuMessageDecoder;
 import org.corfudb.infrastructure.wireprotocol.NettyCorfuMessageEncoder;
 import org.corfudb.runtime.exceptions.NetworkException;
 
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -34,6 +43,19 @@ import java.util.concurrent.atomic.AtomicInteger;
  * A repsonse handler of the appropriate type needs to be supplied as parameter to the constructor.
  * The handler class needs to override the method handleMessage(), which gets an incoming response as inputs.
  *
+ * The number of connections opened to the endpoint is set by the "connections" option of the server string
+ * (for example, nlu://localhost:9000,connections=4), and defaults to one. Requests are spread over the
+ * connections by the handler, and a connection which is lost is re-established in the background.
+ * Setting the "compactHeader" option to true makes each connection negotiate compact message headers
+ * (see NettyCorfuMsg), which bind the client ID to the connection and omit unchanged epochs.
+ * Setting the "transport" option to "local" connects over an in-JVM local channel to a server running in the
+ * same process instead of over TCP; the host is then ignored and the port identifies the server.
+ * Requests are subject to the flow control budgets the server advertises for each connection (see
+ * NettyRPCChannelInboundHandlerAdapter), and requests which exceed them are queued rather than sent.
+ * Over TCP, messages larger than the "chunkSize" option (64KB by default) are sent in chunks, between
+ * which smaller requests are interleaved (see NettyCorfuChunkCodec).
+ * Closing the protocol closes its connections, and stops them from being re-established.
+ *
  */
 @Slf4j
 public abstract class AbstractNettyProtocol<T extends NettyRPCChannelInboundHandlerAdapter> implements IServerProtocol {
@@ -53,6 +75,32 @@ public abstract class AbstractNettyProtocol<T extends NettyRPCChannelInboundHand
 
     public T handler;
 
+    /** The number of connections to open to the endpoint. */
+    @Getter
+    int numConnections;
+
+    /** The size above which requests are sent in chunks. */
+    @Getter
+    int chunkSize;
+
+    /** True, if connections are made over an in-JVM local channel rather than TCP. */
+    @Getter
+    boolean local;
+
+    /** The bootstrap used to open (and reopen) connections to the endpoint. */
+    Bootstrap bootstrap;
+
+    /** The connections currently open to the endpoint. */
+    final Set<Channel> channels = ConcurrentHashMap.newKeySet();
+
+    /** Set once the protocol is closed, after which lost connections are not re-established. */
+    @Getter
+    volatile boolean closed;
+
+    /** The initial and maximum delays, in milliseconds, between reconnection attempts. */
+    static final long MIN_RECONNECT_DELAY = 100;
+    static final long MAX_RECONNECT_DELAY = 10_000;
+
     static final EventLoopGroup workerGroup = new NioEventLoopGroup(Runtime.getRuntime().availableProcessors() * 2, new ThreadFactory() {
         final AtomicInteger threadNum = new AtomicInteger(0);
 
@@ -83,29 +131,144 @@ public abstract class AbstractNettyProtocol<T extends NettyRPCChannelInboundHand
     {
         this.host = host;
         this.port = port;
-        this.options = options;
+        this.options = options == null ? Collections.emptyMap() : options;
         this.epoch = epoch;
         this.handler = handler;
+        this.numConnections = Integer.parseInt(this.options.getOrDefault("connections", "1"));
+        handler.setCompactHeader(Boolean.parseBoolean(this.options.getOrDefault("compactHeader", "false")));
+        this.local = this.options.getOrDefault("transport", "tcp").equals("local");
+        this.chunkSize = Integer.parseInt(this.options.getOrDefault("chunkSize",
+                Integer.toString(NettyCorfuChunkCodec.DEFAULT_CHUNK_SIZE)));
 
         Bootstrap b = new Bootstrap();
         b.group(workerGroup);
-        b.channel(NioSocketChannel.class);
-        b.option(ChannelOption.SO_KEEPALIVE, true);
-        b.option(ChannelOption.TCP_NODELAY, true);
-        b.handler(new ChannelInitializer<SocketChannel>() {
-            @Override
-            public void initChannel(SocketChannel ch) throws Exception {
-                ch.pipeline().addLast(new LengthFieldPrepender(4));
-                ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(Integer.MAX_VALUE, 0, 4, 0, 4));
-                ch.pipeline().addLast(ee, new NettyCorfuMessageDecoder());
-                ch.pipeline().addLast(ee, new NettyCorfuMessageEncoder());
-                ch.pipeline().addLast(ee, handler);
+        if (local) {
+            // Local channels preserve message boundaries, so no framing is required.
+            b.channel(LocalChannel.class);
+            b.handler(new ChannelInitializer<Channel>() {
+                @Override
+                public void initChannel(Channel ch) throws Exception {
+                    ch.pipeline().addLast(ee, new NettyCorfuMessageDecoder());
+                    ch.pipeline().addLast(ee, new NettyCorfuMessageEncoder((m, size) -> handler.messageEncoded(ch, m, size),
+                            Integer.MAX_VALUE));
+                    ch.pipeline().addLast(ee, handler);
+                }
+            });
+        }
+        else {
+            b.channel(NioSocketChannel.class);
+            b.option(ChannelOption.SO_KEEPALIVE, true);
+            b.option(ChannelOption.TCP_NODELAY, true);
+            b.handler(new ChannelInitializer<SocketChannel>() {
+                @Override
+                public void initChannel(SocketChannel ch) throws Exception {
+                    ch.pipeline().addLast(new LengthFieldPrepender(4));
+                    ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(Integer.MAX_VALUE, 0, 4, 0, 4));
+                    ch.pipeline().addLast(new NettyCorfuChunkCodec(chunkSize, Integer.MAX_VALUE));
+                    ch.pipeline().addLast(ee, new NettyCorfuMessageDecoder());
+                    ch.pipeline().addLast(ee, new NettyCorfuMessageEncoder((m, size) -> handler.messageEncoded(ch, m, size),
+                            chunkSize));
+                    ch.pipeline().addLast(ee, handler);
+                }
+            });
+        }
+
+        bootstrap = b;
+
+        for (int i = 0; i < numConnections; i++) {
+            ChannelFuture cf = connect();
+            if (!cf.awaitUninterruptibly(5000)) {
+                throw new RuntimeException("Couldn't connect to endpoint " + this.getFullString());
+            }
+            watchConnection(cf, MIN_RECONNECT_DELAY);
+        }
+    }
+
+    /** Open a new connection to the endpoint, over the configured transport.
+     *
+     * @return  The future for the connection attempt.
+     */
+    ChannelFuture connect()
+    {
+        return local ? bootstrap.connect(AbstractNettyServer.getLocalAddress(port)) : bootstrap.connect(host, port);
+    }
+
+    /** Re-establish a connection once it closes (or fails to open), backing off between failed attempts.
+     *
+     * @param cf        The future for the connection attempt to watch.
+     * @param delay     The delay before the next attempt, if this attempt fails.
+     */
+    void watchConnection(ChannelFuture cf, long delay)
+    {
+        cf.addListener(f -> {
+            if (f.isSuccess()) {
+                Channel ch = cf.channel();
+                channels.add(ch);
+                ch.closeFuture().addListener(c -> {
+                    channels.remove(ch);
+                    reconnect(MIN_RECONNECT_DELAY);
+                });
+                // The protocol may have been closed while the connection was being opened.
+                if (closed) {
+                    ch.close();
+                }
+            }
+            else {
+                reconnect(delay);
             }
         });
+    }
 
-        if (!b.connect(host, port).awaitUninterruptibly(5000)) {
-            throw new RuntimeException("Couldn't connect to endpoint " + this.getFullString());
+    private void reconnect(long delay)
+    {
+        if (closed) {
+            return;
         }
+        workerGroup.schedule(() -> {
+            if (closed) {
+                return;
+            }
+            log.debug("Reconnecting to endpoint {}", getFullString());
+            watchConnection(connect(), Math.min(delay * 2, MAX_RECONNECT_DELAY));
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Close every connection to the endpoint, and stop re-establishing them. Requests which have not completed,
+     * and requests made afterwards, fail.
+     */
+    public void close()
+    {
+        closed = true;
+        channels.forEach(Channel::close);
+        handler.close();
+    }
+
+    /**
+     * Returns the number of connections to the endpoint which are currently active.
+     *
+     * @return The number of active connections.
+     */
+    public int getActiveConnections() {
+        return handler.channelList.size();
+    }
+
+    /**
+     * Returns the number of requests which had to wait for flow control credit.
+     *
+     * @return The number of throttled requests since this protocol was created.
+     */
+    public long getThrottledRequests() {
+        return handler.getThrottledRequests();
+    }
+
+    /**
+     * Returns the number of requests currently waiting for flow control credit.
+     *
+     * @return The number of queued requests.
+     */
+    public int getQueuedRequests() {
+        return handler.getQueuedRequests();
     }
 
     /**
@@ -1,33 +1,89 @@
 package org.corfudb.runtime.protocols;
 
 import io.netty.channel.*;
-import lombok.NonNull;
+import io.netty.util.AttributeKey;
+import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.corfudb.infrastructure.wireprotocol.NettyCorfuHelloMsg;
 import org.corfudb.infrastructure.wireprotocol.NettyCorfuMsg;
 import org.corfudb.infrastructure.wireprotocol.NettyCorfuResetMsg;
 import org.corfudb.runtime.exceptions.WrongEpochException;
 import org.corfudb.util.CFUtils;
 
+import java.nio.channels.ClosedChannelException;
 import java.time.Duration;
 import java.util.List;
-import java.util.Random;
+import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by mwei on 9/16/15.
+ *
+ * The handler is shared by every connection a protocol opens to its endpoint. Requests are sent
+ * on the active channel with the fewest outstanding requests, and when no channel is active,
+ * requests are queued until a (re)connection completes instead of blocking the caller.
+ *
+ * Each channel starts with a hello exchange, in which the server advertises how many requests, and how many
+ * request bytes, may be outstanding on the channel. A channel only carries requests once the exchange
+ * completes, and while every channel has used up its budget, new requests are queued (in order) until
+ * responses return credit. The budgets are enforced here, by the client; the server only advertises them.
+ * Requests written on a channel which goes inactive fail, and return their credit, rather than wait for a
+ * response which will never arrive.
  */
 @Slf4j
 @ChannelHandler.Sharable
 public abstract class NettyRPCChannelInboundHandlerAdapter extends ChannelInboundHandlerAdapter {
 
+    /** The number of requests awaiting a response on a channel. */
+    static final AttributeKey<AtomicInteger> OUTSTANDING = AttributeKey.valueOf("outstandingRequests");
+
+    /** The number of request bytes awaiting a response on a channel. */
+    static final AttributeKey<AtomicLong> OUTSTANDING_BYTES = AttributeKey.valueOf("outstandingBytes");
+
+    /** The budgets advertised by the server for a channel. */
+    static final AttributeKey<NettyCorfuHelloMsg> BUDGET = AttributeKey.valueOf("budget");
+
+    /** A request waiting for a channel with credit. */
+    @RequiredArgsConstructor
+    static class PendingRequest {
+        final NettyCorfuMsg message;
+        final CompletableFuture<?> cf;
+        /** The encoded size of the request once it is written, or -1 once its credit has been returned. */
+        final AtomicLong bytes = new AtomicLong();
+        /** The channel the request was written on, once it is written. */
+        volatile ChannelHandlerContext channel;
+    }
+
     private volatile UUID clientID;
     private volatile AtomicLong requestID;
     public List<ChannelHandlerContext> channelList;
     private ConcurrentHashMap<Long, CompletableFuture<?>> rpcMap;
-    private Random random;
+
+    /** Requests which have been written, but have not yet had their credit returned. */
+    private ConcurrentHashMap<Long, PendingRequest> creditMap;
+
+    /** Requests waiting for a channel with credit, in the order they were sent. */
+    private final Queue<PendingRequest> throttled;
+
+    /** The number of requests which had to wait for credit. */
+    private final AtomicLong throttledCount;
+
+    /** Completed with a channel once one becomes active, replaced when the last channel goes inactive. */
+    private volatile CompletableFuture<ChannelHandlerContext> channelAvailable;
+
+    /** Rotates the starting point of the channel scan, so that ties are broken round-robin. */
+    private final AtomicInteger nextChannel;
+
+    /** Whether new channels negotiate compact headers before carrying any requests. */
+    @Setter
+    private volatile boolean compactHeader;
+
+    /** Set once the protocol is closed, after which requests fail rather than wait for a channel. */
+    private volatile boolean closed;
 
     public abstract void handleMessage(NettyCorfuMsg message);
 
@@ -37,29 +93,82 @@ public abstract class NettyRPCChannelInboundHandlerAdapter extends ChannelInboun
         clientID = UUID.randomUUID();
         requestID = new AtomicLong();
         rpcMap = new ConcurrentHashMap<>();
-        random = new Random();
+        channelAvailable = new CompletableFuture<>();
+        nextChannel = new AtomicInteger();
+        creditMap = new ConcurrentHashMap<>();
+        throttled = new ConcurrentLinkedQueue<>();
+        throttledCount = new AtomicLong();
     }
 
-    public @NonNull
-    ChannelHandlerContext getChannel()
+    /** Check whether a channel has budget left for another request.
+     *
+     * @param c     The channel to check.
+     * @return      True, if neither of the budgets advertised for the channel has been used up.
+     */
+    static boolean hasCredit(ChannelHandlerContext c)
+    {
+        NettyCorfuHelloMsg budget = c.channel().attr(BUDGET).get();
+        return (budget.getMaxOutstandingRequests() <= 0
+                    || c.channel().attr(OUTSTANDING).get().get() < budget.getMaxOutstandingRequests())
+                && (budget.getMaxOutstandingBytes() <= 0
+                    || c.channel().attr(OUTSTANDING_BYTES).get().get() < budget.getMaxOutstandingBytes());
+    }
+
+    /** Select the active channel with the fewest outstanding requests.
+     *
+     * @return  The least loaded channel, or null, if no channel is currently active.
+     */
+    ChannelHandlerContext selectChannel()
     {
-        ChannelHandlerContext c = null;
-        while (channelList.size() == 0 || (c = channelList.get(random.nextInt(channelList.size()))) == null) {
-            // this will be null if someone just removed the channel.
-            try {
-                Thread.sleep(10);
-            } catch (InterruptedException ie)
+        return selectChannel(false);
+    }
+
+    /** Select the active channel with the fewest outstanding requests.
+     *
+     * @param withCredit    True, to only consider channels which have budget left for another request.
+     * @return              The least loaded channel, or null, if no suitable channel is currently active.
+     */
+    ChannelHandlerContext selectChannel(boolean withCredit)
+    {
+        ChannelHandlerContext best = null;
+        int bestLoad = Integer.MAX_VALUE;
+        Object[] channels = channelList.toArray();
+        int start = channels.length == 0 ? 0 : (nextChannel.getAndIncrement() & Integer.MAX_VALUE) % channels.length;
+        for (int i = 0; i < channels.length; i++)
+        {
+            ChannelHandlerContext c = (ChannelHandlerContext) channels[(start + i) % channels.length];
+            int load = c.channel().attr(OUTSTANDING).get().get();
+            if (load < bestLoad && (!withCredit || hasCredit(c)))
             {
-                // retry on interruption
+                best = c;
+                bestLoad = load;
             }
         }
-        return c;
+        return best;
+    }
+
+    /** Get a channel to send a request on, without blocking.
+     *
+     * @return  A future which completes with the least loaded channel, immediately if a channel
+     *          is active, or once a channel (re)connects otherwise.
+     */
+    public CompletableFuture<ChannelHandlerContext> getChannelAsync()
+    {
+        ChannelHandlerContext c = selectChannel();
+        if (c != null)
+        {
+            return CompletableFuture.completedFuture(c);
+        }
+        return channelAvailable.thenApply(a -> {
+            ChannelHandlerContext s = selectChannel();
+            return s == null ? a : s;
+        });
     }
 
     @SuppressWarnings("unchecked")
     public <T> void completeRequest(long requestID, T result)
     {
-        CompletableFuture<T> cf = (CompletableFuture<T>) rpcMap.get(requestID);
+        CompletableFuture<T> cf = (CompletableFuture<T>) rpcMap.remove(requestID);
         if (cf != null) {
             cf.complete(result);
         }
@@ -74,7 +183,7 @@ public abstract class NettyRPCChannelInboundHandlerAdapter extends ChannelInboun
     @SuppressWarnings("unchecked")
     public <T> void failRequest(long requestID, Exception e)
     {
-        CompletableFuture<T> cf = (CompletableFuture<T>) rpcMap.get(requestID);
+        CompletableFuture<T> cf = (CompletableFuture<T>) rpcMap.remove(requestID);
         if (cf != null) {
             cf.completeExceptionally(e);
         }
@@ -88,22 +197,156 @@ public abstract class NettyRPCChannelInboundHandlerAdapter extends ChannelInboun
         message.setEpoch(epoch);
         final CompletableFuture<T> cf = new CompletableFuture<>();
         rpcMap.put(thisRequest, cf);
-        getChannel().writeAndFlush(message);
+        dispatch(new PendingRequest(message, cf));
         final CompletableFuture<T> cfTimeout = CFUtils.within(cf, Duration.ofSeconds(500));
         cfTimeout.exceptionally(e -> {
             rpcMap.remove(thisRequest);
+            // Return the credit held by a request which timed out.
+            cf.completeExceptionally(e);
             return null;
         });
         return cfTimeout;
     }
 
+    /** Send a request on the least loaded channel with credit, or queue it until credit is returned.
+     *
+     * @param r     The request to send.
+     */
+    void dispatch(PendingRequest r)
+    {
+        if (closed)
+        {
+            r.cf.completeExceptionally(new IllegalStateException("Protocol closed"));
+            return;
+        }
+        if (channelList.isEmpty())
+        {
+            channelAvailable.whenComplete((c, e) -> dispatch(r));
+            return;
+        }
+        if (throttled.isEmpty())
+        {
+            ChannelHandlerContext c = selectChannel(true);
+            if (c != null)
+            {
+                write(c, r);
+                return;
+            }
+        }
+        throttledCount.incrementAndGet();
+        throttled.add(r);
+        // Credit may have been returned before the request was queued.
+        drain();
+    }
+
+    /** Send queued requests, in order, for as long as there are channels with credit. */
+    void drain()
+    {
+        while (!throttled.isEmpty())
+        {
+            synchronized (throttled)
+            {
+                ChannelHandlerContext c = selectChannel(true);
+                if (c == null)
+                {
+                    return;
+                }
+                PendingRequest r = throttled.poll();
+                if (r == null)
+                {
+                    return;
+                }
+                write(c, r);
+            }
+        }
+    }
+
+    /** Write a request on a channel, charging it to the budget of the channel until it completes.
+     *
+     * @param c     The channel to write on.
+     * @param r     The request to write.
+     */
+    void write(ChannelHandlerContext c, PendingRequest r)
+    {
+        if (r.cf.isDone())
+        {
+            // Timed out while waiting for credit.
+            return;
+        }
+        AtomicInteger outstanding = c.channel().attr(OUTSTANDING).get();
+        AtomicLong outstandingBytes = c.channel().attr(OUTSTANDING_BYTES).get();
+        outstanding.incrementAndGet();
+        r.channel = c;
+        creditMap.put(r.message.getRequestID(), r);
+        r.cf.whenComplete((x, e) -> {
+            creditMap.remove(r.message.getRequestID());
+            outstanding.decrementAndGet();
+            long bytes = r.bytes.getAndSet(-1);
+            if (bytes > 0)
+            {
+                outstandingBytes.addAndGet(-bytes);
+            }
+            drain();
+        });
+        c.writeAndFlush(r.message);
+    }
+
+    /** Charge the encoded size of a request to the budget of the channel it was written on.
+     *
+     * @param c         The channel the request was written on.
+     * @param message   The request which was encoded.
+     * @param size      The encoded size of the request.
+     */
+    void messageEncoded(Channel c, NettyCorfuMsg message, int size)
+    {
+        PendingRequest r = creditMap.get(message.getRequestID());
+        if (r != null && r.message == message && r.bytes.compareAndSet(0, size))
+        {
+            c.attr(OUTSTANDING_BYTES).get().addAndGet(size);
+        }
+    }
+
+    /** Get the number of requests which had to wait for a channel with credit.
+     *
+     * @return  The number of throttled requests since this handler was created.
+     */
+    public long getThrottledRequests()
+    {
+        return throttledCount.get();
+    }
+
+    /** Get the number of requests currently waiting for a channel with credit.
+     *
+     * @return  The number of queued requests.
+     */
+    public int getQueuedRequests()
+    {
+        return throttled.size();
+    }
+
+    /** Fail every request which is outstanding, queued or waiting for a channel, and every request made
+     * afterwards, once the protocol is closed.
+     */
+    public void close()
+    {
+        closed = true;
+        IllegalStateException e = new IllegalStateException("Protocol closed");
+        channelAvailable.completeExceptionally(e);
+        PendingRequest r;
+        while ((r = throttled.poll()) != null)
+        {
+            r.cf.completeExceptionally(e);
+        }
+        rpcMap.keySet().forEach(id -> failRequest(id, e));
+    }
+
     public void sendMessage(long epoch, NettyCorfuMsg message)
     {
         final long thisRequest = requestID.getAndIncrement();
         message.setClientID(clientID);
         message.setRequestID(thisRequest);
         message.setEpoch(epoch);
-        getChannel().writeAndFlush(message);
+        getChannelAsync().thenAccept(c -> c.writeAndFlush(message));
     }
 
     public CompletableFuture<Boolean> ping(long epoch) {
@@ -120,24 +363,61 @@ public abstract class NettyRPCChannelInboundHandlerAdapter extends ChannelInboun
     }
 
     @Override
-    public void channelRegistered(ChannelHandlerContext ctx) throws Exception {
-        channelList.add(ctx);
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        ctx.channel().attr(OUTSTANDING).setIfAbsent(new AtomicInteger());
+        ctx.channel().attr(OUTSTANDING_BYTES).setIfAbsent(new AtomicLong());
+        // The hello must be the first message on the channel, and the channel is only usable once it is answered.
+        NettyCorfuMsg hello = new NettyCorfuHelloMsg(compactHeader);
+        hello.setClientID(clientID);
+        hello.setRequestID(requestID.getAndIncrement());
+        ctx.writeAndFlush(hello);
     }
 
-    @Override
-    public void channelUnregistered(ChannelHandlerContext ctx) throws Exception {
-        super.channelUnregistered(ctx);
-        channelList.remove(ctx);
+    /** Make a channel available for requests, once the server has advertised its budgets.
+     *
+     * @param ctx       The channel which has completed its hello exchange.
+     * @param budget    The hello reply from the server.
+     */
+    void channelReady(ChannelHandlerContext ctx, NettyCorfuHelloMsg budget) {
+        ctx.channel().attr(BUDGET).set(budget);
+        CompletableFuture<ChannelHandlerContext> available;
+        synchronized (channelList) {
+            channelList.add(ctx);
+            available = channelAvailable;
+        }
+        available.complete(ctx);
+        drain();
     }
 
     @Override
-    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        super.channelInactive(ctx);
+        synchronized (channelList) {
+            channelList.remove(ctx);
+            if (channelList.isEmpty() && channelAvailable.isDone())
+            {
+                channelAvailable = new CompletableFuture<>();
+            }
+        }
+        // No response will arrive for the requests written on the channel.
+        ClosedChannelException e = new ClosedChannelException();
+        creditMap.forEach((id, r) -> {
+            if (r.channel == ctx) {
+                failRequest(id, e);
+            }
+        });
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
         NettyCorfuMsg nettyMsg = (NettyCorfuMsg) msg;
+        // Hello replies carry the budgets of the channel, there is no request waiting on them.
+        if (nettyMsg.getMsgType() == NettyCorfuMsg.NettyCorfuMsgType.HELLO)
+        {
+            channelReady(ctx, (NettyCorfuHelloMsg) nettyMsg);
+            return;
+        }
         // Handle the case where the epoch is wrong.
         if (nettyMsg.getMsgType() == NettyCorfuMsg.NettyCorfuMsgType.WRONG_EPOCH)
         {
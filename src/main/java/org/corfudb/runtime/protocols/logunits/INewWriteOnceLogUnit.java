@@ -15,7 +15,12 @@
 
 package org.corfudb.runtime.protocols.logunits;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 import org.corfudb.infrastructure.NettyLogUnitServer;
 import org.corfudb.infrastructure.thrift.Hint;
 import org.corfudb.infrastructure.thrift.Hints;
@@ -28,10 +33,13 @@ import org.corfudb.runtime.protocols.IServerProtocol;
 
 import java.nio.ByteBuffer;
 import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.IntConsumer;
 
 /**
  * This interface represents the simplest type of stream unit.
@@ -65,40 +73,81 @@ public interface INewWriteOnceLogUnit extends IServerProtocol {
         TRIMMED
     }
 
+    /**
+     * The result of a read. The payload of a DATA result stays in its receive buffer until it is first
+     * accessed, so results which are dropped without being used are never deserialized. Results which
+     * may be dropped without their payload being accessed should be released.
+     */
     @Data
+    @ToString(exclude = "message")
+    @EqualsAndHashCode(exclude = "message")
     class ReadResult implements IMetadata {
         final ReadResultType result;
-        final Object payload;
         final EnumMap<NettyLogUnitServer.LogUnitMetadataType, Object> metadataMap;
+        /** The size of the payload as it was received, in bytes. */
+        final int serializedSize;
+
+        /** The message which holds the payload, until it is deserialized or released. */
+        @Getter(AccessLevel.NONE)
+        @Setter(AccessLevel.NONE)
+        NettyLogUnitReadResponseMsg message;
+
+        /** The deserialized payload, once it has been accessed. */
+        @Setter(AccessLevel.NONE)
+        Object payload;
+
+        /** Whether the payload was released before it was deserialized. */
+        @Setter(AccessLevel.NONE)
+        boolean released;
 
         public ReadResult(NettyLogUnitReadResponseMsg m)
         {
+            serializedSize = m.getDataSize();
+            metadataMap = m.getMetadataMap();
             switch (m.getResult())
             {
                 case DATA:
                     result = ReadResultType.DATA;
-                    payload = m.getPayload();
-                    metadataMap = m.getMetadataMap();
-                    break;
-                case EMPTY:
-                    result = ReadResultType.EMPTY;
-                    payload = null;
-                    metadataMap = m.getMetadataMap();
-                    break;
+                    message = m;
+                    return;
                 case FILLED_HOLE:
                     result = ReadResultType.FILLED_HOLE;
-                    payload = null;
-                    metadataMap = m.getMetadataMap();
                     break;
                 case TRIMMED:
                     result = ReadResultType.TRIMMED;
-                    payload = null;
-                    metadataMap = m.getMetadataMap();
                     break;
+                case EMPTY:
                 default:
                     result = ReadResultType.EMPTY;
-                    metadataMap = m.getMetadataMap();
-                    payload = null;
+            }
+            m.releaseData();
+        }
+
+        /** Get the payload, deserializing it on first access.
+         * @return  The payload, or null, if the result is not DATA.
+         */
+        public synchronized Object getPayload()
+        {
+            if (released)
+            {
+                throw new IllegalStateException("Payload was released before it was read");
+            }
+            if (message != null)
+            {
+                payload = message.getPayload();
+                message = null;
+            }
+            return payload;
+        }
+
+        /** Release the buffer which holds the payload, if it has not been deserialized. */
+        public synchronized void release()
+        {
+            if (message != null)
+            {
+                message.releaseData();
+                message = null;
+                released = true;
             }
         }
     }
@@ -114,6 +163,22 @@ public interface INewWriteOnceLogUnit extends IServerProtocol {
      */
     CompletableFuture<WriteResult> write(long address, Set<UUID> streams, long rank, Object writeObject);
 
+    /** Asynchronously write to the logging unit, and report the size the object was serialized to.
+     *
+     * @param address       The address to write to.
+     * @param streams       The streams, if any, that this write belongs to.
+     * @param rank          The rank of this write (used for quorum replication).
+     * @param writeObject   The object, pre-serialization, to write.
+     * @param serialized    Given the size of the serialized object, in bytes, before the write completes.
+     * @return              A CompletableFuture which will complete with the WriteResult once the
+     *                      write completes.
+     */
+    default CompletableFuture<WriteResult> write(long address, Set<UUID> streams, long rank, Object writeObject,
+                                                 IntConsumer serialized)
+    {
+        return write(address, streams, rank, writeObject);
+    }
+
     /** Asynchronously write to the logging unit, giving a logical stream position.
      *
      * @param address                       The address to write to.
@@ -133,6 +198,36 @@ public interface INewWriteOnceLogUnit extends IServerProtocol {
      */
     CompletableFuture<ReadResult> read(long address);
 
+    /** Asynchronously read several addresses from the logging unit.
+     *
+     * @param addresses     The addresses to read from.
+     * @return              A CompletableFuture which will complete with a ReadResult for each address,
+     *                      once every read completes.
+     */
+    default CompletableFuture<Map<Long, ReadResult>> readAll(List<Long> addresses)
+    {
+        Map<Long, CompletableFuture<ReadResult>> reads = new LinkedHashMap<>();
+        addresses.forEach(a -> reads.put(a, read(a)));
+        return CompletableFuture.allOf(reads.values().toArray(new CompletableFuture[reads.size()]))
+                .thenApply(v -> {
+                    Map<Long, ReadResult> results = new LinkedHashMap<>();
+                    reads.forEach((a, cf) -> results.put(a, cf.join()));
+                    return results;
+                });
+    }
+
+    /** Asynchronously read from the logging unit, waiting for the address to be written if it is empty.
+     *
+     * @param address       The address to read from.
+     * @param timeout       The longest time to wait for the address to be written, in milliseconds.
+     * @return              A CompletableFuture which will complete with a ReadResult once the address
+     *                      is written or filled, or with an EMPTY ReadResult once the timeout elapses.
+     */
+    default CompletableFuture<ReadResult> readWait(long address, long timeout)
+    {
+        return read(address);
+    }
+
     /** Send a hint to the logging unit that a stream can be trimmed.
      *
      * @param stream        The stream to trim.
@@ -7,10 +7,13 @@ import org.corfudb.runtime.protocols.IServerProtocol;
 import org.corfudb.runtime.protocols.NettyRPCChannelInboundHandlerAdapter;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.IntConsumer;
 
 /**
  * Created by mwei on 9/15/15.
@@ -55,6 +58,32 @@ public class NettyLogUnitProtocol
         return handler.sendMessageAndGetCompletable(epoch, w);
     }
 
+    /**
+     * Asynchronously write to the logging unit, and report the size the object was serialized to. The
+     * object is serialized as the message is sent, so its size is known once the log unit responds.
+     *
+     * @param address     The address to write to.
+     * @param streams     The streams, if any, that this write belongs to.
+     * @param rank        The rank of this write (used for quorum replication).
+     * @param writeObject The object, pre-serialization, to write.
+     * @param serialized  Given the size of the serialized object, in bytes, before the write completes.
+     * @return A CompletableFuture which will complete with the WriteResult once the
+     * write completes.
+     */
+    @Override
+    public CompletableFuture<WriteResult> write(long address, Set<UUID> streams, long rank, Object writeObject,
+                                                IntConsumer serialized) {
+        NettyLogUnitWriteMsg w = new NettyLogUnitWriteMsg(address);
+        w.setStreams(streams);
+        w.setRank(rank);
+        w.setPayload(writeObject);
+        return handler.<WriteResult>sendMessageAndGetCompletable(epoch, w)
+                .thenApply(r -> {
+                    serialized.accept(w.getSerializedSize());
+                    return r;
+                });
+    }
+
     /**
      * Asynchronously write to the logging unit, giving a logical stream position.
      *
@@ -88,6 +117,31 @@ public class NettyLogUnitProtocol
         return handler.sendMessageAndGetCompletable(epoch, new NettyLogUnitReadRequestMsg(address));
     }
 
+    /**
+     * Asynchronously read several addresses from the logging unit, with a single request.
+     *
+     * @param addresses The addresses to read from.
+     * @return A CompletableFuture which will complete with a ReadResult for each address,
+     * once the response arrives.
+     */
+    @Override
+    public CompletableFuture<Map<Long, ReadResult>> readAll(List<Long> addresses) {
+        return handler.sendMessageAndGetCompletable(epoch, new NettyLogUnitMultiReadRequestMsg(addresses));
+    }
+
+    /**
+     * Asynchronously read from the logging unit, waiting for the address to be written if it is empty.
+     *
+     * @param address The address to read from.
+     * @param timeout The longest time to wait for the address to be written, in milliseconds.
+     * @return A CompletableFuture which will complete with a ReadResult once the address is written
+     * or filled, or with an EMPTY ReadResult once the timeout elapses.
+     */
+    @Override
+    public CompletableFuture<ReadResult> readWait(long address, long timeout) {
+        return handler.sendMessageAndGetCompletable(epoch, new NettyLogUnitReadWaitMsg(address, timeout));
+    }
+
     /**
      * Send a hint to the logging unit that a stream can be trimmed.
      *
@@ -140,6 +194,12 @@ public class NettyLogUnitProtocol
                     NettyLogUnitReadResponseMsg r = (NettyLogUnitReadResponseMsg) message;
                     completeRequest(message.getRequestID(), new ReadResult(r));
                     break;
+                case READ_MULTI_RESPONSE:
+                    Map<Long, ReadResult> results = new LinkedHashMap<>();
+                    ((NettyLogUnitMultiReadResponseMsg) message).getResponses()
+                            .forEach((a, m) -> results.put(a, new ReadResult(m)));
+                    completeRequest(message.getRequestID(), results);
+                    break;
                 case ERROR_OVERWRITE:
                     completeRequest(message.getRequestID(), WriteResult.OVERWRITE);
                     break;
@@ -0,0 +1,232 @@
+package org.corfudb.runtime.smr;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.corfudb.runtime.exceptions.UnwrittenException;
+import org.corfudb.runtime.stream.ITimestamp;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checkpoints the objects open in an instance in the background, and trims their streams behind the
+ * checkpoints, so that the storage and replay cost of an object stays bounded without the application
+ * checkpointing it by hand. Each instance has its own checkpointer, which runs on its own thread until the
+ * instance is closed.
+ *
+ * The checkpointer checks each engine periodically. Once an engine has applied more entries, or more bytes
+ * of entries, than the policy allows since its last checkpoint, the checkpointer writes a checkpoint of it.
+ * The engine copies its state while no entry is being applied, and mutators only propose to the log, so
+ * they are not held up while the checkpoint is written. Once the checkpoint is written, the prefix of the
+ * stream it covers is trimmed, if the policy allows, but never past the checkpoint the index finds; engines
+ * opened later start from that checkpoint, and never read the trimmed prefix.
+ */
+@Slf4j
+public class AutoCheckpointer {
+
+    /** The default number of entries applied after which an object is checkpointed, or 0 to never. */
+    public static final long DEFAULT_CHECKPOINT_ENTRIES = 10_000;
+
+    /** The default number of bytes of entries applied after which an object is checkpointed, or 0 to never. */
+    public static final long DEFAULT_CHECKPOINT_BYTES = 64 * 1024 * 1024;
+
+    /** The default interval between checks of the engines, in milliseconds. */
+    public static final long DEFAULT_CHECKPOINT_INTERVAL = 1000;
+
+    /**
+     * The default number of entries applied since its last checkpoint after which an object retired from the
+     * instance is checkpointed, or 0 to never.
+     */
+    public static final long DEFAULT_RETIRE_CHECKPOINT_ENTRIES = 100;
+
+    /** Runs the checks, and checkpoints, of this checkpointer, until it is closed. */
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r);
+        t.setName("AutoCheckpointer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** The number of entries applied after which an object is checkpointed, or 0 to never. */
+    @Getter
+    final long entryThreshold;
+
+    /** The number of bytes of entries applied after which an object is checkpointed, or 0 to never. */
+    @Getter
+    final long byteThreshold;
+
+    /** Whether streams are trimmed behind their checkpoints. */
+    @Getter
+    final boolean trim;
+
+    /** The number of entries applied after which a retired object is checkpointed, or 0 to never. */
+    @Getter
+    final long retireEntryThreshold;
+
+    /** Whether the checkpointer is closed.
+     * @return  True, if the checkpointer no longer checks engines.
+     */
+    public boolean isClosed()
+    {
+        return scheduler.isShutdown();
+    }
+
+    /** The engines checked, by stream ID. */
+    final Map<UUID, SimpleSMREngine<?>> engines = new ConcurrentHashMap<>();
+
+    /** The number of checkpoints written. */
+    @Getter
+    final AtomicLong checkpoints = new AtomicLong();
+
+    /**
+     * Build a checkpointer with the policy in the given configuration.
+     *
+     * @param configuration The configuration, which may set "checkpointEntries" and "checkpointBytes", the
+     *                      number of entries and bytes of entries applied after which an object is
+     *                      checkpointed (0 to never), "checkpointInterval", the interval between checks in
+     *                      milliseconds, "checkpointTrim", whether to trim streams behind checkpoints, and
+     *                      "retireCheckpointEntries", the number of entries applied after which an object
+     *                      retired from the instance is checkpointed (0 to never).
+     */
+    public AutoCheckpointer(Map<String, Object> configuration)
+    {
+        entryThreshold =
+                ((Number) configuration.getOrDefault("checkpointEntries", DEFAULT_CHECKPOINT_ENTRIES)).longValue();
+        byteThreshold =
+                ((Number) configuration.getOrDefault("checkpointBytes", DEFAULT_CHECKPOINT_BYTES)).longValue();
+        trim = (Boolean) configuration.getOrDefault("checkpointTrim", true);
+        retireEntryThreshold = ((Number) configuration.getOrDefault("retireCheckpointEntries",
+                DEFAULT_RETIRE_CHECKPOINT_ENTRIES)).longValue();
+        long interval =
+                ((Number) configuration.getOrDefault("checkpointInterval", DEFAULT_CHECKPOINT_INTERVAL)).longValue();
+        if (entryThreshold > 0 || byteThreshold > 0)
+        {
+            scheduler.scheduleWithFixedDelay(this::checkAll, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Start checking an engine.
+     * @param engine    The engine to check.
+     */
+    public void register(SimpleSMREngine<?> engine)
+    {
+        engines.put(engine.getStreamID(), engine);
+    }
+
+    /**
+     * Stop checking an engine which the instance has dropped. In the background, apply the commands it
+     * proposed, so that their completions complete, and checkpoint it if it has applied enough since its last
+     * checkpoint, so that it is rebuilt from the checkpoint if it is opened again. The stream is not trimmed,
+     * since an engine opened again may still be replaying it.
+     *
+     * @param engine    The engine dropped.
+     */
+    public void retire(SimpleSMREngine<?> engine)
+    {
+        engines.remove(engine.getStreamID(), engine);
+        if (scheduler.isShutdown())
+        {
+            return;
+        }
+        scheduler.execute(() -> {
+            try {
+                engine.drain();
+            } catch (Exception e) {
+                log.warn("Error draining retired stream {}", engine.getStreamID(), e);
+            }
+        });
+        if (retireEntryThreshold > 0 && engine.getEntriesSinceCheckpoint() >= retireEntryThreshold)
+        {
+            scheduler.execute(() -> {
+                try {
+                    engine.checkpoint();
+                    checkpoints.incrementAndGet();
+                    log.debug("Checkpointed retired stream {} up to {}", engine.getStreamID(),
+                            engine.getLastCheckpointPosition());
+                } catch (Exception e) {
+                    log.warn("Error checkpointing retired stream {}", engine.getStreamID(), e);
+                }
+            });
+        }
+    }
+
+    /** Stop checking every engine, as when the instance resets its caches. */
+    public void clear()
+    {
+        engines.clear();
+    }
+
+    /** Stop checking engines for good, as when the instance is closed, and release the engines. Checkpoints
+     * being written are completed.
+     */
+    public void close()
+    {
+        scheduler.shutdown();
+        engines.clear();
+    }
+
+    /** Get whether an engine has applied enough since its last checkpoint to be checkpointed again.
+     * @param engine    The engine.
+     * @return          True, if the engine has crossed a threshold of the policy.
+     */
+    boolean isDue(SimpleSMREngine<?> engine)
+    {
+        return (entryThreshold > 0 && engine.getEntriesSinceCheckpoint() >= entryThreshold) ||
+                (byteThreshold > 0 && engine.getBytesSinceCheckpoint() >= byteThreshold);
+    }
+
+    /** Checkpoint, and trim behind, every engine which is due. */
+    void checkAll()
+    {
+        engines.values().forEach(engine -> {
+            try {
+                if (isDue(engine)) {
+                    checkpoint(engine);
+                }
+            } catch (Exception e) {
+                // The engine is checked again at the next interval.
+                log.warn("Error checkpointing stream {}", engine.getStreamID(), e);
+            }
+        });
+    }
+
+    /**
+     * Checkpoint an engine, and trim its stream up to the checkpoint.
+     *
+     * @param engine    The engine to checkpoint.
+     * @throws Exception    If the checkpoint could not be written.
+     */
+    void checkpoint(SimpleSMREngine<?> engine)
+            throws Exception
+    {
+        ITimestamp written = engine.checkpoint();
+        checkpoints.incrementAndGet();
+        ITimestamp covered = engine.getLastCheckpointPosition();
+        log.debug("Checkpointed stream {} up to {} at {}", engine.getStreamID(), covered, written);
+        if (trim && covered != null)
+        {
+            // Trim no further than the checkpoint engines opened from now on will start from. If another
+            // checkpoint is being written, it is not known yet, so the stream is trimmed next time instead.
+            SMRCheckpoint<?> latest;
+            try {
+                latest = CheckpointIndex.findLatest(engine.getInstance(), engine.getStreamID());
+            } catch (UnwrittenException ue) {
+                log.debug("Stream {} not trimmed, latest checkpoint unknown", engine.getStreamID());
+                return;
+            }
+            if (latest == null || latest.getCheckpointPosition() == null)
+            {
+                return;
+            }
+            ITimestamp trimTo = latest.getCheckpointPosition().compareTo(covered) < 0 ?
+                    latest.getCheckpointPosition() : covered;
+            engine.trimmedTo = trimTo;
+            engine.stream.trim(trimTo);
+        }
+    }
+}
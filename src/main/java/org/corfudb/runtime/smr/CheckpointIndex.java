@@ -0,0 +1,173 @@
+package org.corfudb.runtime.smr;
+
+import lombok.extern.slf4j.Slf4j;
+import org.corfudb.runtime.exceptions.UnwrittenException;
+import org.corfudb.runtime.stream.ITimestamp;
+import org.corfudb.runtime.stream.SimpleTimestamp;
+import org.corfudb.runtime.view.ICorfuDBInstance;
+import org.corfudb.runtime.view.IStreamAddressSpace;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Finds the most recent checkpoint of a stream, without reading the stream.
+ *
+ * Checkpoints are written to the stream they checkpoint, and also to a companion index stream, whose ID is
+ * derived from the ID of the stream. The sequencer tracks the last address issued to each stream, so the
+ * last address issued to the index stream is the address of the most recent checkpoint, and finding it takes
+ * one sequencer request and one read. If its token was issued, but the checkpoint is not written yet, the
+ * address is waited for, and if its writer does not write it in time, filled with a hole, and the sequencer
+ * asked again, since the writer then retries at a new token. Only if the writer has failed, so that the
+ * latest checkpoint is a hole, is the latest one which was written not known, until the next checkpoint of
+ * the stream is written. The log is never searched for it.
+ *
+ * The index stream is never trimmed, so once a checkpoint has been written, it, or a later one, is always
+ * found, and the stream may be trimmed up to it. A checkpoint is not written if one at the same or a later
+ * position is found first, so that the latest checkpoint does not go back to a position which has been
+ * trimmed.
+ */
+@Slf4j
+public class CheckpointIndex {
+
+    /** The bits flipped in the ID of a stream to derive the ID of its checkpoint index stream. */
+    static final long INDEX_STREAM_MASK = 0x636b7074L; // "ckpt"
+
+    /** How long to wait for the writer of a checkpoint which has not been written, in milliseconds. */
+    static final long RESOLVE_TIMEOUT = 1000;
+
+    /** Get the ID of the checkpoint index stream of a stream.
+     * @param stream    The ID of the stream checkpointed.
+     * @return          The ID of its checkpoint index stream.
+     */
+    public static UUID getIndexStreamID(UUID stream)
+    {
+        return new UUID(stream.getMostSignificantBits(), stream.getLeastSignificantBits() ^ INDEX_STREAM_MASK);
+    }
+
+    /**
+     * Write a checkpoint to a stream, and to its checkpoint index stream.
+     *
+     * @param instance      The instance the stream belongs to.
+     * @param stream        The ID of the stream checkpointed.
+     * @param checkpoint    The checkpoint to write.
+     * @return              The timestamp the checkpoint was written at, or null, if it was not written because
+     *                      the latest checkpoint already covers its position.
+     */
+    public static ITimestamp write(ICorfuDBInstance instance, UUID stream, SMRCheckpoint<?> checkpoint)
+    {
+        SMRCheckpoint<?> latest;
+        try {
+            latest = findLatest(instance, stream);
+        } catch (UnwrittenException ue) {
+            // Writing this checkpoint makes it the latest again.
+            latest = null;
+        }
+        if (latest != null && latest.getCheckpointPosition() != null && checkpoint.getCheckpointPosition() != null
+                && latest.getCheckpointPosition().compareTo(checkpoint.getCheckpointPosition()) >= 0)
+        {
+            log.debug("Checkpoint of stream {} at {} not written, latest is at {}", stream,
+                    checkpoint.getCheckpointPosition(), latest.getCheckpointPosition());
+            return null;
+        }
+        Set<UUID> streams = new HashSet<>(Arrays.asList(stream, getIndexStreamID(stream)));
+        while (true)
+        {
+            long token = instance.getNewStreamingSequencer().nextToken(streams, 1);
+            IStreamAddressSpace.StreamAddressWriteResult r =
+                    instance.getStreamAddressSpace().write(token, streams, checkpoint);
+            if (r == IStreamAddressSpace.StreamAddressWriteResult.OK)
+            {
+                log.debug("Checkpoint of stream {} at {} written to {}", stream,
+                        checkpoint.getCheckpointPosition(), token);
+                return new SimpleTimestamp(token);
+            }
+            log.debug("Checkpoint of stream {} could not be written to {} ({}), retrying", stream, token, r);
+        }
+    }
+
+    /**
+     * Find the most recent checkpoint of a stream.
+     *
+     * @param instance  The instance the stream belongs to.
+     * @param stream    The ID of the stream.
+     * @param <T>       The type of the state checkpointed.
+     * @return          The most recent checkpoint, or null, if the stream has never been checkpointed.
+     * @throws UnwrittenException   If the latest checkpoint was never written, so the latest one which was is
+     *                              not known.
+     */
+    public static <T> SMRCheckpoint<T> findLatest(ICorfuDBInstance instance, UUID stream)
+            throws UnwrittenException
+    {
+        long tail = getTail(instance, stream);
+        while (tail > 0)
+        {
+            SMRCheckpoint<T> checkpoint = asCheckpoint(resolve(instance, tail - 1), stream);
+            if (checkpoint != null)
+            {
+                return checkpoint;
+            }
+            // The token was lost to a hole fill, so its writer either retries at a new token, or has failed.
+            long next = getTail(instance, stream);
+            if (next == tail)
+            {
+                throw new UnwrittenException("Latest checkpoint of stream " + stream + " was never written",
+                        tail - 1);
+            }
+            tail = next;
+        }
+        return null;
+    }
+
+    /** Get the address after the last one issued to the checkpoint index stream of a stream.
+     * @param instance  The instance the stream belongs to.
+     * @param stream    The ID of the stream checkpointed.
+     * @return          The address after the latest checkpoint, or 0 or less, if there is none.
+     */
+    static long getTail(ICorfuDBInstance instance, UUID stream)
+    {
+        return instance.getNewStreamingSequencer().nextToken(getIndexStreamID(stream), 0);
+    }
+
+    /** Read an address of the checkpoint index stream. If it is empty, wait for its writer, and if the writer
+     * does not write it in time, fill it with a hole, so that what it holds is settled.
+     * @param instance  The instance the stream belongs to.
+     * @param address   The address to read.
+     * @return          The entry at the address, or null, if it is still empty.
+     */
+    static IStreamAddressSpace.StreamAddressSpaceEntry resolve(ICorfuDBInstance instance, long address)
+    {
+        IStreamAddressSpace s = instance.getStreamAddressSpace();
+        IStreamAddressSpace.StreamAddressSpaceEntry e = s.read(address);
+        if (e == null)
+        {
+            e = s.readWaitAsync(address, RESOLVE_TIMEOUT).join();
+        }
+        if (e == null)
+        {
+            log.debug("Checkpoint at {} was not written in time, filling hole", address);
+            s.fillHole(address);
+            e = s.readWaitAsync(address, RESOLVE_TIMEOUT).join();
+        }
+        return e;
+    }
+
+    /** Get the checkpoint of a stream an entry holds.
+     * @param e         The entry, or null.
+     * @param stream    The ID of the stream.
+     * @param <T>       The type of the state checkpointed.
+     * @return          The checkpoint, or null, if the entry is not a checkpoint of the stream.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> SMRCheckpoint<T> asCheckpoint(IStreamAddressSpace.StreamAddressSpaceEntry e, UUID stream)
+    {
+        if (e == null || e.getCode() != IStreamAddressSpace.StreamAddressEntryCode.DATA
+                || !e.containsStream(stream) || !(e.getPayload() instanceof SMRCheckpoint))
+        {
+            return null;
+        }
+        return (SMRCheckpoint<T>) e.getPayload();
+    }
+}
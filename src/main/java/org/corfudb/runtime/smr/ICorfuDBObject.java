@@ -8,7 +8,7 @@ import org.corfudb.runtime.view.*;
 import java.io.Serializable;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * Created by mwei on 5/1/15.
@@ -60,6 +60,16 @@ public interface ICorfuDBObject<U> extends Serializable {
     }
 
     default void sync(ITimestamp ts) { getUnderlyingSMREngine().sync(ts); }
+
+    /**
+     * Set how up to date the state accessors of this object read must be.
+     * @param consistency   The read consistency.
+     * @param maxStaleness  For BOUNDED_STALENESS, the staleness bound, in milliseconds.
+     */
+    default void setReadConsistency(ReadConsistency consistency, long maxStaleness) {
+        getUnderlyingSMREngine().setReadConsistency(consistency, maxStaleness);
+    }
+
     /**
      * Get underlying SMR engine
      * @return  The SMR engine this object was instantiated under.
@@ -86,7 +96,7 @@ public interface ICorfuDBObject<U> extends Serializable {
     default <R> R accessorHelper(ISMREngineCommand<U,R> command)
     {
         ISMREngine<U> e = getSMREngine();
-        e.sync(null);
+        e.syncForRead();
         return getSMREngine().read(command);
     }
 
@@ -95,16 +105,22 @@ public interface ICorfuDBObject<U> extends Serializable {
      * be executed.
      * @param command       The command to be executed.
      */
-    @SuppressWarnings("unchecked")
     default void mutatorHelper(IConsumerOnlySMREngineCommand<U> command)
     {
-        BiFunction<U, ISMREngine.ISMREngineOptions, Void> bf = (x,o) -> {
-            command.apply(x,o);
-            return null;
-        };
+        mutatorHelper(null, command);
+    }
 
-        getSMREngine().propose(new LambdaSMRCommand<U, Void>(
-                (BiFunction<U, ISMREngine.ISMREngineOptions, Void> & Serializable) bf), true);
+    /**
+     * Called whenever an object is to be mutated with a command which only reads or writes
+     * the given key of the state.
+     * @param conflictKey   The key, or null, if the command may read or write any of the state.
+     * @param command       The command to be executed.
+     */
+    @SuppressWarnings("unchecked")
+    default void mutatorHelper(Object conflictKey, IConsumerOnlySMREngineCommand<U> command)
+    {
+        getSMREngine().propose(new LambdaSMRCommand<U, Void>(conflictKey,
+                (Function<U, Void> & Serializable) x -> command.apply(x, null)), true);
     }
 
     /**
@@ -112,13 +128,26 @@ public interface ICorfuDBObject<U> extends Serializable {
      * @param command       The command to be executed.
      * @return              The result of the access.
      */
+    default <R> R mutatorAccessorHelper(ISMREngineCommand<U,R> command)
+    {
+        return mutatorAccessorHelper(null, command);
+    }
+
+    /**
+     * Called whenever and object will be both mutated and accessed by a command which
+     * only reads or writes the given key of the state.
+     * @param conflictKey   The key, or null, if the command may read or write any of the state.
+     * @param command       The command to be executed.
+     * @return              The result of the access.
+     */
     @SuppressWarnings("unchecked")
     @SneakyThrows
-    default <R> R mutatorAccessorHelper(ISMREngineCommand<U,R> command)
+    default <R> R mutatorAccessorHelper(Object conflictKey, ISMREngineCommand<U,R> command)
     {
         CompletableFuture<R> o = new CompletableFuture<>();
         ISMREngine<U> e = getSMREngine();
-        e.proposeAsync(new LambdaSMRCommand<U, R>(command), o, false)
+        e.proposeAsync(new LambdaSMRCommand<U, R>(conflictKey,
+                (Function<U, R> & Serializable) x -> command.apply(x, null)), o, false)
                 .thenAccept(e::sync);
         return o.join();
     }
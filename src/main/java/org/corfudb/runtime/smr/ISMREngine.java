@@ -47,6 +47,23 @@ public interface ISMREngine<T> {
      */
     <R> void sync(ITimestamp ts);
 
+    /**
+     * Synchronize the SMR engine before an accessor reads it, as far as its read consistency requires.
+     * By default, this synchronizes the engine to the most recent version.
+     */
+    default void syncForRead() { sync(null); }
+
+    /**
+     * Set how up to date the state accessors read must be.
+     * By default, this does nothing, as an engine which synchronizes to the most recent version before
+     * every read meets every read consistency.
+     * @param consistency   The read consistency.
+     * @param maxStaleness  For BOUNDED_STALENESS, how long ago, in milliseconds, the engine may have last
+     *                      checked the tail of its stream for an accessor to skip checking it.
+     */
+    default void setReadConsistency(ReadConsistency consistency, long maxStaleness) {
+    }
+
     void setImplementingObject(ICorfuDBObject object);
     ICorfuDBObject getImplementingObject();
 
@@ -0,0 +1,27 @@
+package org.corfudb.runtime.smr;
+
+/**
+ * How up to date the state an accessor of an object reads must be.
+ */
+public enum ReadConsistency {
+
+    /**
+     * Every accessor checks the tail of the stream, and applies every entry before it, so that it reads
+     * every write which completed before it began.
+     */
+    LINEARIZABLE,
+
+    /**
+     * An accessor reads the state as it stands, without checking the tail of the stream, if the engine
+     * checked the tail less than the staleness bound ago, so it may miss writes made by other clients within
+     * the bound. Writes proposed by the engine itself are always read.
+     */
+    BOUNDED_STALENESS,
+
+    /**
+     * Every accessor reads every write which completed before it began, as with LINEARIZABLE, but accessors
+     * which arrive while the engine is already checking the tail share the next check, instead of each making
+     * their own.
+     */
+    COALESCED
+}
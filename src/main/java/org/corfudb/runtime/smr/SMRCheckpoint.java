@@ -7,7 +7,7 @@ import java.io.Serializable;
 /**
  * Created by mwei on 5/6/15.
  */
-public class SMRCheckpoint<T> implements Serializable {
+public class SMRCheckpoint<T> implements ISMRCheckpoint<T>, Serializable {
     ITimestamp checkpoint;
     T underlyingObject;
 
@@ -17,4 +17,22 @@ public class SMRCheckpoint<T> implements Serializable {
         underlyingObject = object;
     }
 
+    /**
+     * Get the checkpointed object
+     * @return      The state captured by this checkpoint.
+     */
+    @Override
+    public T getCheckpoint() {
+        return underlyingObject;
+    }
+
+    /**
+     * Get the checkpoint position
+     * @return      The address of the last entry of the stream applied to the state, or null if
+     *              no entry was applied.
+     */
+    @Override
+    public ITimestamp getCheckpointPosition() {
+        return checkpoint;
+    }
 }
@@ -3,20 +3,35 @@ package org.corfudb.runtime.smr;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.cliffc.high_scale_lib.NonBlockingHashMapLong;
 import org.corfudb.runtime.exceptions.OverwriteException;
+import org.corfudb.runtime.exceptions.UnwrittenException;
 import org.corfudb.runtime.entries.IStreamEntry;
 import org.corfudb.runtime.smr.HoleFillingPolicy.IHoleFillingPolicy;
 import org.corfudb.runtime.smr.HoleFillingPolicy.TimeoutHoleFillPolicy;
+import org.corfudb.runtime.smr.smrprotocol.BatchSMRCommand;
 import org.corfudb.runtime.smr.smrprotocol.SMRCommand;
 import org.corfudb.runtime.stream.IStream;
 import org.corfudb.runtime.stream.ITimestamp;
+import org.corfudb.runtime.stream.SimpleTimestamp;
 import org.corfudb.runtime.view.ICorfuDBInstance;
 import org.corfudb.runtime.view.IStreamAddressSpace;
+import org.corfudb.runtime.view.Serializer;
+import org.corfudb.runtime.view.StreamAddressSpace;
 
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 /**
  * Created by mwei on 5/1/15.
@@ -24,17 +39,120 @@ import java.util.concurrent.ConcurrentHashMap;
 @Slf4j
 public class SimpleSMREngine<T> implements ISMREngine<T> {
 
+    /** The maximum number of reads kept in flight while synchronizing. */
+    static final int SYNC_READ_WINDOW = 256;
+
+    /** The default maximum number of commands written in a single log entry. */
+    public static final int DEFAULT_PROPOSAL_BATCH_SIZE = 64;
+
+    /** The default minimum number of commands with conflict keys applied in parallel, or 0 to never. */
+    public static final int DEFAULT_PARALLEL_APPLY_THRESHOLD = 64;
+
+    /** The maximum number of entries gathered before they are applied. */
+    static final int MAX_READY_ENTRIES = 4096;
+
+    /** The pool commands with different conflict keys are applied on. */
+    static final ForkJoinPool applyPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /** The engine whose commands a thread of the apply pool is applying, or null, if it is applying none. */
+    static final ThreadLocal<SimpleSMREngine<?>> applyingOnPool = new ThreadLocal<>();
+
+    @Getter
     IStream stream;
     T underlyingObject;
 
     @Getter
     public ITimestamp streamPointer;
 
+    /** The latest of the entries this engine proposed, or null, if it has proposed none. */
+    final AtomicReference<ITimestamp> lastProposal = new AtomicReference<>();
+
+    /** The address of the last entry applied to the object, or null, if none has been. */
+    @Getter
+    volatile ITimestamp appliedTo;
+
+    /** The position of the checkpoint the engine started from, or null, if it started from the beginning. */
+    @Getter
+    ITimestamp restoredCheckpoint;
+
+    /** The position of the last checkpoint written by the engine, or null, if it has written none. */
+    @Getter
+    volatile ITimestamp lastCheckpointPosition;
+
+    /** The position up to which the stream may have been trimmed, or null, if none of it may have been. */
+    @Getter
+    volatile ITimestamp trimmedTo;
+
+    /** The number of entries, and an estimate of their serialized size, applied since the last checkpoint. */
+    @Getter
+    volatile long entriesSinceCheckpoint;
+    @Getter
+    volatile long bytesSinceCheckpoint;
+
+    /** How up to date the state accessors read must be, and for BOUNDED_STALENESS, the bound in nanoseconds. */
+    @Getter
+    volatile ReadConsistency readConsistency = ReadConsistency.LINEARIZABLE;
+    volatile long maxStalenessNanos;
+
+    /** When the most recent completed tail check was started (System.nanoTime()), if there has been one. */
+    volatile long syncedAt;
+    volatile boolean synced;
+
+    /** The number of tail checks made to synchronize to the most recent version. */
+    @Getter
+    final AtomicLong tailChecks = new AtomicLong();
+
+    /** The coalesced sync in flight, and the one which the accessors arriving during it wait for. */
+    final Object syncLock = new Object();
+    CompletableFuture<Void> runningSync;
+    CompletableFuture<Void> nextSync;
+
+    /**
+     * The maximum number of commands written in a single log entry, or 1 to write each command in an entry
+     * of its own.
+     */
+    @Getter
+    @Setter
+    volatile int proposalBatchSize = DEFAULT_PROPOSAL_BATCH_SIZE;
+
+    /**
+     * The maximum number of entries of proposals being written at once. Further commands wait for an entry
+     * to complete, and are batched while they wait.
+     */
+    @Getter
+    @Setter
+    volatile int proposalWriteWindow = StreamAddressSpace.DEFAULT_CHAIN_WRITE_WINDOW;
+
+    /** A command waiting to be written, with the future completed once it is written. */
+    static class PendingProposal {
+        final SMRCommand command;
+        final CompletableFuture completion;
+        final CompletableFuture<ITimestamp> proposed = new CompletableFuture<>();
+
+        PendingProposal(SMRCommand command, CompletableFuture completion)
+        {
+            this.command = command;
+            this.completion = completion;
+        }
+    }
+
+    /** The commands waiting to be written, and the number of entries being written. */
+    final Object proposalLock = new Object();
+    final ArrayList<PendingProposal> pendingProposals = new ArrayList<>();
+    int proposalsInFlight;
+
+    /** The number of log entries written by proposals, and the number of commands proposed. */
+    @Getter
+    final AtomicLong proposalEntries = new AtomicLong();
     @Getter
-    ITimestamp lastProposal;
+    final AtomicLong proposedCommands = new AtomicLong();
 
     Class<T> type;
-    final ConcurrentHashMap<ITimestamp, CompletableFuture> completionTable = new ConcurrentHashMap<ITimestamp, CompletableFuture>();
+    /** The futures of the proposals which have not been written yet. */
+    final Set<CompletableFuture<ITimestamp>> unwrittenProposals = ConcurrentHashMap.newKeySet();
+
+    /** The completions of the commands proposed by this engine, by the address of their entry. */
+    final NonBlockingHashMapLong<CompletableFuture> completionTable = new NonBlockingHashMapLong<>();
     HashSet<ITimestamp> localTable;
     Map<UUID, IBufferedSMREngine> cachedEngines = Collections.synchronizedMap(new WeakHashMap<>());
 
@@ -108,50 +226,388 @@ public class SimpleSMREngine<T> implements ISMREngine<T> {
         underlyingObject = object;
     }
 
+    /** The logical timestamp of the last entry applied. Only the apply loop reads or writes it. */
     public volatile ITimestamp lastApplied = ITimestamp.getMinTimestamp();
-    public PriorityQueue<IStreamEntry> applyQueue = new PriorityQueue<IStreamEntry>(
-            //sort by logical timestamp.
-            (IStreamEntry x, IStreamEntry y) -> x.getLogicalTimestamp().compareTo(y.getLogicalTimestamp())
-    );
+
+    /**
+     * The entries learned from the stream and not yet taken by the apply loop, and the tasks to run between
+     * entries, in the order they were learned or submitted.
+     */
+    final ConcurrentLinkedQueue<Object> learnQueue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The number of times the apply loop has been signalled since it last found the queue empty. The thread
+     * which raises it from zero runs the loop; every other thread only enqueues.
+     */
+    final AtomicInteger learnSignals = new AtomicInteger();
+
+    /** The thread running the apply loop, or null, if it is not running. */
+    volatile Thread applyThread;
+
+    /** The entries taken ahead of their turn, by logical timestamp. Only the apply loop reads or writes it. */
+    final HashMap<ITimestamp, IStreamEntry> reorderBuffer = new HashMap<>();
+
+    /**
+     * The entries taken in turn and not yet applied, and the logical timestamp of the last of them (or of the
+     * last entry applied, if there are none). Only the apply loop reads or writes them.
+     */
+    final ArrayList<IStreamEntry> readyEntries = new ArrayList<>();
+    ITimestamp lastTaken = ITimestamp.getMinTimestamp();
+
+    /**
+     * The minimum number of consecutive commands with conflict keys which are applied in parallel, or 0 to
+     * apply every command in turn. Commands are only applied in parallel if the state is a ConcurrentMap.
+     */
+    @Getter
+    @Setter
+    volatile int parallelApplyThreshold = DEFAULT_PARALLEL_APPLY_THRESHOLD;
+
+    /** The number of commands applied in parallel. */
+    @Getter
+    final AtomicLong parallelCommands = new AtomicLong();
+
+    /** Get the address of a timestamp of the underlying stream.
+     * @param ts    The timestamp.
+     * @return      The address it refers to.
+     */
+    static long addressOf(ITimestamp ts)
+    {
+        return ((SimpleTimestamp) ts).address;
+    }
 
     public <R> void apply(IStreamEntry entry)
     {
+        CompletableFuture<R> completion = null;
         try {
             log.trace("LearnApply[{}/{}]: Apply", entry.getTimestamp(), entry.getLogicalTimestamp());
             if (entry.getPayload() != null && entry.getPayload() instanceof SMRCommand) {
                 SMRCommand command = (SMRCommand) entry.getPayload();
                 command.setInstance(getInstance());
                 ITimestamp entryTS = entry.getTimestamp();
-                CompletableFuture<R> completion = completionTable.get(entryTS);
-                completionTable.remove(entryTS);
+                completion = completionTable.remove(addressOf(entryTS));
                 R r = (R) command.execute(underlyingObject, this, entryTS);
                 if (completion != null) {
                     log.trace("LearnApply[{}/{}]: Completing Future.", entry.getTimestamp(), entry.getLogicalTimestamp());
                     completion.complete(r);
                 }
             }
-            lastApplied = entry.getLogicalTimestamp();
         }
         catch (Exception e)
         {
-            log.error("LearnApply[{}/{}]: Error during apply of entry!", e);
+            log.error("LearnApply[{}/{}]: Error during apply of entry!", entry.getTimestamp(),
+                    entry.getLogicalTimestamp(), e);
+            if (completion != null) {
+                completion.completeExceptionally(e);
+            }
         }
+        applied(entry);
     }
 
-    public synchronized void learnAndApply(IStreamEntry entry)
+    /** Record that an entry has been applied.
+     * @param entry The entry applied.
+     * @return      True, if the entry was an entry of the stream, rather than the end of an empty batch.
+     */
+    boolean applied(IStreamEntry entry)
     {
-        if(ITimestamp.isMin(lastApplied) && stream.getNextTimestamp(lastApplied).equals(entry.getLogicalTimestamp()))
+        lastApplied = entry.getLogicalTimestamp();
+        // Entries which only expire an empty batch have no address.
+        if (entry instanceof IStreamAddressSpace.StreamAddressSpaceEntry &&
+                ((IStreamAddressSpace.StreamAddressSpaceEntry) entry).getCode()
+                        == IStreamAddressSpace.StreamAddressEntryCode.EMPTY_BATCH) {
+            return false;
+        }
+        appliedTo = entry.getTimestamp();
+        entriesSinceCheckpoint++;
+        bytesSinceCheckpoint += entry instanceof IStreamAddressSpace.StreamAddressSpaceEntry &&
+                ((IStreamAddressSpace.StreamAddressSpaceEntry) entry).getSerializedSize() > 0 ?
+                ((IStreamAddressSpace.StreamAddressSpaceEntry) entry).getSerializedSize() :
+                StreamAddressSpace.DEFAULT_CACHE_ENTRY_WEIGHT;
+        return true;
+    }
+
+    /**
+     * Learn an entry of the stream, and apply it once every entry before it has been applied. The entry is
+     * applied by whichever thread is running the apply loop, which may not be the caller.
+     *
+     * @param entry The entry learned.
+     */
+    public void learnAndApply(IStreamEntry entry)
+    {
+        learnQueue.offer(entry);
+        drainLearned();
+    }
+
+    /**
+     * Run a task on the apply loop, between entries, once every entry learned before it has been taken.
+     *
+     * @param task  The task to run, which must not block.
+     * @return      A future which completes with the result of the task.
+     */
+    <V> CompletableFuture<V> runBetweenEntries(Supplier<V> task)
+    {
+        CompletableFuture<V> f = new CompletableFuture<>();
+        learnQueue.offer((Runnable) () -> {
+            try {
+                f.complete(task.get());
+            } catch (Exception e) {
+                f.completeExceptionally(e);
+            }
+        });
+        drainLearned();
+        return f;
+    }
+
+    /** Run the apply loop, unless another thread is running it, in which case it will take what was enqueued. */
+    void drainLearned()
+    {
+        if (learnSignals.getAndIncrement() != 0)
         {
-            apply(entry);
+            return;
         }
-        else
+        int signals = 1;
+        do {
+            applyThread = Thread.currentThread();
+            Object o;
+            while ((o = learnQueue.poll()) != null)
+            {
+                if (o instanceof Runnable) {
+                    applyReady();
+                    ((Runnable) o).run();
+                } else {
+                    learn((IStreamEntry) o);
+                }
+            }
+            applyReady();
+            applyThread = null;
+            signals = learnSignals.addAndGet(-signals);
+        } while (signals != 0);
+    }
+
+    /**
+     * Get a future which completes once the apply loop has taken every entry learned so far. A command which
+     * synchronizes its own engine while it is applied cannot wait for the loop it runs on, so on the apply
+     * loop, or on a thread of the apply pool applying the commands of this engine, the future is already
+     * complete, and the entries are applied once the command returns.
+     *
+     * @return  A future which completes once the learned entries have been taken.
+     */
+    CompletableFuture<Void> learned()
+    {
+        if (applyThread == Thread.currentThread() || applyingOnPool.get() == this)
+        {
+            return CompletableFuture.completedFuture(null);
+        }
+        return runBetweenEntries(() -> null);
+    }
+
+    /** Take an entry in turn if it is next, followed by any entries taken ahead of it.
+     * @param entry The entry taken.
+     */
+    void learn(IStreamEntry entry)
+    {
+        if (!stream.getNextTimestamp(lastTaken).equals(entry.getLogicalTimestamp()))
+        {
+            log.trace("LearnApply[{}/{}]: Buffered, Previous={}", entry.getTimestamp(),
+                    entry.getLogicalTimestamp(), lastTaken);
+            reorderBuffer.put(entry.getLogicalTimestamp(), entry);
+            return;
+        }
+        ready(entry);
+        while (!reorderBuffer.isEmpty()
+                && (entry = reorderBuffer.remove(stream.getNextTimestamp(lastTaken))) != null)
+        {
+            ready(entry);
+        }
+    }
+
+    /** Add an entry taken in turn to the entries to apply.
+     * @param entry The entry.
+     */
+    void ready(IStreamEntry entry)
+    {
+        readyEntries.add(entry);
+        lastTaken = entry.getLogicalTimestamp();
+        if (readyEntries.size() >= MAX_READY_ENTRIES)
+        {
+            applyReady();
+        }
+    }
+
+    /** A command to apply in parallel, and where to put its result. */
+    static class KeyedCommand {
+        final SMRCommand command;
+        final Object key;
+        final ITimestamp timestamp;
+        final Object[] results;
+        final int index;
+
+        KeyedCommand(SMRCommand command, Object key, ITimestamp timestamp, Object[] results, int index)
+        {
+            this.command = command;
+            this.key = key;
+            this.timestamp = timestamp;
+            this.results = results;
+            this.index = index;
+        }
+    }
+
+    /**
+     * Apply the entries taken in turn. If the state allows concurrent access to different keys, runs of
+     * commands which declare conflict keys are applied in parallel, with the commands for each key applied in
+     * turn; a command without a conflict key is applied once every command before it has been applied, and
+     * before any command after it.
+     */
+    void applyReady()
+    {
+        if (readyEntries.isEmpty())
+        {
+            return;
+        }
+        int threshold = parallelApplyThreshold;
+        if (threshold <= 0 || readyEntries.size() < threshold || !(underlyingObject instanceof ConcurrentMap))
+        {
+            readyEntries.forEach(this::apply);
+            readyEntries.clear();
+            return;
+        }
+        int runStart = 0;
+        List<KeyedCommand> run = new ArrayList<>();
+        List<Object[]> runResults = new ArrayList<>();
+        for (int i = 0; i < readyEntries.size(); i++)
+        {
+            IStreamEntry entry = readyEntries.get(i);
+            Object[] results = addKeyedCommands(entry, run);
+            if (results == null)
+            {
+                applyRun(readyEntries.subList(runStart, i), runResults, run);
+                apply(entry);
+                runStart = i + 1;
+                run = new ArrayList<>();
+                runResults = new ArrayList<>();
+            }
+            else
+            {
+                runResults.add(results);
+            }
+        }
+        applyRun(readyEntries.subList(runStart, readyEntries.size()), runResults, run);
+        readyEntries.clear();
+    }
+
+    /**
+     * Add the commands of an entry to a run of commands to apply in parallel, if they all have conflict keys.
+     *
+     * @param entry The entry.
+     * @param run   The run of commands.
+     * @return      Where the results of the commands of the entry will be put, or null, if a command of the
+     *              entry has no conflict key.
+     */
+    @SuppressWarnings("unchecked")
+    Object[] addKeyedCommands(IStreamEntry entry, List<KeyedCommand> run)
+    {
+        if (!(entry.getPayload() instanceof SMRCommand))
+        {
+            return new Object[0];
+        }
+        SMRCommand command = (SMRCommand) entry.getPayload();
+        List<SMRCommand> commands = command instanceof BatchSMRCommand ?
+                ((BatchSMRCommand) command).getCommands() : Collections.singletonList(command);
+        Object[] keys = new Object[commands.size()];
+        for (int i = 0; i < keys.length; i++)
+        {
+            if ((keys[i] = commands.get(i).getConflictKey(this)) == null)
+            {
+                return null;
+            }
+        }
+        Object[] results = new Object[commands.size()];
+        for (int i = 0; i < keys.length; i++)
+        {
+            run.add(new KeyedCommand(commands.get(i), keys[i], entry.getTimestamp(), results, i));
+        }
+        return results;
+    }
+
+    /**
+     * Apply a run of entries whose commands all have conflict keys, partitioning the commands by key.
+     *
+     * @param entries   The entries, in turn.
+     * @param results   Where the results of the commands of each entry are put.
+     * @param run       The commands of the entries, in turn.
+     */
+    @SuppressWarnings("unchecked")
+    void applyRun(List<IStreamEntry> entries, List<Object[]> results, List<KeyedCommand> run)
+    {
+        if (run.size() < Math.max(parallelApplyThreshold, 1))
+        {
+            entries.forEach(this::apply);
+            return;
+        }
+        int partitionCount = applyPool.getParallelism();
+        List<List<KeyedCommand>> partitions = new ArrayList<>(partitionCount);
+        for (int i = 0; i < partitionCount; i++)
         {
-            log.trace("LearnApply[{}/{}]: Enqueued, Previous={}, Next={}", entry.getTimestamp(), entry.getLogicalTimestamp(), lastApplied, stream.getNextTimestamp(lastApplied));
-            applyQueue.offer(entry);
+            partitions.add(new ArrayList<>());
         }
-        while (applyQueue.peek() != null && applyQueue.peek().getLogicalTimestamp().equals(stream.getNextTimestamp(lastApplied)))
+        for (KeyedCommand c : run)
         {
-            apply(applyQueue.poll());
+            int h = c.key.hashCode();
+            partitions.get(((h ^ (h >>> 16)) & Integer.MAX_VALUE) % partitionCount).add(c);
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(partitionCount);
+        for (List<KeyedCommand> partition : partitions)
+        {
+            if (!partition.isEmpty())
+            {
+                tasks.add(applyPool.submit(() -> {
+                    // A pool thread joining the tasks of another engine may apply them in between.
+                    SimpleSMREngine<?> applying = applyingOnPool.get();
+                    applyingOnPool.set(this);
+                    try {
+                        partition.forEach(this::execute);
+                    } finally {
+                        applyingOnPool.set(applying);
+                    }
+                }));
+            }
+        }
+        tasks.forEach(ForkJoinTask::join);
+        parallelCommands.addAndGet(run.size());
+
+        for (int i = 0; i < entries.size(); i++)
+        {
+            IStreamEntry entry = entries.get(i);
+            if (entry.getPayload() instanceof SMRCommand)
+            {
+                CompletableFuture completion = completionTable.remove(addressOf(entry.getTimestamp()));
+                Object[] r = results.get(i);
+                if (completion != null)
+                {
+                    if (entry.getPayload() instanceof BatchSMRCommand) {
+                        completion.complete(r);
+                    } else if (r[0] instanceof BatchSMRCommand.Failure) {
+                        completion.completeExceptionally(((BatchSMRCommand.Failure) r[0]).getCause());
+                    } else {
+                        completion.complete(r[0]);
+                    }
+                }
+            }
+            applied(entry);
+        }
+    }
+
+    /** Execute a command of a run applied in parallel.
+     * @param c The command.
+     */
+    @SuppressWarnings("unchecked")
+    void execute(KeyedCommand c)
+    {
+        try {
+            c.command.setInstance(getInstance());
+            c.results[c.index] = c.command.execute(underlyingObject, this, c.timestamp);
+        } catch (Exception e) {
+            log.error("LearnApply[{}]: Error during apply of command!", c.timestamp, e);
+            c.results[c.index] = new BatchSMRCommand.Failure(e);
         }
     }
 
@@ -166,31 +622,121 @@ public class SimpleSMREngine<T> implements ISMREngine<T> {
     @SuppressWarnings("unchecked")
     public <R> void sync(ITimestamp ts) {
         if (ts == null) {
-            stream.checkAsync()
-                    .thenApplyAsync(t -> {
-                        log.trace("Sync to most recent @ {}", t);
-                        return stream.readToAsync(t).thenApplyAsync(entryArray -> {
-                                    if (entryArray != null) {
-                                        Arrays.stream(entryArray)
-                                                .forEach(this::learnAndApply);
-                                    }
-                                    return t;
-                                });
-                    }).join();
+            syncToTail().join();
         }
         else
         {
             log.trace("Sync to {}", ts);
-            stream.readToAsync(stream.getNextTimestamp(ts))
-                    .thenApplyAsync(entryArray -> {
-                        if (entryArray != null) {
-                            Arrays.stream(entryArray)
-                                    .forEach(this::learnAndApply);
+            stream.readToAsync(stream.getNextTimestamp(ts), SYNC_READ_WINDOW, this::learnAndApply)
+                    .thenCompose(v -> learned())
+                    .join();
+        }
+    }
+
+    /**
+     * Check the tail of the stream, and apply every entry before it.
+     *
+     * @return A future which completes once every entry before the tail has been applied.
+     */
+    CompletableFuture<Void> syncToTail()
+    {
+        long started = System.nanoTime();
+        tailChecks.incrementAndGet();
+        return stream.checkAsync()
+                .thenCompose(t -> {
+                    log.trace("Sync to most recent @ {}", t);
+                    return stream.readToAsync(t, SYNC_READ_WINDOW, this::learnAndApply);
+                })
+                .thenCompose(v -> learned())
+                .thenRun(() -> {
+                    synchronized (syncLock) {
+                        if (!synced || started - syncedAt > 0) {
+                            syncedAt = started;
+                            synced = true;
                         }
-                        return ts;
                     }
-                    ).join();
+                });
+    }
+
+    /**
+     * Synchronize to the most recent version, sharing the tail check with other callers. A caller which
+     * arrives while a check is in flight waits for the next check, which starts once the one in flight
+     * completes, since the check in flight may have seen the tail before the caller began.
+     *
+     * @return A future which completes once the engine has been synchronized.
+     */
+    CompletableFuture<Void> coalescedSync()
+    {
+        CompletableFuture<Void> f;
+        synchronized (syncLock) {
+            if (runningSync != null)
+            {
+                if (nextSync == null)
+                {
+                    nextSync = new CompletableFuture<>();
+                }
+                return nextSync;
+            }
+            f = runningSync = new CompletableFuture<>();
         }
+        runCoalescedSync(f);
+        return f;
+    }
+
+    void runCoalescedSync(CompletableFuture<Void> f)
+    {
+        syncToTail().whenComplete((r, ex) -> {
+            CompletableFuture<Void> next;
+            synchronized (syncLock) {
+                next = runningSync = nextSync;
+                nextSync = null;
+            }
+            if (ex != null) {
+                f.completeExceptionally(ex);
+            } else {
+                f.complete(null);
+            }
+            if (next != null) {
+                runCoalescedSync(next);
+            }
+        });
+    }
+
+    /**
+     * Synchronize the SMR engine before an accessor reads it, as far as its read consistency requires.
+     */
+    @Override
+    public void syncForRead() {
+        switch (readConsistency)
+        {
+            case BOUNDED_STALENESS:
+                ITimestamp proposed = lastProposal.get();
+                ITimestamp applied = appliedTo;
+                boolean ownWritesApplied = proposed == null || (applied != null && applied.compareTo(proposed) >= 0);
+                if (synced && ownWritesApplied && System.nanoTime() - syncedAt < maxStalenessNanos)
+                {
+                    return;
+                }
+                coalescedSync().join();
+                return;
+            case COALESCED:
+                coalescedSync().join();
+                return;
+            default:
+                sync(null);
+        }
+    }
+
+    /**
+     * Set how up to date the state accessors read must be.
+     *
+     * @param consistency  The read consistency.
+     * @param maxStaleness For BOUNDED_STALENESS, the staleness bound, in milliseconds.
+     */
+    @Override
+    public void setReadConsistency(ReadConsistency consistency, long maxStaleness) {
+        maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(maxStaleness);
+        readConsistency = consistency;
     }
 
     /**
@@ -230,20 +776,7 @@ public class SimpleSMREngine<T> implements ISMREngine<T> {
             return streamPointer;
         }
         try {
-            //ITimestamp t = stream.append(command);
-            //if (completion != null) { completionTable.put(t, completion); }
-            ITimestamp t = stream.reserve(1)[0];
-                if (completion != null) {
-                    completionTable.put(t, completion);
-                }
-            stream.write(t, command);
-            lastProposal = t; //TODO: fix thread safety?
-            return t;
-        }
-        catch (OverwriteException oe)
-        {
-            log.warn("Warning, propose resulted in overwrite @ {}, reproposing.", oe.address);
-            return propose(command, completion, readOnly);
+            return proposeBatched(command, completion).join();
         }
         catch (Exception e)
         {
@@ -267,32 +800,205 @@ public class SimpleSMREngine<T> implements ISMREngine<T> {
             return CompletableFuture.completedFuture(streamPointer);
         }
 
-        final ITimestamp[] proposalTimestamp = new ITimestamp[1];
-        return stream.reserveAsync(1)
-                .thenApply(
-                        t -> {
-                            log.trace("Proposal[{}]: Acquired token", t[0]);
-                            if (completion != null) {
-                                log.trace("Proposal[{}]: Inserted into completion table.", t[0]);
-                                completionTable.put(t[0], completion);
-                            }
-                            try {
-                                log.trace("Proposal[{}]: Writing proposal to stream", t[0]);
-                                proposalTimestamp[0] = t[0];
-                                return stream.writeAsync(t[0], command);
-                            } catch (Exception e) {
-                                log.error("Exception during write.", e);
-                                throw new RuntimeException(e);
-                            }
+        return proposeBatched(command, completion);
+    }
+
+    /**
+     * Propose a command, writing it together with the other commands proposed while the entries before it
+     * are being written. A command proposed while no entry is being written is written at once, on its own,
+     * so batching adds no latency, and the size of a batch grows with the number of concurrent proposers.
+     * Once a batch is full it is written without waiting for the entries before it, up to the write window.
+     *
+     * @param command       The command to propose.
+     * @param completion    A future to complete with the result of the command when it is applied, or null.
+     * @return              A future which completes with the timestamp of the entry once it is written.
+     */
+    <R> CompletableFuture<ITimestamp> proposeBatched(SMRCommand<T,R> command, CompletableFuture<R> completion)
+    {
+        PendingProposal p = new PendingProposal(command, completion);
+        unwrittenProposals.add(p.proposed);
+        p.proposed.whenComplete((t, ex) -> unwrittenProposals.remove(p.proposed));
+        synchronized (proposalLock) {
+            pendingProposals.add(p);
+        }
+        flushProposals(true);
+        return p.proposed;
+    }
+
+    /**
+     * Write the pending commands in entries, while the write window has room.
+     *
+     * @param onlyFull  Whether, while entries are being written, only full batches are written.
+     */
+    void flushProposals(boolean onlyFull)
+    {
+        List<PendingProposal> batch;
+        while ((batch = nextBatch(onlyFull)) != null)
+        {
+            writeBatch(batch);
+        }
+    }
+
+    /**
+     * Take the next batch of pending commands to write, counting its entry as in flight.
+     *
+     * @param onlyFull  Whether, while entries are being written, only a full batch is taken.
+     * @return          The batch, or null if there is none to write now.
+     */
+    List<PendingProposal> nextBatch(boolean onlyFull)
+    {
+        synchronized (proposalLock) {
+            int batchSize = Math.max(proposalBatchSize, 1);
+            if (pendingProposals.isEmpty() || proposalsInFlight >= Math.max(proposalWriteWindow, 1)
+                    || (onlyFull && proposalsInFlight > 0 && pendingProposals.size() < batchSize)) {
+                return null;
+            }
+            List<PendingProposal> head =
+                    pendingProposals.subList(0, Math.min(pendingProposals.size(), batchSize));
+            List<PendingProposal> batch = new ArrayList<>(head);
+            head.clear();
+            proposalsInFlight++;
+            return batch;
+        }
+    }
+
+    /** Write a batch of commands in an entry, and once it is written, write the commands pending then. */
+    @SuppressWarnings("unchecked")
+    void writeBatch(List<PendingProposal> batch)
+    {
+        SMRCommand command;
+        CompletableFuture completion;
+        if (batch.size() == 1)
+        {
+            command = batch.get(0).command;
+            completion = batch.get(0).completion;
+        }
+        else
+        {
+            List<SMRCommand<T,?>> commands = new ArrayList<>(batch.size());
+            batch.forEach(p -> commands.add(p.command));
+            command = new BatchSMRCommand<T>(commands);
+            CompletableFuture<Object[]> results = new CompletableFuture<>();
+            results.whenComplete((r, ex) -> {
+                for (int i = 0; i < batch.size(); i++) {
+                    CompletableFuture c = batch.get(i).completion;
+                    if (c == null) {
+                        continue;
+                    }
+                    if (ex != null) {
+                        c.completeExceptionally(ex);
+                    } else if (r[i] instanceof BatchSMRCommand.Failure) {
+                        c.completeExceptionally(((BatchSMRCommand.Failure) r[i]).getCause());
+                    } else {
+                        c.complete(r[i]);
+                    }
+                }
+            });
+            completion = results;
+        }
+
+        proposalEntries.incrementAndGet();
+        proposedCommands.addAndGet(batch.size());
+        // Proposers may block on what follows the proposal (as mutatorAccessorHelper syncs to it), and completing
+        // their futures runs what follows inline. So they are not completed on the thread which completed the
+        // write, which also delivers the reads they wait for, and the next batch is sent before they are.
+        writeProposal(command, completion)
+                .whenCompleteAsync((t, ex) -> {
+                    if (ex != null) {
+                        log.warn("Exception writing proposal of {} command(s)", batch.size(), ex);
+                        if (completion != null) {
+                            completion.completeExceptionally(ex);
                         }
-                )
-                .thenApply( r -> {
-                    log.trace("Proposal[{}]: Wrote proposal to stream", proposalTimestamp[0]);
-                    lastProposal = proposalTimestamp[0]; //TODO: Should be max.
-                    return proposalTimestamp[0];
+                    }
+                    synchronized (proposalLock) {
+                        proposalsInFlight--;
+                    }
+                    flushProposals(false);
+                    batch.forEach(p -> {
+                        if (ex != null) {
+                            p.proposed.completeExceptionally(ex);
+                        } else {
+                            p.proposed.complete(t);
+                        }
+                    });
                 });
     }
 
+    /**
+     * Apply the entries of the commands this engine proposed, once the instance has dropped the engine, so
+     * that their completions do not wait for a sync which nobody will make. The proposals being written are
+     * waited for first, and commands whose entries still could not be applied are failed.
+     */
+    public void drain()
+    {
+        if (unwrittenProposals.isEmpty() && completionTable.isEmpty())
+        {
+            return;
+        }
+        log.debug("Draining {} proposal(s) of dropped engine for stream {}",
+                unwrittenProposals.size() + completionTable.size(), getStreamID());
+        // Proposals which failed to be written have failed their completions already.
+        CompletableFuture.allOf(unwrittenProposals.toArray(new CompletableFuture[0]))
+                .handle((v, ex) -> null)
+                .join();
+        sync(null);
+        completionTable.values().forEach(c -> c.completeExceptionally(
+                new IllegalStateException("Engine for stream " + getStreamID() + " dropped before applying")));
+        completionTable.clear();
+    }
+
+    /**
+     * Write a command to the next position of the stream, retrying at a new position if another client
+     * wrote to the position first.
+     *
+     * @param command       The command to write.
+     * @param completion    A future to complete with the result of the command when it is applied, or null.
+     * @return              A future which completes with the timestamp of the entry once it is written.
+     */
+    @SuppressWarnings("unchecked")
+    CompletableFuture<ITimestamp> writeProposal(SMRCommand command, CompletableFuture completion)
+    {
+        return stream.reserveAsync(1)
+                .thenCompose(t -> {
+                    log.trace("Proposal[{}]: Acquired token", t[0]);
+                    if (completion != null) {
+                        completionTable.put(addressOf(t[0]), completion);
+                    }
+                    return stream.writeAsync(t[0], command)
+                            .thenCompose(r -> {
+                                if (r == IStreamAddressSpace.StreamAddressWriteResult.OK) {
+                                    log.trace("Proposal[{}]: Wrote proposal to stream", t[0]);
+                                    proposed(t[0]);
+                                    return CompletableFuture.completedFuture(t[0]);
+                                }
+                                completionTable.remove(addressOf(t[0]));
+                                if (r == IStreamAddressSpace.StreamAddressWriteResult.OVERWRITE) {
+                                    log.warn("Warning, propose resulted in overwrite @ {}, reproposing.", t[0]);
+                                    return writeProposal(command, completion);
+                                }
+                                CompletableFuture<ITimestamp> failed = new CompletableFuture<>();
+                                failed.completeExceptionally(
+                                        new RuntimeException("Proposal @ " + t[0] + " could not be written: " + r));
+                                return failed;
+                            });
+                });
+    }
+
+    /**
+     * Record an entry this engine proposed, unless a later one was recorded first, as proposals may
+     * complete out of order.
+     * @param proposal  The timestamp of the entry.
+     */
+    void proposed(ITimestamp proposal)
+    {
+        lastProposal.accumulateAndGet(proposal, (last, t) -> last == null || t.compareTo(last) > 0 ? t : last);
+    }
+
+    @Override
+    public ITimestamp getLastProposal() {
+        return lastProposal.get();
+    }
+
     /**
      * Propose a local command to the SMR engine. A local command is one which is executed locally
      * only, but may propose other commands which affect multiple objects.
@@ -315,9 +1021,9 @@ public class SimpleSMREngine<T> implements ISMREngine<T> {
         try {
             ITimestamp[] t = stream.reserve(2);
             localTable.add(t[0]);
-            if (completion != null) { completionTable.put(t[0], completion); }
+            if (completion != null) { completionTable.put(addressOf(t[0]), completion); }
             stream.write(t[0], new SMRLocalCommandWrapper<>(command, t[1]));
-            lastProposal = t[0];
+            proposed(t[0]);
             return t[0];
         }
         catch (Exception e)
@@ -330,16 +1036,60 @@ public class SimpleSMREngine<T> implements ISMREngine<T> {
     }
 
     /**
-     * Checkpoint the current state of the SMR engine.
+     * Checkpoint the current state of the SMR engine. The state is copied while no entry is being applied, and
+     * the checkpoint records the address of the last entry applied to it, so that an engine which starts from
+     * the checkpoint replays the entries after that address, including any applied here while the checkpoint
+     * was being written.
      *
-     * @return The timestamp the checkpoint was inserted at.
+     * @return The timestamp the checkpoint was inserted at, or null, if a later checkpoint was already written.
      */
     @Override
+    @SuppressWarnings("unchecked")
     public ITimestamp checkpoint()
         throws IOException
     {
-        SMRCheckpoint<T> checkpoint = new SMRCheckpoint<T>(streamPointer, underlyingObject);
-        return stream.append(checkpoint);
+        SMRCheckpoint<T> checkpoint = runBetweenEntries(() -> {
+            SMRCheckpoint<T> c = new SMRCheckpoint<T>(appliedTo, (T) Serializer.copy(underlyingObject));
+            entriesSinceCheckpoint = 0;
+            bytesSinceCheckpoint = 0;
+            return c;
+        }).join();
+        ITimestamp written = CheckpointIndex.write(getInstance(), getStreamID(), checkpoint);
+        lastCheckpointPosition = checkpoint.getCheckpointPosition();
+        return written;
+    }
+
+    /**
+     * Start the engine from the most recent checkpoint of its stream, if there is one, so that only the
+     * entries after the checkpoint are replayed. This must be called before the engine is first synchronized.
+     *
+     * @return True, if the engine was started from a checkpoint.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized boolean restoreCheckpoint()
+    {
+        if (appliedTo != null || !ITimestamp.isMin(stream.getCurrentPosition()))
+        {
+            return false;
+        }
+        SMRCheckpoint<T> checkpoint;
+        try {
+            checkpoint = CheckpointIndex.findLatest(getInstance(), getStreamID());
+        } catch (UnwrittenException ue) {
+            // The stream is read from the beginning, which fails if any of it has been trimmed.
+            log.warn("Latest checkpoint of stream {} is unknown, replaying stream", getStreamID(), ue);
+            return false;
+        }
+        if (checkpoint == null || checkpoint.getCheckpointPosition() == null)
+        {
+            return false;
+        }
+        log.debug("Restoring stream {} from checkpoint at {}", getStreamID(), checkpoint.getCheckpointPosition());
+        // The checkpoint may be shared through the address space cache, so apply entries to a copy of it.
+        underlyingObject = (T) Serializer.copy(checkpoint.getCheckpoint());
+        appliedTo = restoredCheckpoint = trimmedTo = checkpoint.getCheckpointPosition();
+        stream.seek(stream.getNextTimestamp(appliedTo));
+        return true;
     }
 
 
@@ -1,14 +1,64 @@
 package org.corfudb.runtime.smr;
 
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.corfudb.runtime.exceptions.TrimmedException;
+import org.corfudb.runtime.objects.CorfuObjectByteBuddyProxy;
+import org.corfudb.runtime.entries.IStreamEntry;
 import org.corfudb.runtime.stream.IStream;
 import org.corfudb.runtime.stream.ITimestamp;
+import org.corfudb.runtime.view.ICorfuDBInstance;
+import org.corfudb.runtime.view.Serializer;
+
+import java.util.ArrayDeque;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * An SMR engine which can be locked to the state of its object as of an earlier timestamp.
+ *
+ * The engine keeps a ring of copies of the state, taken every snapshotInterval entries applied. To travel to a
+ * timestamp, it restores a copy of the latest state taken at or before the timestamp (the current state, or a
+ * snapshot), and replays only the entries between that state and the timestamp, rather than the whole stream.
+ * The entries are replayed against a separate engine and object, so the current state is never modified. If
+ * the timestamp is older than every snapshot, the engine only replays from the beginning of the stream if no
+ * part of the stream may have been trimmed.
+ *
  * Created by mwei on 5/6/15.
  */
+@Slf4j
 public class TimeTravelSMREngine<T> extends SimpleSMREngine<T> {
 
-    ITimestamp lockTS;
+    /** The default number of entries applied between snapshots, and number of snapshots kept. */
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 1024;
+    public static final int DEFAULT_SNAPSHOT_COUNT = 16;
+
+    volatile ITimestamp lockTS;
+
+    /** The state as of the timestamp the engine is locked to, or null, if it is not locked. */
+    volatile T travelObject;
+
+    /** The number of entries applied between snapshots, or 0 to take none. */
+    @Getter
+    @Setter
+    volatile int snapshotInterval = DEFAULT_SNAPSHOT_INTERVAL;
+
+    /** The number of snapshots kept. Once there are more, the oldest is dropped. */
+    @Getter
+    @Setter
+    volatile int snapshotCount = DEFAULT_SNAPSHOT_COUNT;
+
+    /** The snapshots of the state, oldest first. */
+    final ArrayDeque<SMRCheckpoint<T>> snapshots = new ArrayDeque<>();
+
+    /** The number of entries applied since the last snapshot. Only the apply loop reads or writes it. */
+    int entriesSinceSnapshot;
+
+    /** The number of entries replayed to travel. */
+    @Getter
+    final AtomicLong replayedEntries = new AtomicLong();
 
     public TimeTravelSMREngine(IStream stream, Class<T> type, Class<?>... initArgs)
     {
@@ -33,51 +83,158 @@ public class TimeTravelSMREngine<T> extends SimpleSMREngine<T> {
         super.sync(ts);
     }
 
+    @Override
+    public void syncForRead() {
+        if (this.lockTS != null)
+        {
+            return;
+        }
+
+        super.syncForRead();
+    }
+
+    /**
+     * Get the underlying object, as of the timestamp the engine is locked to, if it is locked.
+     *
+     * @return The object maintained by the SMR engine.
+     */
+    @Override
+    public T getObject() {
+        T travelled = travelObject;
+        return travelled != null ? travelled : super.getObject();
+    }
+
+    @Override
+    boolean applied(IStreamEntry entry)
+    {
+        if (!super.applied(entry))
+        {
+            return false;
+        }
+        int interval = snapshotInterval;
+        if (interval > 0 && ++entriesSinceSnapshot >= interval)
+        {
+            entriesSinceSnapshot = 0;
+            addSnapshot(new SMRCheckpoint<>(appliedTo, copy(underlyingObject)));
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean restoreCheckpoint()
+    {
+        if (!super.restoreCheckpoint())
+        {
+            return false;
+        }
+        // The stream before the checkpoint may have been trimmed, so travel no further back than it.
+        addSnapshot(new SMRCheckpoint<>(appliedTo, copy(underlyingObject)));
+        return true;
+    }
+
+    void addSnapshot(SMRCheckpoint<T> snapshot)
+    {
+        synchronized (snapshots)
+        {
+            snapshots.addLast(snapshot);
+            while (snapshots.size() > Math.max(snapshotCount, 1))
+            {
+                snapshots.removeFirst();
+            }
+        }
+    }
+
     @SuppressWarnings("unchecked")
-    public void travelAndLock(ITimestamp lockTS)
+    static <T> T copy(T object)
     {
-        this.lockTS = lockTS;
+        return (T) Serializer.copy(object);
+    }
 
+    /**
+     * Lock the engine to the state of its object as of a timestamp. Until it is unlocked, the engine does not
+     * synchronize, and reads the state as of the timestamp.
+     *
+     * @param lockTS The timestamp to lock the engine to.
+     * @throws TrimmedException If the state as of the timestamp is older than every snapshot, and the stream
+     *                          before the oldest snapshot may have been trimmed.
+     */
+    public void travelAndLock(ITimestamp lockTS)
+            throws TrimmedException
+    {
         synchronized (this)
         {
-            // Reverse operations on the object until we get
-            // to the desired timestamp.
+            ITimestamp applied = appliedTo;
+            if (applied == null || applied.compareTo(lockTS) < 0)
+            {
+                super.sync(lockTS);
+            }
+            travelObject = travel(lockTS);
+            this.lockTS = lockTS;
+        }
+    }
 
-            if (streamPointer.compareTo(lockTS) == 0) return;
-            if (streamPointer.compareTo(lockTS) < 0)
+    /**
+     * Build a copy of the state as of a timestamp, from the latest state at or before the timestamp.
+     *
+     * @param ts The timestamp.
+     * @return   The state, after every entry at or before the timestamp has been applied.
+     * @throws TrimmedException If there is no state to start from, and the stream may have been trimmed.
+     */
+    @SuppressWarnings("unchecked")
+    T travel(ITimestamp ts)
+            throws TrimmedException
+    {
+        SMRCheckpoint<T> base = runBetweenEntries(() ->
+                appliedTo != null && appliedTo.compareTo(ts) <= 0 ?
+                        new SMRCheckpoint<>(appliedTo, copy(underlyingObject)) : null).join();
+        if (base == null)
+        {
+            synchronized (snapshots)
             {
-                while (streamPointer.compareTo(lockTS) < 0)
+                Iterator<SMRCheckpoint<T>> i = snapshots.descendingIterator();
+                while (i.hasNext())
                 {
-                    streamPointer = stream.getNextTimestamp(streamPointer);
-                    try {
-                            ISMREngineCommand o = (ISMREngineCommand) stream.readObject(streamPointer);
-                            o.apply(underlyingObject, new SimpleSMREngineOptions());
-                    } catch (Exception e)
+                    SMRCheckpoint<T> s = i.next();
+                    if (s.getCheckpointPosition().compareTo(ts) <= 0)
                     {
-
+                        base = new SMRCheckpoint<>(s.getCheckpointPosition(), copy(s.getCheckpoint()));
+                        break;
                     }
                 }
             }
-            else {
-                while (streamPointer.compareTo(lockTS) > 0) {
-                    // Can we reverse this operation?
-                    try {
-                        Object o = stream.readObject(streamPointer);
-                        if (o instanceof ReversibleSMREngineCommand) {
-                            ReversibleSMREngineCommand c = (ReversibleSMREngineCommand) o;
-                            c.reverse(underlyingObject, new SimpleSMREngineOptions());
-                        }
-                        //this operation is non reversible, so unfortunately we have to play from the beginning...
-                        OneShotSMREngine<T> smrOS = new OneShotSMREngine<T>(stream.getInstance().openStream(stream.getStreamID()), type, streamPointer);
-                        smrOS.sync(streamPointer);
-                        underlyingObject = smrOS.getObject();
-                    } catch (Exception e) {
+        }
+        ITimestamp trimmed = trimmedTo;
+        if (base == null && trimmed != null)
+        {
+            throw new TrimmedException("Stream " + getStreamID() + " may be trimmed before " + ts,
+                    addressOf(trimmed));
+        }
+        if (base != null && base.getCheckpointPosition().compareTo(ts) == 0)
+        {
+            return base.getCheckpoint();
+        }
 
-                    }
-                    streamPointer = stream.getPreviousTimestamp(streamPointer);
-                }
-            }
+        // Replay the entries after the base state on a fresh stream, so the stream of the engine is not moved.
+        log.debug("Travel to {} from {}", ts, base == null ? "the beginning" : base.getCheckpointPosition());
+        IStream replayStream = getInstance().openStream(getStreamID(),
+                EnumSet.of(ICorfuDBInstance.OpenStreamFlags.NON_CACHED));
+        SimpleSMREngine<T> replay = new SimpleSMREngine<>(replayStream, type);
+        ICorfuDBObject implementing = getImplementingObject();
+        if (implementing != null)
+        {
+            // Commands applied by method token run against an object bound to the replay engine, not this one.
+            Class<?> objectClass = implementing.getClass().getSuperclass();
+            replay.setImplementingObject((ICorfuDBObject) CorfuObjectByteBuddyProxy.getProxy()
+                    .getObject(objectClass, getInstance(), getStreamID(), replay));
         }
+        if (base != null)
+        {
+            replay.setObject(base.getCheckpoint());
+            replayStream.seek(replayStream.getNextTimestamp(base.getCheckpointPosition()));
+        }
+        replay.sync(ts);
+        replayedEntries.addAndGet(replay.getEntriesSinceCheckpoint());
+        return replay.getObject();
     }
 
     /**
@@ -88,11 +245,15 @@ public class TimeTravelSMREngine<T> extends SimpleSMREngine<T> {
      */
     @Override
     public <R> R read(ISMREngineCommand<T, R> command) {
-        return command.apply(underlyingObject, new SimpleSMREngineOptions<>());
+        return command.apply(getObject(), new SimpleSMREngineOptions<>());
     }
 
     public void unlock(ITimestamp ts)
     {
-        this.lockTS = null;
+        synchronized (this)
+        {
+            this.lockTS = null;
+            this.travelObject = null;
+        }
     }
 }
@@ -0,0 +1,107 @@
+package org.corfudb.runtime.smr.smrprotocol;
+
+import io.netty.buffer.ByteBuf;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.corfudb.runtime.smr.ISMREngine;
+import org.corfudb.runtime.stream.ITimestamp;
+import org.corfudb.util.Varint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A group of commands proposed to the same object, which are written to the log as a single entry, and
+ * applied in order. Executing the batch returns the result of each command, so that each proposer can be
+ * completed with the result of its own command.
+ */
+@Slf4j
+public class BatchSMRCommand<T> extends SMRCommand<T,Object[]> {
+
+    /** The result of a command of the batch which threw, in place of its return value. */
+    @RequiredArgsConstructor
+    public static class Failure {
+        @Getter
+        final Throwable cause;
+    }
+
+    public BatchSMRCommand()
+    {
+        super();
+        this.type = SMRCommandType.BATCH;
+    }
+
+    public BatchSMRCommand(List<SMRCommand<T,?>> commands)
+    {
+        this();
+        this.commands = commands;
+    }
+
+    @Setter
+    @Getter
+    List<SMRCommand<T,?>> commands;
+
+    /**
+     * Execute every command of the batch, in order. A command which throws does not stop the commands
+     * after it, as each would have been applied on its own.
+     *
+     * @return The result of each command, or a Failure, if the command threw.
+     */
+    @Override
+    public Object[] execute(T state, ISMREngine<T> engine, ITimestamp ts) {
+        Object[] results = new Object[commands.size()];
+        for (int i = 0; i < results.length; i++)
+        {
+            SMRCommand<T,?> command = commands.get(i);
+            command.setInstance(getInstance());
+            try {
+                results[i] = command.execute(state, engine, ts);
+            } catch (Exception e) {
+                log.warn("Command {} of batch @ {} threw", i, ts, e);
+                results[i] = new Failure(e);
+            }
+        }
+        return results;
+    }
+
+    //region Serializer
+    /**
+     * Parse the rest of the message from the buffer. Classes that extend SMRCommand
+     * should parse their fields in this method.
+     *
+     * @param buffer
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void fromBuffer(ByteBuf buffer) {
+        super.fromBuffer(buffer);
+        int count = Varint.readVarInt(buffer);
+        commands = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int size = buffer.readInt();
+            commands.add(SMRCommand.deserialize(buffer.slice(buffer.readerIndex(), size)));
+            buffer.skipBytes(size);
+        }
+    }
+
+    /**
+     * Serialize the message into the given bytebuffer.
+     *
+     * @param buffer The buffer to serialize to.
+     */
+    @Override
+    public void serialize(ByteBuf buffer) {
+        super.serialize(buffer);
+        Varint.writeVarInt(commands.size(), buffer);
+        for (SMRCommand<T,?> command : commands)
+        {
+            int index = buffer.writerIndex();
+            buffer.writeInt(0);
+            command.serialize(buffer);
+            buffer.setInt(index, buffer.writerIndex() - index - 4);
+        }
+    }
+    //endregion
+}
@@ -50,10 +50,34 @@ public class LambdaSMRCommand<T,R> extends SMRCommand<T,R> {
         this.lambdaFunction = (Function<T,R> & Serializable) (obj) -> function.apply(obj, null);
     }
 
+    /** Build a command which declares the only key of the state it reads or writes.
+     *
+     * @param conflictKey   The key, or null, if the command may read or write any of the state.
+     * @param function      The function to execute when the SMR engine encounters this command.
+     */
+    public LambdaSMRCommand(Object conflictKey, Function<T,R> function)
+    {
+        this(function);
+        if (conflictKey != null)
+        {
+            this.type = SMRCommandType.KEYED_LAMBDA_COMMAND;
+            this.conflictKey = conflictKey;
+        }
+    }
+
     @Setter
     @Getter
     Function<T,R> lambdaFunction;
 
+    /** The only key of the state the command reads or writes, or null, if it may read or write any of it. */
+    @Setter
+    Object conflictKey;
+
+    @Override
+    public Object getConflictKey(ISMREngine<T> engine) {
+        return conflictKey;
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public R execute(T state, ISMREngine<T> engine, ITimestamp ts) {
@@ -68,6 +92,7 @@ public class LambdaSMRCommand<T,R> extends SMRCommand<T,R> {
 
     //region Serializer
     static ISerializer lambdaSerializer = new JavaSerializer();
+    static ISerializer keySerializer = new KryoSerializer();
 
     /**
      * Parse the rest of the message from the buffer. Classes that extend SMRCommand
@@ -82,6 +107,14 @@ public class LambdaSMRCommand<T,R> extends SMRCommand<T,R> {
         int size = buffer.readInt();
         ByteBuf data = size == 0 ? null : buffer.slice(buffer.readerIndex(), size);
         lambdaFunction = (Function<T,R>) lambdaSerializer.deserialize(data);
+        buffer.skipBytes(size);
+        if (type == SMRCommandType.KEYED_LAMBDA_COMMAND)
+        {
+            int keySize = buffer.readInt();
+            ByteBuf key = keySize == 0 ? null : buffer.slice(buffer.readerIndex(), keySize);
+            conflictKey = keySerializer.deserialize(key);
+            buffer.skipBytes(keySize);
+        }
     }
 
     /**
@@ -96,6 +129,13 @@ public class LambdaSMRCommand<T,R> extends SMRCommand<T,R> {
         buffer.writeInt(0);
         lambdaSerializer.serialize(lambdaFunction, buffer);
         buffer.setInt(index, buffer.writerIndex() - index - 4);
+        if (type == SMRCommandType.KEYED_LAMBDA_COMMAND)
+        {
+            int keyIndex = buffer.writerIndex();
+            buffer.writeInt(0);
+            keySerializer.serialize(conflictKey, buffer);
+            buffer.setInt(keyIndex, buffer.writerIndex() - keyIndex - 4);
+        }
     }
     //endregion
 }
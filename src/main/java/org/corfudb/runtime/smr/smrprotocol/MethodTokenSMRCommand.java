@@ -4,14 +4,13 @@ import io.netty.buffer.ByteBuf;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.corfudb.runtime.objects.CorfuObjectByteBuddyProxy;
+import org.corfudb.runtime.objects.MethodDispatchTable;
 import org.corfudb.runtime.smr.ISMREngine;
 import org.corfudb.runtime.stream.ITimestamp;
+import org.corfudb.util.Varint;
 import org.corfudb.util.serializer.ISerializer;
 import org.corfudb.util.serializer.KryoSerializer;
 
-import java.lang.reflect.Method;
-import java.util.Arrays;
 import java.util.function.BiFunction;
 
 /**
@@ -33,10 +32,33 @@ public class MethodTokenSMRCommand<T,R> extends SMRCommand<T,R> {
         this.arguments = arguments;
     }
 
+    /**
+     * Build a command which is logged with a method ID rather than the full method token.
+     *
+     * @param functionName  The method token, which is only kept locally.
+     * @param methodId      The method ID of the token, or -1, if the token has none.
+     * @param arguments     The arguments to the method.
+     */
+    public MethodTokenSMRCommand(String functionName, int methodId, Object[] arguments)
+    {
+        this(functionName, arguments);
+        if (methodId >= 0)
+        {
+            this.type = SMRCommandType.METHOD_ID;
+            this.methodId = methodId;
+        }
+    }
+
+    /** The method token. Commands read from the log with a method ID have none. */
     @Setter
     @Getter
     String functionName;
 
+    /** The method ID, or -1, if the command is logged with the method token. */
+    @Setter
+    @Getter
+    int methodId = -1;
+
     @Setter
     @Getter
     Object[] arguments;
@@ -44,19 +66,28 @@ public class MethodTokenSMRCommand<T,R> extends SMRCommand<T,R> {
     @Override
     @SuppressWarnings("unchecked")
     public R execute(T state, ISMREngine<T> engine, ITimestamp ts) {
+        Object target = engine.getImplementingObject();
         try {
-            Method m = Arrays.stream(engine.getImplementingObject().getClass().getDeclaredMethods())
-                    .filter(x -> CorfuObjectByteBuddyProxy.getAccessorShortMethodNameOrEmpty(x).equals(functionName))
-                    .findFirst().get();
-            m.setAccessible(true);
-            return (R) m.invoke(engine.getImplementingObject(), arguments);
-        } catch (Exception e)
+            MethodDispatchTable table = MethodDispatchTable.forClass(target.getClass());
+            if (methodId >= 0)
+            {
+                return (R) table.invoke(target, methodId, arguments);
+            }
+            return (R) table.invoke(target, functionName, arguments);
+        } catch (Throwable e)
         {
             log.error("Exception during execution ", e);
             throw new RuntimeException(e);
         }
     }
 
+    @Override
+    public Object getConflictKey(ISMREngine<T> engine) {
+        MethodDispatchTable table = MethodDispatchTable.forClass(engine.getImplementingObject().getClass());
+        int index = methodId >= 0 ? table.getConflictArgument(methodId) : table.getConflictArgument(functionName);
+        return index >= 0 ? arguments[index] : null;
+    }
+
     //region Serializer
     static ISerializer argumentSerializer = new KryoSerializer();
 
@@ -70,8 +101,15 @@ public class MethodTokenSMRCommand<T,R> extends SMRCommand<T,R> {
     @SuppressWarnings("unchecked")
     public void fromBuffer(ByteBuf buffer) {
         super.fromBuffer(buffer);
-        short stringLength = buffer.readShort();
-        functionName = new String(buffer.readBytes(stringLength).array());
+        if (type == SMRCommandType.METHOD_ID)
+        {
+            methodId = Varint.readVarInt(buffer);
+        }
+        else
+        {
+            short stringLength = buffer.readShort();
+            functionName = new String(buffer.readBytes(stringLength).array());
+        }
         byte argCount = buffer.readByte();
         arguments = new Object[argCount];
         for (byte i = 0; i < argCount; i++) {
@@ -90,8 +128,15 @@ public class MethodTokenSMRCommand<T,R> extends SMRCommand<T,R> {
     @Override
     public void serialize(ByteBuf buffer) {
         super.serialize(buffer);
-        buffer.writeShort(functionName.getBytes().length);
-        buffer.writeBytes(functionName.getBytes());
+        if (type == SMRCommandType.METHOD_ID)
+        {
+            Varint.writeVarInt(methodId, buffer);
+        }
+        else
+        {
+            buffer.writeShort(functionName.getBytes().length);
+            buffer.writeBytes(functionName.getBytes());
+        }
         buffer.writeByte(arguments.length);
         for (Object o : arguments)
         {
@@ -29,7 +29,10 @@ public class SMRCommand<T,R> implements ICorfuSerializable {
         NOP(0, SMRCommand.class),
         LAMBDA_COMMAND(20, LambdaSMRCommand.class),
         METHOD_TOKEN(21, MethodTokenSMRCommand.class),
-        TRANSACTIONAL_LAMBDA_COMMAND(22, TransactionalLambdaSMRCommand.class)
+        TRANSACTIONAL_LAMBDA_COMMAND(22, TransactionalLambdaSMRCommand.class),
+        METHOD_ID(23, MethodTokenSMRCommand.class),
+        BATCH(24, BatchSMRCommand.class),
+        KEYED_LAMBDA_COMMAND(25, LambdaSMRCommand.class)
         ;
 
         final int type;
@@ -54,6 +57,10 @@ public class SMRCommand<T,R> implements ICorfuSerializable {
     //region Methods
     /* The operation to execute when the command is processed by the SMR engine. */
     public R execute(T state, ISMREngine<T> engine, ITimestamp ts) {return null;};
+
+    /* The only key of the state the command reads or writes, or null, if it may read or write any of it.
+     * Commands with different keys may be applied concurrently. */
+    public Object getConflictKey(ISMREngine<T> engine) {return null;};
     //endregion
 
     //region Serialization
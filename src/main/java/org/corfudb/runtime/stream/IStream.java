@@ -28,6 +28,7 @@ import java.io.IOException;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  *  A stream interface.
@@ -225,6 +226,40 @@ public interface IStream extends AutoCloseable {
     default CompletableFuture<IStreamEntry[]> readToAsync(ITimestamp point) {
         throw new UnsupportedOperationException("not implemented!");
     }
+
+    /**
+     * Asynchronously read the stream up to the given point, delivering entries to a consumer in order as
+     * they arrive, rather than all at once. Implementations should keep at most window reads in flight,
+     * so that the memory used does not depend on how far the stream is read.
+     *
+     * The entries delivered, and their logical timestamps, are the same as those returned by readToAsync(point).
+     *
+     * @param point             The point to read the stream up to (exclusive).
+     * @param window            The maximum number of reads to keep in flight.
+     * @param consumer          The consumer to deliver entries to, which is called by one thread at a time.
+     * @return                  A completable future, which completes once every entry has been delivered.
+     */
+    default CompletableFuture<Void> readToAsync(ITimestamp point, int window, Consumer<IStreamEntry> consumer) {
+        return readToAsync(point).thenAccept(entries -> {
+            for (IStreamEntry e : entries) {
+                consumer.accept(e);
+            }
+        });
+    }
+    /**
+     * Subscribe to the stream, receiving the entries of the stream from the given timestamp on as they are
+     * committed, in address order. Subscribers to the same stream in an instance share one tail follower,
+     * and each subscriber has a bounded buffer: a subscriber which does not keep up slows the follower
+     * down rather than buffering without bound.
+     *
+     * @param fromTimestamp     The timestamp to deliver entries from.
+     * @param consumer          The consumer to deliver entries to, which is called by one thread at a time.
+     * @return                  The subscription, which must be closed to stop delivery.
+     */
+    default StreamFollower.Subscription subscribe(ITimestamp fromTimestamp, Consumer<IStreamEntry> consumer) {
+        throw new UnsupportedOperationException("not implemented!");
+    }
+
     /**
      * Gets the current position the stream has read to (which may not point to an entry in the
      * stream).
@@ -6,8 +6,10 @@ import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.corfudb.runtime.entries.IStreamEntry;
 import org.corfudb.runtime.exceptions.*;
+import org.corfudb.runtime.smr.CheckpointIndex;
 import org.corfudb.runtime.smr.HoleFillingPolicy.IHoleFillingPolicy;
 import org.corfudb.runtime.smr.HoleFillingPolicy.TimeoutHoleFillPolicy;
+import org.corfudb.runtime.smr.SMRCheckpoint;
 import org.corfudb.runtime.view.ICorfuDBInstance;
 import org.corfudb.runtime.view.IStreamAddressSpace;
 import org.corfudb.runtime.view.StreamAddressSpace;
@@ -17,8 +19,12 @@ import org.corfudb.util.retry.IRetry;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 /**
  * This is the new stream implementation.
@@ -37,6 +43,23 @@ public class NewStream implements IStream {
     @Getter
     final UUID streamID;
 
+    /** How long a read of an empty address waits at the log unit for a writer, in milliseconds,
+     * before falling back to retries and hole filling. */
+    static final long READ_WAIT_TIMEOUT = 100;
+
+    /**
+     * The position of the latest checkpoint of this stream seen by this stream, or -1. The stream is only
+     * trimmed behind its checkpoints, so only addresses at or below it may have been trimmed from the stream.
+     */
+    transient volatile long checkpointedTo = -1;
+
+    /** The number of entries read, so that a lookup of checkpointedTo can tell which reads it covers. */
+    final transient AtomicLong readSequence = new AtomicLong();
+
+    /** The read sequence number when checkpointedTo was last looked up, or -1. Trimmed entries given a lower
+     * number were read before the lookup, so are not looked up again. */
+    transient long checkpointCheckedAt = -1;
+
     /** The position of this stream, in the global log index */
     final transient AtomicLong streamPointer = new AtomicLong(0);
 
@@ -239,8 +262,41 @@ public class NewStream implements IStream {
 
     protected CompletableFuture<IStreamEntry> readAtAddress(long address) {
         return instance.getStreamAddressSpace().readAsync(address)
+                .thenCompose(e -> resolveEntry(address, e));
+    }
+
+    /**
+     * Read a range of addresses, loading the addresses which miss in the cache together.
+     *
+     * @param start The first address to read.
+     * @param end   The address to read up to (exclusive).
+     * @return      A future for each address read, in address order, which completes with the
+     *              entry at the address, or null, if the entry does not belong to this stream.
+     */
+    protected List<CompletableFuture<IStreamEntry>> readAtAddresses(long start, long end) {
+        List<Long> addresses = LongStream.range(start, end).boxed().collect(Collectors.toList());
+        CompletableFuture<Map<Long, IStreamAddressSpace.StreamAddressSpaceEntry>> entries =
+                instance.getStreamAddressSpace().readAllAsync(addresses);
+        return addresses.stream()
+                .map(a -> entries.thenCompose(m -> resolveEntry(a, m.get(a))))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Resolve the result of a read: wait for, retry or fill an empty address, and drop entries which
+     * do not belong to this stream.
+     *
+     * @param address   The address read.
+     * @param entry     The entry read, or null, if the address was empty.
+     * @return          A future which completes with the entry, or null, if it does not belong to this stream.
+     */
+    CompletableFuture<IStreamEntry> resolveEntry(long address, IStreamAddressSpace.StreamAddressSpaceEntry entry) {
+        return (entry == null ?
+                        instance.getStreamAddressSpace().readWaitAsync(address, READ_WAIT_TIMEOUT) :
+                        CompletableFuture.completedFuture(entry))
                 .thenApplyAsync(
                         e -> {
+                            long readAt = readSequence.getAndIncrement();
                             if (e == null) {
                                 e = IRetry.build(ExponentialBackoffRetry.class, () -> {
                                     IStreamAddressSpace.StreamAddressSpaceEntry ret =
@@ -262,11 +318,46 @@ public class NewStream implements IStream {
                                 return e;
                             }
 
+                            if (e.getCode() == IStreamAddressSpace.StreamAddressEntryCode.TRIMMED &&
+                                    mayHaveBeenTrimmed(address, readAt)) {
+                                // The entry may have been this stream's, so the stream would be read with it missing.
+                                throw new CompletionException(new TrimmedException(
+                                        "Read of stream " + streamID + " behind its checkpoint", address));
+                            }
+
                             log.trace("Read[{}] Not in stream, dropping.", address);
                             return null;
                         });
     }
 
+    /** Get whether an address may have been trimmed from this stream, rather than from other streams only.
+     * The latest checkpoint is looked up at most once for the trimmed entries read before the lookup, so
+     * reading a long run of entries trimmed from other streams costs one lookup per batch.
+     * @param address   The trimmed address.
+     * @param readAt    The read sequence number of the entry.
+     * @return          True, if the address is at or below the position of the latest checkpoint of the stream,
+     *                  or the latest checkpoint is not known.
+     */
+    boolean mayHaveBeenTrimmed(long address, long readAt) {
+        synchronized (readSequence) {
+            if (address > checkpointedTo && readAt >= checkpointCheckedAt) {
+                checkpointCheckedAt = readSequence.get();
+                try {
+                    SMRCheckpoint<?> latest = CheckpointIndex.findLatest(instance, streamID);
+                    if (latest != null && latest.getCheckpointPosition() != null) {
+                        checkpointedTo = Math.max(checkpointedTo,
+                                toPhysicalTimestamp(latest.getCheckpointPosition()));
+                    }
+                } catch (UnwrittenException ue) {
+                    // What the stream was trimmed up to is not known, so assume it may include this address.
+                    checkpointCheckedAt = -1;
+                    return true;
+                }
+            }
+            return address <= checkpointedTo;
+        }
+    }
+
     @Override
     public CompletableFuture<IStreamEntry[]> readToAsync(ITimestamp point) {
         /** TODO: maybe use a lock here to improve performance */
@@ -278,32 +369,13 @@ public class NewStream implements IStream {
         }
         log.trace("AsyncRead[{}]: {} to {}", batch, startPoint, point);
         if (startPoint > toPhysicalTimestamp(point)){
-            IStreamEntry[] rl;
-            rl = new IStreamEntry[] {
-                    new IStreamAddressSpace.StreamAddressSpaceEntry<>(
-                            Collections.emptySet(),
-                            Long.MIN_VALUE,
-                            IStreamAddressSpace.StreamAddressEntryCode.EMPTY_BATCH,
-                            null
-                    )
-            };
-
-            rl[0].setLogicalTimestamp(
-                    new LogicalAsyncTimestamp(
-                            batch,
-                            0,
-                            0));
-
-            return CompletableFuture.completedFuture(rl);
+            return CompletableFuture.completedFuture(new IStreamEntry[] {emptyBatchEntry(batch)});
         }
         else
         {
-            List<CompletableFuture<IStreamEntry>> requestList = new ArrayList<>();
+            List<CompletableFuture<IStreamEntry>> requestList =
+                    readAtAddresses(startPoint, toPhysicalTimestamp(point));
             final AtomicLong logicalCounter = new AtomicLong(0);
-            for (long i = startPoint; i < toPhysicalTimestamp(point); i++)
-            {
-                requestList.add(readAtAddress(i));
-            }
             return CompletableFuture.allOf(requestList.toArray(new CompletableFuture[requestList.size()]))
                     .thenApply(v ->
                             {
@@ -323,20 +395,7 @@ public class NewStream implements IStream {
                                 if (rl.length == 0)
                                 {
                                     //this batch was empty but we need to expire this batch
-                                    rl = new IStreamEntry[] {
-                                      new IStreamAddressSpace.StreamAddressSpaceEntry<>(
-                                              Collections.emptySet(),
-                                              Long.MIN_VALUE,
-                                              IStreamAddressSpace.StreamAddressEntryCode.EMPTY_BATCH,
-                                              null
-                                      )
-                                    };
-
-                                    rl[0].setLogicalTimestamp(
-                                            new LogicalAsyncTimestamp(
-                                            batch,
-                                            0,
-                                            0));
+                                    rl = new IStreamEntry[] {emptyBatchEntry(batch)};
                                 }
                                 return rl;
                             }
@@ -344,6 +403,148 @@ public class NewStream implements IStream {
         }
     }
 
+    /**
+     * Subscribe to the stream, through the follower the instance keeps for this stream.
+     *
+     * @param fromTimestamp The timestamp to deliver entries from.
+     * @param consumer      The consumer to deliver entries to.
+     * @return              The subscription, which must be closed to stop delivery.
+     */
+    @Override
+    public StreamFollower.Subscription subscribe(ITimestamp fromTimestamp, Consumer<IStreamEntry> consumer) {
+        return instance.getStreamFollower(streamID).subscribe(fromTimestamp, consumer);
+    }
+
+    /**
+     * Create the entry which expires an empty batch.
+     *
+     * @param batch The batch which is empty.
+     * @return      An EMPTY_BATCH entry for the batch.
+     */
+    IStreamEntry emptyBatchEntry(long batch)
+    {
+        IStreamEntry e = new IStreamAddressSpace.StreamAddressSpaceEntry<>(
+                Collections.emptySet(),
+                Long.MIN_VALUE,
+                IStreamAddressSpace.StreamAddressEntryCode.EMPTY_BATCH,
+                null
+        );
+        e.setLogicalTimestamp(new LogicalAsyncTimestamp(batch, 0, 0));
+        return e;
+    }
+
+    /**
+     * Asynchronously read the stream up to the given point, keeping at most window reads in flight and
+     * delivering entries to the consumer in order as they arrive.
+     *
+     * Since the number of entries in the batch is only known once the last read completes, each entry is
+     * held back until the next one arrives, so that the last entry of the batch can be timestamped as such.
+     *
+     * @param point     The point to read the stream up to (exclusive).
+     * @param window    The maximum number of reads to keep in flight.
+     * @param consumer  The consumer to deliver entries to.
+     * @return          A completable future, which completes once every entry has been delivered.
+     */
+    @Override
+    public CompletableFuture<Void> readToAsync(ITimestamp point, int window, Consumer<IStreamEntry> consumer) {
+        long startPoint;
+        long batch;
+        synchronized (batchNumber) {
+            batch = batchNumber.getAndIncrement();
+            startPoint = streamPointer.getAndAccumulate(toPhysicalTimestamp(point), Math::max);
+        }
+        log.trace("WindowedRead[{}]: {} to {}, window {}", batch, startPoint, point, window);
+        if (startPoint > toPhysicalTimestamp(point)) {
+            consumer.accept(emptyBatchEntry(batch));
+            return CompletableFuture.completedFuture(null);
+        }
+        WindowedRead read = new WindowedRead(batch, startPoint, toPhysicalTimestamp(point), window, consumer);
+        read.advance();
+        return read.done;
+    }
+
+    /** The state of a windowed read. */
+    class WindowedRead {
+        final long batch;
+        final long end;
+        final int window;
+        final Consumer<IStreamEntry> consumer;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        /** The next address to issue a read for. */
+        long next;
+        /** Reads in flight, in address order. */
+        final ArrayDeque<CompletableFuture<IStreamEntry>> inFlight = new ArrayDeque<>();
+        /** The entry held back until the next one arrives. */
+        IStreamEntry held;
+        /** The number of entries delivered. */
+        long delivered;
+        /** Set while advancing, so that reads which complete immediately do not recurse. */
+        boolean advancing;
+
+        WindowedRead(long batch, long start, long end, int window, Consumer<IStreamEntry> consumer)
+        {
+            this.batch = batch;
+            this.next = start;
+            this.end = end;
+            this.window = Math.max(window, 1);
+            this.consumer = consumer;
+        }
+
+        /** Deliver the reads which have completed in order, and issue reads to refill the window. */
+        synchronized void advance()
+        {
+            if (advancing || done.isDone()) {
+                return;
+            }
+            advancing = true;
+            try {
+                do {
+                    while (!inFlight.isEmpty() && inFlight.peek().isDone()) {
+                        IStreamEntry e = inFlight.poll().join();
+                        if (e != null) {
+                            if (held != null) {
+                                deliver(Long.MAX_VALUE);
+                            }
+                            held = e;
+                        }
+                    }
+                    if (inFlight.size() < window && next < end) {
+                        // Refill the window with a single batch, so misses are loaded together.
+                        long to = Math.min(end, next + window - inFlight.size());
+                        for (CompletableFuture<IStreamEntry> cf : readAtAddresses(next, to)) {
+                            inFlight.add(cf);
+                            cf.whenComplete((r, ex) -> advance());
+                        }
+                        next = to;
+                    }
+                } while (!inFlight.isEmpty() && inFlight.peek().isDone());
+                if (inFlight.isEmpty()) {
+                    if (held != null) {
+                        deliver(delivered + 1);
+                    } else if (delivered == 0) {
+                        consumer.accept(emptyBatchEntry(batch));
+                    }
+                    done.complete(null);
+                }
+            } catch (Exception ex) {
+                done.completeExceptionally(ex);
+            } finally {
+                advancing = false;
+            }
+        }
+
+        /** Deliver the held back entry.
+         * @param batchCount    The number of entries in the batch, or Long.MAX_VALUE if not yet known.
+         */
+        void deliver(long batchCount)
+        {
+            held.setLogicalTimestamp(new LogicalAsyncTimestamp(batch, delivered++, batchCount));
+            consumer.accept(held);
+            held = null;
+        }
+    }
+
     /**
      * Gets the current position the stream has read to (which may not point to an entry in the
      * stream).
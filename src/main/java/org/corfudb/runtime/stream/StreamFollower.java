@@ -0,0 +1,314 @@
+package org.corfudb.runtime.stream;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.corfudb.runtime.entries.IStreamEntry;
+import org.corfudb.runtime.view.ICorfuDBInstance;
+import org.corfudb.runtime.view.IStreamAddressSpace;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * A stream follower tails a stream on behalf of every subscriber to that stream in an instance, so that
+ * subscribers share a single series of sequencer checks and reads, rather than each making their own.
+ *
+ * The follower checks the tail of the stream, reads up to it with a windowed read, and pushes the entries
+ * read to each subscriber. When the tail does not move, the follower backs off between checks.
+ *
+ * Each subscriber has a bounded buffer, and the follower never reads more addresses than the fullest buffer
+ * has room for, so a slow subscriber slows the follower down instead of buffering without bound. Should an
+ * entry ever find a buffer full regardless, the subscription fails (see Subscription#isOverflowed), rather
+ * than silently skip the entry.
+ * Subscribers which start before the point the follower has published to first catch up with a read
+ * of their own, and then receive the entries the follower publishes.
+ */
+@Slf4j
+public class StreamFollower {
+
+    /** The number of entries buffered for each subscriber. */
+    public static final int DEFAULT_BUFFER_SIZE = 1024;
+
+    /** The maximum number of reads kept in flight by the follower. */
+    static final int READ_WINDOW = 256;
+
+    /** The initial and maximum intervals, in milliseconds, between checks of an idle stream. */
+    static final long MIN_POLL_INTERVAL = 1;
+    static final long MAX_POLL_INTERVAL = 100;
+
+    static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r);
+        t.setName("StreamFollower");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** The ID of the stream followed. */
+    @Getter
+    final UUID streamID;
+
+    final ICorfuDBInstance instance;
+
+    /** The stream the follower reads with, which is not shared with anyone else. */
+    final NewStream stream;
+
+    final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /** Every entry of the stream below this address has been published. */
+    @Getter
+    volatile long publishedTo;
+
+    /** Whether the follower has been started, and is currently polling. */
+    boolean started;
+    boolean running;
+
+    /** Set when the follower has stopped reading because a subscriber buffer is full. */
+    final AtomicBoolean stalled = new AtomicBoolean();
+
+    long pollInterval = MIN_POLL_INTERVAL;
+
+    public StreamFollower(UUID streamID, ICorfuDBInstance instance)
+    {
+        this.streamID = streamID;
+        this.instance = instance;
+        this.stream = new NewStream(streamID, instance);
+    }
+
+    static long toAddress(ITimestamp ts)
+    {
+        return ITimestamp.isMin(ts) ? 0L : ((SimpleTimestamp) ts).address;
+    }
+
+    static boolean isEmptyBatch(IStreamEntry e)
+    {
+        return e instanceof IStreamAddressSpace.StreamAddressSpaceEntry &&
+                ((IStreamAddressSpace.StreamAddressSpaceEntry) e).getCode()
+                        == IStreamAddressSpace.StreamAddressEntryCode.EMPTY_BATCH;
+    }
+
+    /**
+     * Subscribe to the stream.
+     *
+     * @param from      The timestamp to deliver entries from.
+     * @param consumer  The consumer to deliver entries to, in address order, one at a time.
+     * @return          The subscription, which must be closed to stop delivery.
+     */
+    public synchronized Subscription subscribe(ITimestamp from, Consumer<IStreamEntry> consumer)
+    {
+        long start = toAddress(from);
+        if (!started)
+        {
+            started = true;
+            publishedTo = start;
+            stream.seek(new SimpleTimestamp(start));
+        }
+        Subscription s = new Subscription(start, consumer);
+        subscriptions.add(s);
+        if (start < publishedTo)
+        {
+            s.catchUp(publishedTo);
+        }
+        else
+        {
+            s.live = true;
+        }
+        if (!running)
+        {
+            running = true;
+            scheduler.execute(this::poll);
+        }
+        return s;
+    }
+
+    /** Get the number of entries the fullest subscriber buffer has room for.
+     * @return  The room left, or -1 if there are no subscribers.
+     */
+    synchronized int room()
+    {
+        if (subscriptions.isEmpty())
+        {
+            running = false;
+            return -1;
+        }
+        return subscriptions.stream()
+                .mapToInt(s -> s.buffer.remainingCapacity())
+                .min().getAsInt();
+    }
+
+    /** Check the tail of the stream and read up to it, then schedule the next check. */
+    void poll()
+    {
+        int room = room();
+        if (room < 0)
+        {
+            return;
+        }
+        if (room == 0)
+        {
+            stalled.set(true);
+            // A subscriber may have drained before the flag was set.
+            if (room() == 0 || !stalled.compareAndSet(true, false))
+            {
+                return;
+            }
+        }
+        instance.getNewStreamingSequencer().nextTokenAsync(streamID, 0)
+                .thenCompose(tail -> {
+                    long target = Math.min(tail, publishedTo + room());
+                    if (target <= publishedTo)
+                    {
+                        return CompletableFuture.completedFuture(false);
+                    }
+                    return stream.readToAsync(new SimpleTimestamp(target), READ_WINDOW, this::publish)
+                            .thenApply(v -> {
+                                synchronized (this) {
+                                    publishedTo = Math.max(publishedTo, target);
+                                }
+                                return true;
+                            });
+                })
+                .whenComplete((progress, ex) -> {
+                    if (ex != null)
+                    {
+                        log.warn("Error following stream {}", streamID, ex);
+                    }
+                    if (progress != null && progress)
+                    {
+                        pollInterval = MIN_POLL_INTERVAL;
+                        scheduler.execute(this::poll);
+                    }
+                    else
+                    {
+                        scheduler.schedule(this::poll, pollInterval, TimeUnit.MILLISECONDS);
+                        pollInterval = Math.min(pollInterval * 2, MAX_POLL_INTERVAL);
+                    }
+                });
+    }
+
+    /** Publish an entry read by the follower to every subscriber.
+     * @param e     The entry to publish.
+     */
+    synchronized void publish(IStreamEntry e)
+    {
+        if (isEmptyBatch(e))
+        {
+            return;
+        }
+        long address = toAddress(e.getTimestamp());
+        subscriptions.forEach(s -> s.offer(address, e));
+        publishedTo = address + 1;
+    }
+
+    /** Resume a follower which stalled on a full subscriber buffer. */
+    void resume()
+    {
+        if (stalled.compareAndSet(true, false))
+        {
+            scheduler.execute(this::poll);
+        }
+    }
+
+    /**
+     * A subscription to a stream. Entries are delivered from a buffer on the common pool.
+     */
+    public class Subscription implements AutoCloseable {
+
+        /** The address to deliver entries from. */
+        final long from;
+        final Consumer<IStreamEntry> consumer;
+        final ArrayBlockingQueue<IStreamEntry> buffer = new ArrayBlockingQueue<>(DEFAULT_BUFFER_SIZE);
+        final AtomicBoolean draining = new AtomicBoolean();
+
+        /** False while the subscriber is catching up, during which published entries are only buffered. */
+        volatile boolean live;
+        volatile boolean closed;
+
+        /** Set if an entry was published while the buffer was full, after which the subscription is closed. */
+        @Getter
+        volatile boolean overflowed;
+
+        Subscription(long from, Consumer<IStreamEntry> consumer)
+        {
+            this.from = from;
+            this.consumer = consumer;
+        }
+
+        void offer(long address, IStreamEntry e)
+        {
+            if (!closed && address >= from)
+            {
+                if (!buffer.offer(e))
+                {
+                    // Delivering the entries after this one would leave a gap the subscriber cannot see.
+                    log.error("Subscription to stream {} overflowed at address {}, closing it", streamID, address);
+                    overflowed = true;
+                    close();
+                    return;
+                }
+                drain();
+            }
+        }
+
+        /** Deliver the entries published before this subscription, up to the given address.
+         * @param to    The address the follower has published to (exclusive).
+         */
+        void catchUp(long to)
+        {
+            NewStream catchUpStream = new NewStream(streamID, instance);
+            catchUpStream.seek(new SimpleTimestamp(from));
+            catchUpStream.readToAsync(new SimpleTimestamp(to), READ_WINDOW, e -> {
+                if (!closed && !isEmptyBatch(e)) {
+                    consumer.accept(e);
+                }
+            }).whenComplete((v, ex) -> {
+                if (ex != null) {
+                    log.warn("Error catching up on stream {}", streamID, ex);
+                }
+                live = true;
+                drain();
+            });
+        }
+
+        void drain()
+        {
+            if (!live || closed || !draining.compareAndSet(false, true))
+            {
+                return;
+            }
+            CompletableFuture.runAsync(() -> {
+                try {
+                    IStreamEntry e;
+                    while (!closed && (e = buffer.poll()) != null) {
+                        consumer.accept(e);
+                    }
+                } catch (Exception ex) {
+                    log.warn("Subscriber to stream {} threw an exception", streamID, ex);
+                } finally {
+                    draining.set(false);
+                }
+                resume();
+                if (!buffer.isEmpty()) {
+                    drain();
+                }
+            });
+        }
+
+        /** Stop delivering entries to this subscriber. */
+        @Override
+        public void close()
+        {
+            closed = true;
+            subscriptions.remove(this);
+            buffer.clear();
+            resume();
+        }
+    }
+}
@@ -6,6 +6,7 @@ import org.corfudb.runtime.smr.ITransaction;
 import org.corfudb.runtime.smr.ITransactionCommand;
 import org.corfudb.runtime.stream.IStream;
 import org.corfudb.runtime.stream.IStreamMetadata;
+import org.corfudb.runtime.stream.StreamFollower;
 
 import java.util.EnumSet;
 import java.util.Map;
@@ -72,6 +73,15 @@ public interface ICorfuDBInstance {
      */
     IStream openStream(UUID id, EnumSet<OpenStreamFlags> flags);
 
+    /**
+     * Gets the follower which tails a stream on behalf of every subscriber to it in this instance.
+     * @param id    The unique ID of the stream to follow.
+     * @return      The follower for the stream.
+     */
+    default StreamFollower getStreamFollower(UUID id) {
+        throw new UnsupportedOperationException("This instance doesn't support stream subscriptions!");
+    }
+
     /**
      * Delete a stream given its identifier using this instance.
      * @param id    The unique ID of the stream to be deleted.
@@ -133,6 +143,11 @@ public interface ICorfuDBInstance {
      */
     void resetAllCaches();
 
+    /**
+     * Close this instance, stopping any work it does in the background.
+     */
+    void close();
+
     ISMREngine getBaseEngine(UUID id, Class<?> underlyingType, ICorfuDBObject t);
 
     /**
@@ -3,12 +3,14 @@ package org.corfudb.runtime.view;
 import lombok.*;
 import org.corfudb.infrastructure.thrift.Hint;
 import org.corfudb.runtime.exceptions.TrimmedException;
+import org.corfudb.runtime.protocols.logunits.INewWriteOnceLogUnit;
 import org.corfudb.runtime.entries.IStreamEntry;
 import org.corfudb.runtime.stream.ITimestamp;
 import org.corfudb.runtime.stream.SimpleTimestamp;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.LongFunction;
 
 /**
  * A stream address space is a write-once address space which is fully stream-aware.
@@ -41,10 +43,40 @@ public interface IStreamAddressSpace {
      */
     @Data
     @AllArgsConstructor
-    @RequiredArgsConstructor
+    @ToString(exclude = {"readResult", "reload"})
+    @EqualsAndHashCode(exclude = {"readResult", "reload"})
     class StreamAddressSpaceEntry<T> implements IStreamEntry
     {
 
+        public StreamAddressSpaceEntry(@NonNull Set<UUID> streams, Long globalIndex,
+                                       StreamAddressEntryCode code, T payload)
+        {
+            this.streams = streams;
+            this.globalIndex = globalIndex;
+            this.code = code;
+            this.payload = payload;
+        }
+
+        /**
+         * This constructor is for generating data entries whose payload is deserialized from a read result
+         * on first access.
+         * @param streams       The streams that this entry belongs to.
+         * @param globalIndex   The global index of this entry.
+         * @param readResult    The DATA read result which holds the payload.
+         * @param reload        Reads the payload again, if the read result is released before it is accessed.
+         */
+        public StreamAddressSpaceEntry(@NonNull Set<UUID> streams, Long globalIndex,
+                                       INewWriteOnceLogUnit.ReadResult readResult, LongFunction<T> reload)
+        {
+            this.reload = reload;
+            this.streams = streams;
+            this.globalIndex = globalIndex;
+            this.code = StreamAddressEntryCode.DATA;
+            this.payload = null;
+            this.readResult = readResult;
+            this.serializedSize = readResult.getSerializedSize();
+        }
+
         /**
          * This constructor is for generating classes which contain a code only (i.e, trimmed)
          * @param codeOnly
@@ -84,9 +116,54 @@ public interface IStreamAddressSpace {
         ITimestamp logicalTimestamp = ITimestamp.getInvalidTimestamp();
 
         /**
-         * The deserialized version of the payload.
+         * The deserialized version of the payload, once it has been accessed.
+         */
+        @Setter(AccessLevel.NONE)
+        private T payload;
+
+        /**
+         * The read result the payload is deserialized from, until it is accessed.
+         */
+        @Getter(AccessLevel.NONE)
+        @Setter(AccessLevel.NONE)
+        private INewWriteOnceLogUnit.ReadResult readResult;
+
+        /**
+         * Reads the payload again, by global index, if the read result was released before it was accessed.
+         */
+        @Getter(AccessLevel.NONE)
+        @Setter(AccessLevel.NONE)
+        private LongFunction<T> reload;
+
+        /**
+         * The size of the payload in its serialized form, in bytes, or 0, if it is not known.
          */
-        private final T payload;
+        int serializedSize;
+
+        /**
+         * Get the payload, deserializing it on first access.
+         *
+         * @return The payload of this entry, or null, if it has none.
+         */
+        @SuppressWarnings("unchecked")
+        public synchronized T getPayload() {
+            if (readResult != null) {
+                payload = readResult.isReleased() ? reload.apply(globalIndex) : (T) readResult.getPayload();
+                readResult = null;
+                reload = null;
+            }
+            return payload;
+        }
+
+        /**
+         * Release the buffer the payload was received in, if it has not been deserialized. Whoever else
+         * holds the entry can still read the payload, which is then read again.
+         */
+        public synchronized void release() {
+            if (readResult != null) {
+                readResult.release();
+            }
+        }
 
         /**
          * Gets the list of of the streams this entry belongs to.
@@ -145,6 +222,39 @@ public interface IStreamAddressSpace {
      */
     CompletableFuture<StreamAddressSpaceEntry> readAsync(long offset);
 
+    /**
+     * Asynchronously read several offsets from the stream address space.
+     * @param offsets   The offsets (global indexes) to read from.
+     * @return          A map of the entries read, by offset, which has no entry for offsets with nothing written.
+     */
+    default CompletableFuture<Map<Long, StreamAddressSpaceEntry>> readAllAsync(List<Long> offsets)
+    {
+        Map<Long, CompletableFuture<StreamAddressSpaceEntry>> reads = new LinkedHashMap<>();
+        offsets.forEach(o -> reads.put(o, readAsync(o)));
+        return CompletableFuture.allOf(reads.values().toArray(new CompletableFuture[reads.size()]))
+                .thenApply(v -> {
+                    Map<Long, StreamAddressSpaceEntry> entries = new LinkedHashMap<>();
+                    reads.forEach((o, cf) -> {
+                        if (cf.join() != null) {
+                            entries.put(o, cf.join());
+                        }
+                    });
+                    return entries;
+                });
+    }
+
+    /**
+     * Asynchronously read from the stream address space, waiting for the offset to be written if it is empty.
+     * @param offset    The offset (global index) to read from.
+     * @param timeout   The longest time to wait for the offset to be written, in milliseconds.
+     * @return          A StreamAddressSpaceEntry containing the data that was read, or null, if nothing
+     *                  was written to the offset before the timeout elapsed.
+     */
+    default CompletableFuture<StreamAddressSpaceEntry> readWaitAsync(long offset, long timeout)
+    {
+        return readAsync(offset);
+    }
+
 
     /**
      * Write to the stream address space.
@@ -1,5 +1,8 @@
 package org.corfudb.runtime.view;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalListener;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -23,11 +26,19 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
 /**
+ * The objects, engines and streams opened by an instance are held in caches bounded by "objectCacheSize"
+ * entries each, which evict the least recently used. An object whose engine is evicted is rebuilt the next time
+ * it is accessed, from its most recent checkpoint (an engine which has applied enough is checkpointed as it is
+ * evicted), replaying the entries after it.
+ *
  * Created by mwei on 5/22/15.
  */
 @Slf4j
 public class LocalCorfuDBInstance implements ICorfuDBInstance {
 
+    /** The default maximum number of objects, engines and streams each cached by an instance. */
+    public static final long DEFAULT_OBJECT_CACHE_SIZE = 10_000;
+
     // Members of this CorfuDBInstance
     private IConfigurationMaster configMaster;
     private IStreamingSequencer streamingSequencer;
@@ -50,6 +61,17 @@ public class LocalCorfuDBInstance implements ICorfuDBInstance {
     @Getter
     public ConcurrentMap<UUID, ISMREngine> baseEngineMap;
 
+    /** The cache backing the base engine map. */
+    @Getter
+    private Cache<UUID, ISMREngine> baseEngineCache;
+
+    /** The followers tailing streams for subscribers, which are shared by every subscriber to a stream. */
+    private ConcurrentMap<UUID, StreamFollower> followerMap;
+
+    /** Checkpoints the objects open in this instance in the background. */
+    @Getter
+    private AutoCheckpointer autoCheckpointer;
+
     // Classes to instantiate.
     private Class<? extends IStream> streamType;
 
@@ -67,12 +89,32 @@ public class LocalCorfuDBInstance implements ICorfuDBInstance {
             throws NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException
     {
         configMaster = cm.getConstructor(CorfuDBRuntime.class).newInstance(cdr);
-        streamAddressSpace = new StreamAddressSpace(this);
+        streamAddressSpace = new StreamAddressSpace(this, cdr.getOptions());
         newStreamingSequencer = new NewStreamingSequencer(this);
         this.streamType = streamType;
-        this.objectMap = new NonBlockingHashMap<UUID, ICorfuDBObject>();
-        this.localStreamMap = new NonBlockingHashMap<>();
-        this.baseEngineMap = new NonBlockingHashMap<>();
+        long cacheSize = ((Number) cdr.getOptions().getOrDefault("objectCacheSize", DEFAULT_OBJECT_CACHE_SIZE))
+                .longValue();
+        this.objectMap = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .<UUID, ICorfuDBObject>build()
+                .asMap();
+        this.localStreamMap = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .<UUID, IStream>build()
+                .asMap();
+        this.baseEngineCache = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .removalListener((RemovalListener<UUID, ISMREngine>) n -> {
+                    if (n.wasEvicted() && n.getValue() instanceof SimpleSMREngine) {
+                        SimpleSMREngine e = (SimpleSMREngine) n.getValue();
+                        localStreamMap.remove(n.getKey(), e.getStream());
+                        autoCheckpointer.retire(e);
+                    }
+                })
+                .build();
+        this.baseEngineMap = baseEngineCache.asMap();
+        this.followerMap = new NonBlockingHashMap<>();
+        this.autoCheckpointer = new AutoCheckpointer(cdr.getOptions());
         this.cdr = cdr;
     }
 
@@ -136,10 +178,20 @@ public class LocalCorfuDBInstance implements ICorfuDBInstance {
         this.objectMap.clear();
         this.baseEngineMap.clear();
         this.localStreamMap.clear();
+        this.autoCheckpointer.clear();
         this.streamAddressSpace.resetCaches();
         log.info("All local caches have been reset.");
     }
 
+    /**
+     * Closes this instance, stopping the work it does in the background.
+     */
+    @Override
+    public void close() {
+        this.autoCheckpointer.close();
+        log.info("Instance closed.");
+    }
+
     /**
      * Opens a stream given it's identifier using this instance, or creates it
      * on this instance if one does not exist.
@@ -159,7 +211,10 @@ public class LocalCorfuDBInstance implements ICorfuDBInstance {
             log.info("Stream id {} uncached, open new stream.", id);
             r = streamType.getConstructor(UUID.class, ICorfuDBInstance.class)
                     .newInstance(id, this);
-            localStreamMap.put(id, r);
+            // A fresh stream must not replace the stream every other caller shares.
+            if (!flags.contains(OpenStreamFlags.NON_CACHED)) {
+                localStreamMap.put(id, r);
+            }
             return r;
         }
         catch (InstantiationException | NoSuchMethodException | IllegalAccessException
@@ -169,14 +224,39 @@ public class LocalCorfuDBInstance implements ICorfuDBInstance {
         }
     }
 
+    /**
+     * Gets the follower which tails a stream on behalf of every subscriber to it in this instance.
+     *
+     * @param id The unique ID of the stream to follow.
+     * @return The follower for the stream.
+     */
+    @Override
+    public StreamFollower getStreamFollower(UUID id) {
+        return followerMap.computeIfAbsent(id, k -> new StreamFollower(k, this));
+    }
 
     @Override
     public ISMREngine getBaseEngine(UUID id, Class<?> underlyingType, ICorfuDBObject t) {
         return baseEngineMap.compute(id, (k, e) -> {
             if (e != null) { return e; }
             else {
-                ISMREngine e1 = new SimpleSMREngine(openStream(k), underlyingType);
+                IStream s = openStream(k);
+                if (!ITimestamp.isMin(s.getCurrentPosition())) {
+                    // The cached stream was read by an engine which has since been evicted.
+                    s = openStream(k, EnumSet.of(OpenStreamFlags.NON_CACHED));
+                    localStreamMap.put(k, s);
+                }
+                SimpleSMREngine e1 = new SimpleSMREngine(s, underlyingType);
                 e1.setImplementingObject(t);
+                e1.setProposalBatchSize(((Number) cdr.getOptions().getOrDefault("proposalBatchSize",
+                        SimpleSMREngine.DEFAULT_PROPOSAL_BATCH_SIZE)).intValue());
+                e1.setProposalWriteWindow(((Number) cdr.getOptions().getOrDefault("chainWriteWindow",
+                        StreamAddressSpace.DEFAULT_CHAIN_WRITE_WINDOW)).intValue());
+                e1.setParallelApplyThreshold(((Number) cdr.getOptions().getOrDefault("parallelApplyThreshold",
+                        SimpleSMREngine.DEFAULT_PARALLEL_APPLY_THRESHOLD)).intValue());
+                // Start from the most recent checkpoint, rather than replaying the whole stream.
+                e1.restoreCheckpoint();
+                autoCheckpointer.register(e1);
                 return e1;
             }
         });
@@ -0,0 +1,166 @@
+package org.corfudb.runtime.view;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * Reads ahead of sequential readers of a stream address space, so that the reads they make next are
+ * already in the cache, or on their way to it, by the time they make them.
+ *
+ * The prefetcher watches the offsets read. Once it sees a run of reads which move forward through the
+ * address space, it loads the offsets just past the furthest one read, up to its depth, and then keeps
+ * that far ahead as the readers advance. The depth adapts: it doubles each time a prefetch finds data
+ * all the way to its end, up to the maximum depth, and halves when a prefetch runs past the end of the
+ * log, or when the readers jump away, leaving prefetched offsets unread.
+ *
+ * Only one prefetch is in flight at a time.
+ */
+@Slf4j
+public class ReadAheadPrefetcher {
+
+    /** The depth the prefetcher starts at, and never backs off below. */
+    static final int MIN_DEPTH = 8;
+
+    /** The number of forward reads in a row after which the prefetcher starts reading ahead. */
+    static final int SEQUENTIAL_THRESHOLD = 2;
+
+    /** How far behind the furthest offset read a read may be, and still count as moving forward. */
+    static final int REORDER_WINDOW = 256;
+
+    /** The maximum number of offsets read ahead, or 0, if the prefetcher is disabled. */
+    @Getter
+    final int maxDepth;
+
+    /** Loads the offsets prefetched into the cache, and returns those which had data. */
+    final Function<List<Long>, CompletableFuture<? extends Map<Long, ?>>> loader;
+
+    /** The current number of offsets read ahead. */
+    @Getter
+    int depth;
+
+    /** The offset after the furthest one read. */
+    long readTo;
+
+    /** The offset the prefetcher has loaded up to (exclusive), and the offset it started loading at. */
+    long prefetchedFrom;
+    long prefetchedTo;
+
+    /** The number of forward reads in a row. */
+    int sequentialRun;
+
+    /** Whether a prefetch is in flight. */
+    boolean prefetching;
+
+    /** The total number of offsets prefetched. */
+    @Getter
+    long prefetched;
+
+    public ReadAheadPrefetcher(int maxDepth, Function<List<Long>, CompletableFuture<? extends Map<Long, ?>>> loader)
+    {
+        this.maxDepth = maxDepth;
+        this.loader = loader;
+        reset();
+    }
+
+    /** Forget every read seen, and start again at the minimum depth. */
+    public synchronized void reset()
+    {
+        depth = Math.min(MIN_DEPTH, maxDepth);
+        readTo = 0;
+        prefetchedFrom = 0;
+        prefetchedTo = 0;
+        sequentialRun = 0;
+    }
+
+    /**
+     * Note a read of a range of offsets, and read ahead if the reads so far look sequential.
+     *
+     * @param offset    The first offset read.
+     * @param count     The number of offsets read.
+     */
+    public void onRead(long offset, int count)
+    {
+        if (maxDepth <= 0 || count <= 0)
+        {
+            return;
+        }
+        long from;
+        long to;
+        synchronized (this)
+        {
+            long end = offset + count;
+            if (offset >= readTo - REORDER_WINDOW && offset <= Math.max(readTo, prefetchedTo))
+            {
+                sequentialRun++;
+            }
+            else
+            {
+                // A jump: whatever was prefetched and not yet read will not be read.
+                if (prefetchedTo > Math.max(readTo, prefetchedFrom))
+                {
+                    backOff();
+                }
+                sequentialRun = 0;
+                prefetchedFrom = prefetchedTo = end;
+            }
+            readTo = Math.max(readTo, end);
+            if (sequentialRun < SEQUENTIAL_THRESHOLD || prefetching)
+            {
+                return;
+            }
+            from = Math.max(prefetchedTo, readTo);
+            to = readTo + depth;
+            if (from >= to)
+            {
+                return;
+            }
+            prefetching = true;
+            if (from != prefetchedTo)
+            {
+                prefetchedFrom = from;
+            }
+        }
+        prefetch(from, to);
+    }
+
+    /**
+     * Load a range of offsets into the cache, and adapt the depth to what the load found.
+     *
+     * @param from  The first offset to load.
+     * @param to    The offset to load up to (exclusive).
+     */
+    void prefetch(long from, long to)
+    {
+        log.trace("ReadAhead[{}-{}]: depth {}", from, to, depth);
+        List<Long> offsets = LongStream.range(from, to).boxed().collect(Collectors.toList());
+        loader.apply(offsets).whenComplete((loaded, ex) -> {
+            synchronized (this) {
+                prefetching = false;
+                prefetched += offsets.size();
+                if (ex != null || loaded.size() < offsets.size()) {
+                    // Past the end of the log (or failing): only keep what was found, and back off.
+                    long found = ex == null ? offsets.stream().filter(o -> !loaded.containsKey(o))
+                            .findFirst().get() : from;
+                    prefetchedTo = Math.max(prefetchedTo, found);
+                    backOff();
+                    return;
+                }
+                prefetchedTo = Math.max(prefetchedTo, to);
+                depth = Math.min(maxDepth, depth * 2);
+            }
+        });
+    }
+
+    /** Halve the depth, down to the minimum. */
+    void backOff()
+    {
+        depth = Math.max(Math.min(MIN_DEPTH, maxDepth), depth / 2);
+    }
+}
@@ -0,0 +1,319 @@
+package org.corfudb.runtime.view;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.corfudb.runtime.protocols.IServerProtocol;
+import org.corfudb.runtime.protocols.logunits.INewWriteOnceLogUnit;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spreads reads of committed entries across the replicas of a chain, and hedges them.
+ *
+ * In chain replication, an entry is committed once the tail has it, and every replica has a committed entry.
+ * The reader keeps a watermark for each chain, below which every entry is known to be committed, because it
+ * was written or read at the tail by this client. Entries above the watermark are read from the tail, as
+ * before. Entries below it may be read from any replica: the reader takes the replicas in turn, and if the
+ * replica read does not answer within a percentile of recent read latencies, reads from the next replica
+ * too, taking whichever answers first. A replica which does not have an entry below the watermark (because
+ * it is being rebuilt, or has collected it) is not trusted, and the entry is read from the tail instead.
+ *
+ * The watermark of a chain is kept in terms of the positions of entries in the chain, so that it advances
+ * over the entries of the chain only, rather than every entry in the address space.
+ */
+@Slf4j
+public class ReplicaReader {
+
+    /** The default percentile of read latencies after which a read is hedged. */
+    public static final int DEFAULT_HEDGE_PERCENTILE = 95;
+
+    /** The delay before a read is hedged until enough latencies have been sampled, in microseconds. */
+    static final long DEFAULT_HEDGE_DELAY = 10_000;
+
+    /** The shortest delay before a read is hedged, in microseconds. */
+    static final long MIN_HEDGE_DELAY = 100;
+
+    /** The number of recent read latencies the hedge delay is computed from. */
+    static final int LATENCY_SAMPLES = 1024;
+
+    /** The number of samples between recomputations of the hedge delay. */
+    static final int RECOMPUTE_INTERVAL = 64;
+
+    /** The most positions above the watermark of a chain which are remembered as committed. */
+    static final int MAX_PENDING = 4096;
+
+    static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r);
+        t.setName("ReplicaReader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** The positions of a chain known to be committed. */
+    static class Watermark {
+        /** Every position below this is committed. */
+        long committedTo;
+        /** Positions at or above the watermark which are committed. */
+        final TreeSet<Long> above = new TreeSet<>();
+
+        synchronized void add(long position)
+        {
+            if (position < committedTo)
+            {
+                return;
+            }
+            if (position == committedTo)
+            {
+                committedTo++;
+                while (above.remove(committedTo))
+                {
+                    committedTo++;
+                }
+            }
+            else if (above.size() < MAX_PENDING)
+            {
+                above.add(position);
+            }
+        }
+
+        synchronized boolean covers(long position)
+        {
+            return position < committedTo;
+        }
+    }
+
+    /** Whether committed entries may be read from any replica. */
+    @Getter
+    final boolean balanced;
+
+    /** The percentile of read latencies after which a read is hedged, or 0, if reads are not hedged. */
+    @Getter
+    final int hedgePercentile;
+
+    /** The watermarks of the chains, by chain number. */
+    final ConcurrentHashMap<Integer, Watermark> watermarks = new ConcurrentHashMap<>();
+
+    /** The replica the next balanced read starts at. */
+    final AtomicInteger nextReplica = new AtomicInteger();
+
+    /** Recent read latencies, in microseconds. */
+    final long[] latencies = new long[LATENCY_SAMPLES];
+    int samples;
+
+    /** The delay after which a read is hedged, in microseconds. */
+    @Getter
+    volatile long hedgeDelay = DEFAULT_HEDGE_DELAY;
+
+    /** The number of reads answered by a replica other than the tail. */
+    @Getter
+    final AtomicLong replicaReads = new AtomicLong();
+
+    /** The number of reads which were hedged. */
+    @Getter
+    final AtomicLong hedgedReads = new AtomicLong();
+
+    public ReplicaReader(boolean balanced, int hedgePercentile)
+    {
+        this.balanced = balanced;
+        this.hedgePercentile = hedgePercentile;
+    }
+
+    /** Forget every entry known to be committed, as when the chains change. */
+    public void reset()
+    {
+        watermarks.clear();
+    }
+
+    /**
+     * Note that an entry is committed, because the tail of its chain has it.
+     *
+     * @param chainNumber   The number of the chain which stores the entry.
+     * @param position      The position of the entry in the chain.
+     */
+    public void committed(int chainNumber, long position)
+    {
+        if (balanced)
+        {
+            watermarks.computeIfAbsent(chainNumber, k -> new Watermark()).add(position);
+        }
+    }
+
+    /**
+     * Get whether an entry may be read from any replica of its chain.
+     *
+     * @param chainNumber   The number of the chain which stores the entry.
+     * @param position      The position of the entry in the chain.
+     * @return              True, if the entry is below the watermark of the chain.
+     */
+    public boolean isCommitted(int chainNumber, long position)
+    {
+        Watermark w = watermarks.get(chainNumber);
+        return w != null && w.covers(position);
+    }
+
+    /** Get whether the result of a read at the tail shows the entry read is committed.
+     * @param r The result of the read.
+     * @return  True, if the entry was written, filled or trimmed.
+     */
+    static boolean isFinal(INewWriteOnceLogUnit.ReadResult r)
+    {
+        return r != null && r.getResult() != INewWriteOnceLogUnit.ReadResultType.EMPTY;
+    }
+
+    /** Get whether the result of a read at a replica other than the tail can be trusted. Entries are written,
+     * and holes filled, in chain order, so a replica which has a committed entry has what the tail has.
+     * @param r The result of the read.
+     * @return  True, if the replica had the entry.
+     */
+    static boolean isAnswer(INewWriteOnceLogUnit.ReadResult r)
+    {
+        return r != null && (r.getResult() == INewWriteOnceLogUnit.ReadResultType.DATA ||
+                r.getResult() == INewWriteOnceLogUnit.ReadResultType.FILLED_HOLE);
+    }
+
+    /**
+     * Choose the replica to read a batch of entries from.
+     *
+     * @param chain         The chain which stores the entries, from head to tail.
+     * @param chainNumber   The number of the chain.
+     * @param position      The position in the chain of the last entry of the batch.
+     * @return              Any replica, if every entry of the batch is committed, or the tail otherwise.
+     */
+    public INewWriteOnceLogUnit choose(List<IServerProtocol> chain, int chainNumber, long position)
+    {
+        int replica = chain.size() - 1;
+        if (balanced && chain.size() > 1 && isCommitted(chainNumber, position))
+        {
+            replica = Math.floorMod(nextReplica.getAndIncrement(), chain.size());
+        }
+        return (INewWriteOnceLogUnit) chain.get(replica);
+    }
+
+    /**
+     * Read an entry from its chain.
+     *
+     * @param chain         The chain which stores the entry, from head to tail.
+     * @param chainNumber   The number of the chain.
+     * @param position      The position of the entry in the chain.
+     * @param index         The index (global offset) of the entry.
+     * @return              A future which completes with the result of the read.
+     */
+    public CompletableFuture<INewWriteOnceLogUnit.ReadResult> read(List<IServerProtocol> chain, int chainNumber,
+                                                                   long position, long index)
+    {
+        int tail = chain.size() - 1;
+        if (!balanced || chain.size() == 1 || !isCommitted(chainNumber, position))
+        {
+            return timedRead((INewWriteOnceLogUnit) chain.get(tail), index)
+                    .thenApply(r -> {
+                        if (isFinal(r)) {
+                            committed(chainNumber, position);
+                        }
+                        return r;
+                    });
+        }
+        int first = Math.floorMod(nextReplica.getAndIncrement(), chain.size());
+        CompletableFuture<INewWriteOnceLogUnit.ReadResult> result = new CompletableFuture<>();
+        readReplica(chain, first, index, result);
+        if (hedgePercentile > 0)
+        {
+            scheduler.schedule(() -> {
+                if (!result.isDone()) {
+                    log.trace("Read[{}]: Hedged after {} us", index, hedgeDelay);
+                    hedgedReads.incrementAndGet();
+                    readReplica(chain, (first + 1) % chain.size(), index, result);
+                }
+            }, hedgeDelay, TimeUnit.MICROSECONDS);
+        }
+        return result;
+    }
+
+    /**
+     * Read a committed entry from a replica, and complete a result with it, unless it is already complete.
+     * If the replica is not the tail and does not have the entry, the entry is read from the tail.
+     *
+     * @param chain     The chain which stores the entry, from head to tail.
+     * @param replica   The position in the chain of the replica to read from.
+     * @param index     The index (global offset) of the entry.
+     * @param result    The result to complete.
+     */
+    void readReplica(List<IServerProtocol> chain, int replica, long index,
+                     CompletableFuture<INewWriteOnceLogUnit.ReadResult> result)
+    {
+        int tail = chain.size() - 1;
+        timedRead((INewWriteOnceLogUnit) chain.get(replica), index)
+                .whenComplete((r, ex) -> {
+                    if (replica == tail) {
+                        if (ex != null) {
+                            result.completeExceptionally(ex);
+                        } else if (!result.complete(r) && r != null) {
+                            // Another replica answered first, so this result is dropped.
+                            r.release();
+                        }
+                    } else if (isAnswer(r)) {
+                        if (result.complete(r)) {
+                            replicaReads.incrementAndGet();
+                        } else {
+                            r.release();
+                        }
+                    } else if (!result.isDone()) {
+                        log.trace("Read[{}]: Replica {} did not have a committed entry, reading tail", index, replica);
+                        readReplica(chain, tail, index, result);
+                    }
+                });
+    }
+
+    /**
+     * Read an entry from a log unit, and sample the latency of the read.
+     *
+     * @param lu    The log unit to read from.
+     * @param index The index (global offset) to read.
+     * @return      A future which completes with the result of the read.
+     */
+    CompletableFuture<INewWriteOnceLogUnit.ReadResult> timedRead(INewWriteOnceLogUnit lu, long index)
+    {
+        if (!balanced || hedgePercentile <= 0)
+        {
+            return lu.read(index);
+        }
+        long start = System.nanoTime();
+        return lu.read(index)
+                .whenComplete((r, ex) -> {
+                    if (ex == null) {
+                        sample(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                    }
+                });
+    }
+
+    /** Sample the latency of a read, recomputing the hedge delay every so many samples.
+     * @param latency   The latency of the read, in microseconds.
+     */
+    void sample(long latency)
+    {
+        long[] sorted = null;
+        synchronized (latencies)
+        {
+            latencies[samples % LATENCY_SAMPLES] = latency;
+            samples++;
+            if (samples % RECOMPUTE_INTERVAL == 0)
+            {
+                sorted = Arrays.copyOf(latencies, Math.min(samples, LATENCY_SAMPLES));
+            }
+        }
+        if (sorted != null)
+        {
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(hedgePercentile / 100.0 * sorted.length) - 1;
+            hedgeDelay = Math.max(MIN_HEDGE_DELAY, sorted[Math.max(0, Math.min(rank, sorted.length - 1))]);
+        }
+    }
+}
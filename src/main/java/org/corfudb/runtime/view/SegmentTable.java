@@ -0,0 +1,160 @@
+package org.corfudb.runtime.view;
+
+import lombok.Getter;
+import org.corfudb.runtime.exceptions.OutOfSpaceException;
+import org.corfudb.runtime.protocols.IServerProtocol;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Routes addresses to the segments of a view which store them, and to the chains of those segments.
+ *
+ * A segment stores the addresses from its start up to the address it was sealed at, or every address from
+ * its start up to the start of the next segment, if it is not sealed (a sealed address of 0). Within a
+ * segment, addresses are striped across the chains, counting from the start of the segment. Each chain of
+ * every segment has a number which is unique in the table, so that the chains of different segments can be
+ * told apart.
+ *
+ * The table is built once for a view, and looks segments up with a binary search of their starts.
+ */
+public class SegmentTable {
+
+    /** The view the table was built from. */
+    @Getter
+    final CorfuDBView view;
+
+    /** The segments, in order of their starts. */
+    final CorfuDBViewSegment[] segments;
+
+    /** The first address of each segment. */
+    final long[] starts;
+
+    /** The address after the last address of each segment. */
+    final long[] ends;
+
+    /** The chains of each segment, and the number of the first chain of each segment. */
+    final List<List<List<IServerProtocol>>> chains = new ArrayList<>();
+    final int[] firstChain;
+
+    /** Build the segment table of a view.
+     * @param view  The view to build the table of.
+     */
+    public SegmentTable(CorfuDBView view)
+    {
+        this(view, view.getSegments());
+    }
+
+    /** Build a segment table.
+     * @param view      The view the segments belong to.
+     * @param segments  The segments of the view, in any order.
+     */
+    public SegmentTable(CorfuDBView view, List<CorfuDBViewSegment> segments)
+    {
+        this.view = view;
+        this.segments = segments.stream()
+                .sorted(Comparator.comparingLong(CorfuDBViewSegment::getStart))
+                .toArray(CorfuDBViewSegment[]::new);
+        starts = new long[this.segments.length];
+        ends = new long[this.segments.length];
+        firstChain = new int[this.segments.length];
+        int chainCount = 0;
+        for (int i = 0; i < this.segments.length; i++)
+        {
+            CorfuDBViewSegment s = this.segments[i];
+            starts[i] = s.getStart();
+            long next = i + 1 < this.segments.length ? this.segments[i + 1].getStart() : Long.MAX_VALUE;
+            ends[i] = s.getSealed() > 0 ? Math.min(s.getSealed(), next) : next;
+            chains.add(s.getGroups());
+            firstChain[i] = chainCount;
+            chainCount += s.getGroups().size();
+        }
+    }
+
+    /**
+     * Find the segment which stores an address.
+     *
+     * @param address   The address (global offset).
+     * @return          The position of the segment in the table.
+     * @throws OutOfSpaceException  If no segment stores the address.
+     */
+    public int find(long address)
+        throws OutOfSpaceException
+    {
+        int i = Arrays.binarySearch(starts, address);
+        if (i < 0)
+        {
+            // The insertion point is after the last segment which starts below the address.
+            i = -i - 2;
+        }
+        if (i < 0 || address >= ends[i])
+        {
+            throw new OutOfSpaceException("No segment stores address", address);
+        }
+        return i;
+    }
+
+    /** Get a segment.
+     * @param segment   The position of the segment in the table.
+     * @return          The segment.
+     */
+    public CorfuDBViewSegment getSegment(int segment)
+    {
+        return segments[segment];
+    }
+
+    /** Get the number of segments in the table.
+     * @return  The number of segments.
+     */
+    public int size()
+    {
+        return segments.length;
+    }
+
+    /** Get the chain which stores an address.
+     * @param segment   The position of the segment which stores the address.
+     * @param address   The address (global offset).
+     * @return          The chain, from head to tail.
+     */
+    public List<IServerProtocol> getChain(int segment, long address)
+    {
+        List<List<IServerProtocol>> groups = chains.get(segment);
+        return groups.get((int) ((address - starts[segment]) % groups.size()));
+    }
+
+    /** Get the number of the chain which stores an address.
+     * @param segment   The position of the segment which stores the address.
+     * @param address   The address (global offset).
+     * @return          The number of the chain, which is unique in the table.
+     */
+    public int getChainNumber(int segment, long address)
+    {
+        return firstChain[segment] + (int) ((address - starts[segment]) % chains.get(segment).size());
+    }
+
+    /** Get the position of an address in the chain which stores it.
+     * @param segment   The position of the segment which stores the address.
+     * @param address   The address (global offset).
+     * @return          The number of addresses of the segment the chain stores before this one.
+     */
+    public long getChainPosition(int segment, long address)
+    {
+        return (address - starts[segment]) / chains.get(segment).size();
+    }
+
+    /** Get the chains of the segments which store any address up to the given one.
+     * @param address   The address (global offset).
+     * @return          The chains, from head to tail, of every segment starting at or before the address.
+     */
+    public List<List<IServerProtocol>> getChainsUpTo(long address)
+    {
+        List<List<IServerProtocol>> result = new ArrayList<>();
+        for (int i = 0; i < segments.length && starts[i] <= address; i++)
+        {
+            result.addAll(chains.get(i));
+        }
+        return result;
+    }
+}
@@ -1,22 +1,28 @@
 package org.corfudb.runtime.view;
 
 import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import lombok.Getter;
 import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.corfudb.infrastructure.thrift.ReadCode;
+import org.corfudb.runtime.exceptions.OutOfSpaceException;
 import org.corfudb.runtime.protocols.IServerProtocol;
 import org.corfudb.runtime.protocols.logunits.INewWriteOnceLogUnit;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
 
 /**
  * This is the default implementation of a stream address space, which is backed by a LRU cache.
+ * The cache is bounded by the serialized size of the entries it holds, rather than their number.
  * Created by mwei on 8/26/15.
  */
 @Slf4j
@@ -34,6 +40,96 @@ public class StreamAddressSpace implements IStreamAddressSpace {
     @Getter
     AsyncLoadingCache<Long, StreamAddressSpaceEntry> cache;
 
+    /** The default maximum weight of the cache, in bytes. */
+    public static final long DEFAULT_CACHE_MAXIMUM_WEIGHT = 256 * 1024 * 1024;
+
+    /** The default weight of an entry whose serialized size is not known (i.e., one written by this client). */
+    public static final int DEFAULT_CACHE_ENTRY_WEIGHT = 1024;
+
+    /** The weight added to every entry for the entry itself, its key and its metadata. */
+    static final int CACHE_ENTRY_OVERHEAD = 64;
+
+    /** The longest time a hole fill waits for the head of a chain to settle an address, in milliseconds. */
+    static final long HOLE_FILL_TIMEOUT = 1000;
+
+    /** The largest number of addresses read from a log unit with a single request. */
+    public static final int MAX_BATCH_READ = 256;
+
+    /** The maximum weight of the cache, in bytes. */
+    @Getter
+    final long cacheMaximumWeight;
+
+    /** The weight of an entry whose serialized size is not known. */
+    final int cacheEntryWeight;
+
+    /** The default number of writes each chain may have in flight. */
+    public static final int DEFAULT_CHAIN_WRITE_WINDOW = 64;
+
+    /** The number of writes each chain may have in flight. */
+    @Getter
+    final int chainWriteWindow;
+
+    /** The write windows of the chains, by chain number. */
+    final ConcurrentHashMap<Integer, ChainWindow> chainWindows = new ConcurrentHashMap<>();
+
+    /** Routes indexes to the segments and chains which store them, for the view it was built from. */
+    volatile SegmentTable segmentTable;
+
+    /**
+     * Limits the number of writes in flight on a chain. Writes beyond the window wait, in order,
+     * for a write ahead of them to complete at the tail.
+     */
+    @RequiredArgsConstructor
+    static class ChainWindow {
+        final int size;
+        int outstanding;
+        final Queue<Runnable> waiting = new ArrayDeque<>();
+
+        /** Start a write, or queue it if the window is full.
+         * @param write The write to start, which must call complete() when it completes.
+         */
+        void submit(Runnable write)
+        {
+            synchronized (this)
+            {
+                if (outstanding >= size)
+                {
+                    waiting.add(write);
+                    return;
+                }
+                outstanding++;
+            }
+            write.run();
+        }
+
+        /** Note that a write completed, and start the next write waiting, if any. */
+        void complete()
+        {
+            Runnable next;
+            synchronized (this)
+            {
+                next = waiting.poll();
+                if (next == null)
+                {
+                    outstanding--;
+                    return;
+                }
+            }
+            next.run();
+        }
+    }
+
+    /** The default maximum number of offsets read ahead of sequential readers. */
+    public static final int DEFAULT_READ_AHEAD_DEPTH = 256;
+
+    /** Reads ahead of sequential readers into the cache. */
+    @Getter
+    final ReadAheadPrefetcher prefetcher;
+
+    /** Spreads reads of committed entries across the replicas of their chains. */
+    @Getter
+    final ReplicaReader replicaReader;
+
     StreamAddressEntryCode fromLogUnitcode(INewWriteOnceLogUnit.ReadResultType rrt) {
         switch (rrt)
         {
@@ -49,50 +145,240 @@ public class StreamAddressSpace implements IStreamAddressSpace {
         throw new RuntimeException("unknown read result + " + rrt.toString());
     }
 
+    /** Get the segment table of the current view, rebuilding it if the view has changed since it was built.
+     * When the view changes, what is known about the chains of the old view is forgotten.
+     * @return  The segment table of the current view.
+     */
+    SegmentTable getSegmentTable()
+    {
+        CorfuDBView view = instance.getView();
+        SegmentTable table = segmentTable;
+        if (table == null || table.getView() != view)
+        {
+            synchronized (this)
+            {
+                table = segmentTable;
+                if (table == null || table.getView() != view)
+                {
+                    if (table != null)
+                    {
+                        log.info("View changed to epoch {}, rebuilding segment table.", view.getEpoch());
+                        replicaReader.reset();
+                        chainWindows.clear();
+                    }
+                    table = segmentTable = new SegmentTable(view);
+                }
+            }
+        }
+        return table;
+    }
+
+    /** Find the segment which stores an index.
+     * @param table The segment table to search.
+     * @param index The index (global offset).
+     * @return      The position of the segment in the table.
+     */
+    int findSegment(SegmentTable table, long index)
+    {
+        try {
+            return table.find(index);
+        } catch (OutOfSpaceException oose) {
+            throw new RuntimeException(oose);
+        }
+    }
+
+    /** Get the chain which stores an index.
+     * @param index The index (global offset).
+     * @return      The chain of log units which stores the index, from head to tail.
+     */
+    List<IServerProtocol> getChain(long index)
+    {
+        SegmentTable table = getSegmentTable();
+        return table.getChain(findSegment(table, index), index);
+    }
+
+    /** Get the number of the chain which stores an index.
+     * @param index The index (global offset).
+     * @return      The number of the chain, which is unique among the chains of every segment.
+     */
+    int getChainNumber(long index)
+    {
+        SegmentTable table = getSegmentTable();
+        return table.getChainNumber(findSegment(table, index), index);
+    }
+
+    /** Get the position of an index in the chain which stores it.
+     * @param index The index (global offset).
+     * @return      The number of indexes stored by the chain before this one.
+     */
+    long getChainPosition(long index)
+    {
+        SegmentTable table = getSegmentTable();
+        return table.getChainPosition(findSegment(table, index), index);
+    }
+
+    /** Get the log unit at the tail of the chain which stores an index.
+     * @param index The index (global offset).
+     * @return      The log unit to read the index from.
+     */
+    INewWriteOnceLogUnit getTailUnit(long index)
+    {
+        List<IServerProtocol> chain = getChain(index);
+        return (INewWriteOnceLogUnit) chain.get(chain.size() - 1);
+    }
+
+    /** Convert the result of a log unit read into an entry.
+     * @param index The index which was read.
+     * @param r     The result of the read, or null, if the read failed.
+     * @return      An entry, or null, if the read failed or the index was empty.
+     */
+    StreamAddressSpaceEntry fromReadResult(long index, INewWriteOnceLogUnit.ReadResult r)
+    {
+        if (r == null)
+        {
+            return null;
+        }
+        switch (r.getResult()) {
+            case DATA:
+                log.trace("Load[{}]: Data", index);
+                // The payload is only deserialized if someone reads it.
+                return new StreamAddressSpaceEntry<>(r.getStreams(), index, r, this::reload);
+            case EMPTY:
+                log.trace("Load[{}]: Empty", index);
+                return null;
+            default:
+                log.trace("Load[{}]: {}", index , fromLogUnitcode(r.getResult()));
+                return new StreamAddressSpaceEntry<>(index, fromLogUnitcode(r.getResult()));
+        }
+    }
+
+    /** Read the payload of an entry again, because the entry was removed from the cache, and its receive
+     * buffer released, before its payload was read.
+     * @param index The global index of the entry.
+     * @return      The payload of the entry.
+     */
+    Object reload(long index)
+    {
+        log.trace("Reload[{}]: Payload released before it was read", index);
+        StreamAddressSpaceEntry e = readAsync(index).join();
+        if (e == null || e.getCode() != StreamAddressEntryCode.DATA)
+        {
+            throw new IllegalStateException("Payload at " + index + " could not be read again: "
+                    + (e == null ? "EMPTY" : e.getCode()));
+        }
+        return e.getPayload();
+    }
+
     @SuppressWarnings("unchecked")
     public CompletableFuture<StreamAddressSpaceEntry> load(long index)
     {
         log.trace("Load[{}]: Read requested", index);
-        int chainNum = (int) (index % instance.getView().getSegments().get(0).getGroups().size());
-        List<IServerProtocol> chain = instance.getView().getSegments().get(0).getGroups().get(chainNum);
-        int unitNum = chain.size() - 1;
-        INewWriteOnceLogUnit lu = (INewWriteOnceLogUnit) chain.get(unitNum);
-        return lu.read(index)
+        return replicaReader.read(getChain(index), getChainNumber(index), getChainPosition(index), index)
                 .exceptionally(e -> {
                     log.error(e.getMessage());
                     return null;
                 })
-                .thenApply(r -> {
-                    if (r == null)
-                    {
-                        cache.synchronous().invalidate(index);
-                        return null;
-                    }
-                    switch (r.getResult()) {
-                        case DATA:
-                            log.trace("Load[{}]: Data", index);
-                            return new StreamAddressSpaceEntry(r.getStreams(), index, StreamAddressEntryCode.DATA, r.getPayload());
-                        case EMPTY:
-                            //self invalidate
-                            log.trace("Load[{}]: Empty", index);
-                            cache.synchronous().invalidate(index);
-                            return null;
-                        default:
-                            log.trace("Load[{}]: {}", index , fromLogUnitcode(r.getResult()));
-                            return new StreamAddressSpaceEntry(index, fromLogUnitcode(r.getResult()));
-                    }
+                // The cache drops the mapping itself when the load completes with null.
+                .thenApply(r -> fromReadResult(index, r));
+    }
+
+    /**
+     * Load several indexes, with one request to each log unit which stores some of them.
+     *
+     * @param indexes   The indexes (global offsets) to load.
+     * @return          A future which completes with the entries loaded, by index. Indexes which are empty,
+     *                  or could not be read, are left out.
+     */
+    public CompletableFuture<Map<Long, StreamAddressSpaceEntry>> loadAll(Iterable<? extends Long> indexes)
+    {
+        Map<Integer, List<Long>> byChain = new HashMap<>();
+        for (Long index : indexes)
+        {
+            byChain.computeIfAbsent(getChainNumber(index), k -> new ArrayList<>()).add(index);
+        }
+        List<CompletableFuture<Map<Long, INewWriteOnceLogUnit.ReadResult>>> reads = new ArrayList<>();
+        byChain.forEach((chainNumber, chainIndexes) -> {
+            for (int i = 0; i < chainIndexes.size(); i += MAX_BATCH_READ)
+            {
+                List<Long> batch = chainIndexes.subList(i, Math.min(chainIndexes.size(), i + MAX_BATCH_READ));
+                log.trace("LoadAll[{}-{}]: Read of {} indexes requested", batch.get(0), batch.get(batch.size() - 1),
+                        batch.size());
+                reads.add(readBatch(batch)
+                        .exceptionally(e -> {
+                            log.error(e.getMessage());
+                            return Collections.emptyMap();
+                        }));
+            }
+        });
+        return CompletableFuture.allOf(reads.toArray(new CompletableFuture[reads.size()]))
+                .thenApply(v -> {
+                    Map<Long, StreamAddressSpaceEntry> entries = new HashMap<>();
+                    reads.forEach(cf -> cf.join().forEach((index, r) -> {
+                        StreamAddressSpaceEntry e = fromReadResult(index, r);
+                        if (e != null)
+                        {
+                            entries.put(index, e);
+                        }
+                    }));
+                    return entries;
                 });
     }
 
     /**
-     * This constructor builds a default stream address space with a LRU cache of 10,000 entries.
+     * This constructor builds a default stream address space with a cache of 256MB.
      * @param instance     The Corfu instance that this StreamAddressSpace serves.
      */
-    @SuppressWarnings("unchecked")
     public StreamAddressSpace(@NonNull ICorfuDBInstance instance)
+    {
+        this(instance, Collections.emptyMap());
+    }
+
+    /**
+     * This constructor builds a stream address space with a cache sized by the given configuration.
+     * @param instance          The Corfu instance that this StreamAddressSpace serves.
+     * @param configuration     The configuration, which may set "cacheMaximumWeight", the maximum number of
+     *                          bytes to cache, "cacheEntryWeight", the weight of entries of unknown size,
+     *                          "readAheadDepth", the most offsets to read ahead of sequential readers,
+     *                          or 0 to disable reading ahead, "chainWriteWindow", the number of writes
+     *                          each chain may have in flight, "replicaReads", whether committed entries may be
+     *                          read from any replica of their chain, and "hedgePercentile", the percentile of
+     *                          read latencies after which such reads are hedged, or 0 to disable hedging.
+     */
+    public StreamAddressSpace(@NonNull ICorfuDBInstance instance, @NonNull Map<String, Object> configuration)
     {
         this.instance = instance;
+        this.cacheMaximumWeight =
+                ((Number) configuration.getOrDefault("cacheMaximumWeight", DEFAULT_CACHE_MAXIMUM_WEIGHT)).longValue();
+        this.cacheEntryWeight =
+                ((Number) configuration.getOrDefault("cacheEntryWeight", DEFAULT_CACHE_ENTRY_WEIGHT)).intValue();
+        this.chainWriteWindow =
+                ((Number) configuration.getOrDefault("chainWriteWindow", DEFAULT_CHAIN_WRITE_WINDOW)).intValue();
         cache = buildCache();
+        this.prefetcher = new ReadAheadPrefetcher(
+                ((Number) configuration.getOrDefault("readAheadDepth", DEFAULT_READ_AHEAD_DEPTH)).intValue(),
+                offsets -> cache.getAll(offsets));
+        this.replicaReader = new ReplicaReader(
+                (Boolean) configuration.getOrDefault("replicaReads", false),
+                ((Number) configuration.getOrDefault("hedgePercentile", ReplicaReader.DEFAULT_HEDGE_PERCENTILE)).intValue());
+    }
+
+    /** Get the weight of an entry in the cache.
+     *
+     * @param e The entry to weigh, or null.
+     * @return  The weight of the entry, in bytes.
+     */
+    int weigh(StreamAddressSpaceEntry e)
+    {
+        if (e == null)
+        {
+            // A load which found nothing, which the cache is about to drop.
+            return 0;
+        }
+        if (e.getCode() != StreamAddressEntryCode.DATA)
+        {
+            return CACHE_ENTRY_OVERHEAD;
+        }
+        return CACHE_ENTRY_OVERHEAD + (e.getSerializedSize() > 0 ? e.getSerializedSize() : cacheEntryWeight);
     }
 
     /** Build the asynchronous loading cache.
@@ -101,29 +387,52 @@ public class StreamAddressSpace implements IStreamAddressSpace {
      */
     private AsyncLoadingCache<Long, StreamAddressSpaceEntry> buildCache()
     {
-        AtomicInteger threadNum = new AtomicInteger();
         return Caffeine.newBuilder()
-                .maximumSize(10_000)
-                .executor(Executors.newFixedThreadPool(8, new ThreadFactory() {
-                    @Override
-                    public Thread newThread(Runnable runnable) {
-                        Thread thread = Executors.defaultThreadFactory().newThread(runnable);
-                        thread.setName("CachePool-" + threadNum.getAndIncrement());
-                        thread.setDaemon(true);
-                        return thread;
-                    }
-                }))
-                .buildAsync(idx -> {
-                    try {
-                        return load(idx).get();
-                    }
-                    catch (Exception e)
+                .maximumWeight(cacheMaximumWeight)
+                .<Long, StreamAddressSpaceEntry>weigher((k, v) -> weigh(v))
+                .recordStats()
+                // Entries removed for any reason give their receive buffers back, without copying payloads which
+                // were never read. Readers which still hold such an entry read its payload again.
+                .<Long, StreamAddressSpaceEntry>removalListener(n -> {
+                    if (n.getValue() != null)
                     {
-                        throw new RuntimeException(e);
+                        n.getValue().release();
+                    }
+                })
+                .buildAsync(new CacheLoader<Long, StreamAddressSpaceEntry>() {
+                    @Override
+                    public StreamAddressSpaceEntry load(Long idx) {
+                        return StreamAddressSpace.this.load(idx).join();
+                    }
+
+                    @Override
+                    public CompletableFuture<StreamAddressSpaceEntry> asyncLoad(Long idx, Executor executor) {
+                        return StreamAddressSpace.this.load(idx);
+                    }
+
+                    @Override
+                    public Map<Long, StreamAddressSpaceEntry> loadAll(Iterable<? extends Long> idxs) {
+                        return StreamAddressSpace.this.loadAll(idxs).join();
+                    }
+
+                    @Override
+                    public CompletableFuture<Map<Long, StreamAddressSpaceEntry>> asyncLoadAll(
+                            Iterable<? extends Long> idxs, Executor executor) {
+                        return StreamAddressSpace.this.loadAll(idxs);
                     }
                 });
     }
 
+    /**
+     * Get the statistics of the cache, such as its hit rate and the number of entries evicted from it.
+     *
+     * @return The statistics of the cache, since it was last reset.
+     */
+    public CacheStats getCacheStats()
+    {
+        return cache.synchronous().stats();
+    }
+
     /**
      * Asynchronously write to the stream address space.
      *
@@ -134,16 +443,29 @@ public class StreamAddressSpace implements IStreamAddressSpace {
     @Override
     @SuppressWarnings("unchecked")
     public CompletableFuture<StreamAddressWriteResult> writeAsync(long offset, Set<UUID> streams, Object payload) {
-        int chainNum = (int) (offset % instance.getView().getSegments().get(0).getGroups().size());
-        List<IServerProtocol> chain = instance.getView().getSegments().get(0).getGroups().get(chainNum);
-        int unitNum = chain.size() - 1;
-        INewWriteOnceLogUnit lu = (INewWriteOnceLogUnit) chain.get(unitNum);
-        return lu.write(offset, streams, 0, payload)
+        List<IServerProtocol> chain = getChain(offset);
+        ChainWindow window = chainWindows.computeIfAbsent(getChainNumber(offset), k -> new ChainWindow(chainWriteWindow));
+        CompletableFuture<INewWriteOnceLogUnit.WriteResult> written = new CompletableFuture<>();
+        AtomicInteger serializedSize = new AtomicInteger();
+        window.submit(() -> writeChain(chain, 0, offset, streams, payload, serializedSize::set)
+                .whenComplete((res, ex) -> {
+                    window.complete();
+                    if (ex != null) {
+                        written.completeExceptionally(ex);
+                    } else {
+                        written.complete(res);
+                    }
+                }));
+        return written
                 .thenApply(res -> {
                     if (res == INewWriteOnceLogUnit.WriteResult.OK) {
-                        // Write was OK, so generate an entry in our cache and return OK.
+                        // Write was OK at the tail, so the entry is committed on every replica.
+                        replicaReader.committed(getChainNumber(offset), getChainPosition(offset));
+                        // Generate an entry in our cache and return OK.
                         StreamAddressSpaceEntry s = new StreamAddressSpaceEntry(streams, offset,
                                 StreamAddressEntryCode.DATA, payload);
+                        // Weigh the entry by the size it was written at, as if it had been read.
+                        s.setSerializedSize(serializedSize.get());
                         cache.put(offset, CompletableFuture.completedFuture(s));
                         log.trace("Write[{}] complete, cached.", offset);
                         return StreamAddressWriteResult.OK;
@@ -163,6 +485,44 @@ public class StreamAddressSpace implements IStreamAddressSpace {
                 });
     }
 
+    /**
+     * Write an entry down a chain, from the given replica to the tail, each replica only once the
+     * replica before it has accepted the entry. Writes of different entries proceed down the chain
+     * independently, so one entry may be written at the head while another is written at the tail.
+     *
+     * Once the head has accepted the entry, a later replica can only hold the same entry, copied there by a
+     * hole filler completing this write (see fillHole), so such a replica is passed over, as copyChain does.
+     * Only an OVERWRITE at the head means the entry lost the offset.
+     *
+     * @param chain     The chain to write to, from head to tail.
+     * @param replica   The position in the chain of the replica to write next.
+     * @param offset    The offset (global index) to write to.
+     * @param streams   The streams that this entry will belong to.
+     * @param payload   The unserialized payload that belongs to this entry.
+     * @param serialized Given the size of the serialized payload, in bytes, as it is written.
+     * @return          A future which completes with the result at the tail, or with the first result
+     *                  which was not OK.
+     */
+    CompletableFuture<INewWriteOnceLogUnit.WriteResult> writeChain(List<IServerProtocol> chain, int replica,
+                                                                   long offset, Set<UUID> streams, Object payload,
+                                                                   IntConsumer serialized)
+    {
+        INewWriteOnceLogUnit lu = (INewWriteOnceLogUnit) chain.get(replica);
+        return lu.write(offset, streams, 0, payload, serialized)
+                .thenCompose(written -> {
+                    INewWriteOnceLogUnit.WriteResult res = written;
+                    if (res == INewWriteOnceLogUnit.WriteResult.OVERWRITE && replica > 0) {
+                        log.trace("Write[{}] already completed at replica {} by a hole fill", offset, replica);
+                        res = INewWriteOnceLogUnit.WriteResult.OK;
+                    }
+                    if (res != INewWriteOnceLogUnit.WriteResult.OK || replica == chain.size() - 1) {
+                        return CompletableFuture.completedFuture(res);
+                    }
+                    log.trace("Write[{}] written at replica {} of {}", offset, replica, chain.size());
+                    return writeChain(chain, replica + 1, offset, streams, payload, serialized);
+                });
+    }
+
     /**
      * Asynchronously read from the stream address space.
      *
@@ -171,25 +531,126 @@ public class StreamAddressSpace implements IStreamAddressSpace {
      */
     @Override
     public CompletableFuture<StreamAddressSpaceEntry> readAsync(long offset) {
-        return cache.get(offset);
+        CompletableFuture<StreamAddressSpaceEntry> cf = cache.get(offset);
+        prefetcher.onRead(offset, 1);
+        return cf;
+    }
+
+    /**
+     * Asynchronously read several offsets from the stream address space. Offsets which miss in the cache
+     * are loaded together, with one request to each log unit which stores some of them.
+     *
+     * @param offsets The offsets (global indexes) to read from.
+     * @return A map of the entries read, by offset, which has no entry for offsets with nothing written.
+     */
+    @Override
+    public CompletableFuture<Map<Long, StreamAddressSpaceEntry>> readAllAsync(List<Long> offsets) {
+        CompletableFuture<Map<Long, StreamAddressSpaceEntry>> cf = cache.getAll(offsets);
+        if (!offsets.isEmpty())
+        {
+            prefetcher.onRead(offsets.get(0), offsets.size());
+        }
+        return cf;
+    }
+
+    /**
+     * Asynchronously read from the stream address space, waiting for the offset to be written if it is empty.
+     * The wait happens at the log unit, so a reader at the tail of the log does not need to poll.
+     *
+     * @param offset  The offset (global index) to read from.
+     * @param timeout The longest time to wait for the offset to be written, in milliseconds.
+     * @return A StreamAddressSpaceEntry containing the data that was read, or null, if nothing
+     * was written to the offset before the timeout elapsed.
+     */
+    @Override
+    public CompletableFuture<StreamAddressSpaceEntry> readWaitAsync(long offset, long timeout) {
+        log.trace("ReadWait[{}]: Read requested, waiting up to {} ms", offset, timeout);
+        return getTailUnit(offset).readWait(offset, timeout)
+                .exceptionally(e -> {
+                    log.error(e.getMessage());
+                    return null;
+                })
+                .thenApply(r -> {
+                    if (ReplicaReader.isFinal(r))
+                    {
+                        replicaReader.committed(getChainNumber(offset), getChainPosition(offset));
+                    }
+                    StreamAddressSpaceEntry e = fromReadResult(offset, r);
+                    if (e != null)
+                    {
+                        cache.put(offset, CompletableFuture.completedFuture(e));
+                    }
+                    return e;
+                });
     }
 
     /**
      * Fill an address in the address space with a hole entry. This method is unreliable (not guaranteed to send a request
      * to any log unit) and asynchronous.
      *
+     * The hole is filled in chain order, as entries are written. The head settles what the address holds: the
+     * hole, or an entry whose write reached the head first. Whichever it is, it is then copied down the chain,
+     * so that the write of a client which failed part way is completed rather than overwritten, and every
+     * replica ends up agreeing with the head.
+     *
      * @param offset The offset (global index) to fill.
      */
     @Override
     public void fillHole(long offset) {
-        int chainNum = (int) (offset % instance.getView().getSegments().get(0).getGroups().size());
+        List<IServerProtocol> chain = getChain(offset);
+        INewWriteOnceLogUnit head = (INewWriteOnceLogUnit) chain.get(0);
+        head.fillHole(offset);
+        head.readWait(offset, HOLE_FILL_TIMEOUT)
+                .thenCompose(r -> {
+                    if (r == null || chain.size() == 1) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    switch (r.getResult()) {
+                        case FILLED_HOLE:
+                            chain.subList(1, chain.size()).forEach(p -> ((INewWriteOnceLogUnit) p).fillHole(offset));
+                            return CompletableFuture.completedFuture(null);
+                        case DATA:
+                            log.trace("FillHole[{}]: Head has an entry, completing its write", offset);
+                            return copyChain(chain, 1, offset, r.getStreams(), r.getPayload());
+                        default:
+                            log.trace("FillHole[{}]: Head has {}, nothing to fill", offset, r.getResult());
+                            return CompletableFuture.completedFuture(null);
+                    }
+                })
+                .exceptionally(e -> {
+                    log.warn("FillHole[{}]: Error filling hole", offset, e);
+                    return null;
+                });
+    }
 
-        //Next, we perform the write. We must write to every replica in the chain, in sequence.
-        List<IServerProtocol> chain = instance.getView().getSegments().get(0).getGroups().get(chainNum);
-        for (IServerProtocol p : chain) {
-            INewWriteOnceLogUnit lu = (INewWriteOnceLogUnit) p;
-            lu.fillHole(offset);
+    /**
+     * Copy an entry down a chain, from the given replica to the tail, in order. Unlike writeChain, replicas
+     * which already have the entry are passed over, rather than ending the copy.
+     *
+     * @param chain     The chain to copy to, from head to tail.
+     * @param replica   The position in the chain of the replica to copy to next.
+     * @param offset    The offset (global index) of the entry.
+     * @param streams   The streams that the entry belongs to.
+     * @param payload   The payload of the entry.
+     * @return          A future which completes once the tail has the entry, or a replica refused it.
+     */
+    CompletableFuture<Void> copyChain(List<IServerProtocol> chain, int replica,
+                                      long offset, Set<UUID> streams, Object payload)
+    {
+        if (replica == chain.size())
+        {
+            return CompletableFuture.completedFuture(null);
         }
+        INewWriteOnceLogUnit lu = (INewWriteOnceLogUnit) chain.get(replica);
+        return lu.write(offset, streams, 0, payload)
+                .thenCompose(res -> {
+                    if (res != INewWriteOnceLogUnit.WriteResult.OK &&
+                            res != INewWriteOnceLogUnit.WriteResult.OVERWRITE) {
+                        log.warn("FillHole[{}]: Copy to replica {} failed: {}", offset, replica, res);
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    return copyChain(chain, replica + 1, offset, streams, payload);
+                });
     }
 
     /**
@@ -200,9 +661,8 @@ public class StreamAddressSpace implements IStreamAddressSpace {
      */
     @Override
     public void trim(UUID stream, long prefix) {
-        // iterate through every log unit in the system
-        // TODO: handle multiple segments.
-        for (List<IServerProtocol> chain  : instance.getView().getSegments().get(0).getGroups()) {
+        // iterate through every log unit of the segments which store any of the prefix
+        for (List<IServerProtocol> chain : getSegmentTable().getChainsUpTo(prefix)) {
             for (IServerProtocol p : chain) {
                 INewWriteOnceLogUnit lu = (INewWriteOnceLogUnit) p;
                 lu.trim(stream, prefix);
@@ -210,6 +670,50 @@ public class StreamAddressSpace implements IStreamAddressSpace {
         }
     }
 
+    /**
+     * Read a batch of indexes, all stored by the same chain, with one request. A batch which is entirely
+     * committed may be read from any replica of the chain; indexes which that replica does not have are read
+     * from the tail.
+     *
+     * @param batch The indexes (global offsets) to read, in ascending order.
+     * @return      A future which completes with the results of the reads, by index.
+     */
+    CompletableFuture<Map<Long, INewWriteOnceLogUnit.ReadResult>> readBatch(List<Long> batch)
+    {
+        long last = batch.get(batch.size() - 1);
+        int chainNumber = getChainNumber(last);
+        INewWriteOnceLogUnit tail = getTailUnit(last);
+        INewWriteOnceLogUnit lu = replicaReader.choose(getChain(last), chainNumber, getChainPosition(last));
+        return lu.readAll(batch)
+                .thenCompose(results -> {
+                    if (lu == tail) {
+                        results.forEach((index, r) -> {
+                            if (ReplicaReader.isFinal(r)) {
+                                replicaReader.committed(chainNumber, getChainPosition(index));
+                            }
+                        });
+                        return CompletableFuture.completedFuture(results);
+                    }
+                    List<Long> missing = new ArrayList<>();
+                    batch.forEach(index -> {
+                        if (!ReplicaReader.isAnswer(results.get(index))) {
+                            missing.add(index);
+                        }
+                    });
+                    replicaReader.getReplicaReads().addAndGet(batch.size() - missing.size());
+                    if (missing.isEmpty()) {
+                        return CompletableFuture.completedFuture(results);
+                    }
+                    log.trace("LoadAll: Replica did not have {} committed indexes, reading tail", missing.size());
+                    return tail.readAll(missing)
+                            .thenApply(tailResults -> {
+                                Map<Long, INewWriteOnceLogUnit.ReadResult> merged = new HashMap<>(results);
+                                merged.putAll(tailResults);
+                                return merged;
+                            });
+                });
+    }
+
     /**
      * Reset all caches.
      */
@@ -219,6 +723,8 @@ public class StreamAddressSpace implements IStreamAddressSpace {
         cache.synchronous().invalidateAll();
         log.info("Stream address space loading cache reset.");
         cache = buildCache();
+        prefetcher.reset();
+        replicaReader.reset();
     }
 
 
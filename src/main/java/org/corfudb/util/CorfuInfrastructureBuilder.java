@@ -27,6 +27,9 @@ public class CorfuInfrastructureBuilder {
 
     int configMasterPort;
 
+    /** Options appended to the server strings advertised to clients. */
+    String clientOptions = "";
+
     @SuppressWarnings("unchecked")
     public CorfuInfrastructureBuilder()
     {
@@ -56,6 +59,18 @@ public class CorfuInfrastructureBuilder {
 
     }
 
+    /**
+     * Advertise servers added after this call with the in-JVM local transport, so that clients in the same
+     * process connect to them without going through TCP. Protocols which do not support the local transport
+     * ignore the option.
+     * @return  This builder.
+     */
+    public CorfuInfrastructureBuilder useLocalTransport()
+    {
+        clientOptions = ",transport=local";
+        return this;
+    }
+
     /**
      * Add a sequencer to this configuration at the specified port.
      * @param port      The port this sequencer will serve on.
@@ -72,7 +87,7 @@ public class CorfuInfrastructureBuilder {
         Map<String, Object> configuration = baseParams == null ? new HashMap<>() : baseParams;
         configuration.put("port", port);
         serverList.add(server.getInstance(configuration));
-        ((LinkedList<String>)configMap.get("sequencers")).add(clientProtocol + "://localhost:" + port);
+        ((LinkedList<String>)configMap.get("sequencers")).add(clientProtocol + "://localhost:" + port + clientOptions);
         return this;
     }
 
@@ -99,7 +114,7 @@ public class CorfuInfrastructureBuilder {
             (((LinkedList<HashMap<String, Object>>)segmentMap.get(0).get("groups")).get(i)).put("nodes", new LinkedList<String>());
         }
 
-        ((LinkedList<String>)(((LinkedList<HashMap<String, Object>>)segmentMap.get(0).get("groups")).get(chain)).get("nodes")).add(clientProtocol + "://localhost:" + port);
+        ((LinkedList<String>)(((LinkedList<HashMap<String, Object>>)segmentMap.get(0).get("groups")).get(chain)).get("nodes")).add(clientProtocol + "://localhost:" + port + clientOptions);
         return this;
     }
 
@@ -0,0 +1,84 @@
+package org.corfudb.util;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Helpers for reading and writing unsigned variable length integers (LEB128) to byte buffers.
+ * Each byte carries 7 bits of the value, least significant group first, and the high bit of
+ * each byte is set if more bytes follow.
+ */
+public class Varint {
+
+    /** Get the number of bytes needed to encode a value.
+     *
+     * @param value     The value to encode, treated as unsigned.
+     * @return          The number of bytes (1-10) the encoded value occupies.
+     */
+    public static int varLongSize(long value)
+    {
+        int size = 1;
+        while ((value & ~0x7FL) != 0)
+        {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /** Write a value to the buffer.
+     *
+     * @param value     The value to write, treated as unsigned.
+     * @param buffer    The buffer to write to.
+     */
+    public static void writeVarLong(long value, ByteBuf buffer)
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            buffer.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.writeByte((int) value);
+    }
+
+    /** Read a value from the buffer.
+     *
+     * @param buffer    The buffer to read from.
+     * @return          The value read.
+     */
+    public static long readVarLong(ByteBuf buffer)
+    {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift > 63)
+            {
+                throw new IllegalArgumentException("Malformed varint in buffer!");
+            }
+            b = buffer.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /** Write a value to the buffer.
+     *
+     * @param value     The value to write, treated as unsigned.
+     * @param buffer    The buffer to write to.
+     */
+    public static void writeVarInt(int value, ByteBuf buffer)
+    {
+        writeVarLong(value & 0xFFFFFFFFL, buffer);
+    }
+
+    /** Read a value from the buffer.
+     *
+     * @param buffer    The buffer to read from.
+     * @return          The value read.
+     */
+    public static int readVarInt(ByteBuf buffer)
+    {
+        return (int) readVarLong(buffer);
+    }
+}
@@ -2,6 +2,7 @@ package org.corfudb.infrastructure;
 
 import io.netty.util.ResourceLeakDetector;
 import org.corfudb.runtime.CorfuDBRuntime;
+import org.corfudb.runtime.protocols.AbstractNettyProtocol;
 import org.corfudb.runtime.protocols.logunits.INewWriteOnceLogUnit;
 import org.corfudb.runtime.protocols.logunits.NettyLogUnitProtocol;
 import org.corfudb.runtime.protocols.sequencers.NettyStreamingSequencerProtocol;
@@ -16,13 +17,16 @@ import org.junit.rules.TestRule;
 import org.junit.rules.TestWatcher;
 import org.junit.runner.Description;
 
+import java.nio.channels.ClosedChannelException;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
 
 /**
  * Created by mwei on 9/10/15.
@@ -142,6 +146,256 @@ public class NettyLogUnitServerIT {
 
 
 
+    @Test
+    public void pooledConnectionsServeRequests()
+            throws Exception {
+        NettyLogUnitProtocol pooled =
+                new NettyLogUnitProtocol("localhost", port, Collections.singletonMap("connections", "4"), 0);
+        // Channels are registered with the handler asynchronously, after the connect completes.
+        for (int i = 0; i < 100 && pooled.getActiveConnections() < 4; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(pooled.getActiveConnections())
+                .isEqualTo(4);
+
+        UUID streamID = UUID.randomUUID();
+        List<CompletableFuture<INewWriteOnceLogUnit.WriteResult>> cfList = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            cfList.add(pooled.write(i, Collections.singleton(streamID), 0, i));
+        }
+        CompletableFuture.allOf(cfList.toArray(new CompletableFuture[cfList.size()])).join();
+        assertThat(cfList.stream()
+                .map(CompletableFuture::join)
+                .allMatch(wr -> wr == INewWriteOnceLogUnit.WriteResult.OK))
+                .isTrue();
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(pooled.read(i).join().getPayload())
+                    .isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void closedProtocolsStopReconnecting()
+            throws Exception {
+        NettyLogUnitProtocol pooled =
+                new NettyLogUnitProtocol("localhost", port, Collections.singletonMap("connections", "2"), 0);
+        assertThat(pooled.write(0, Collections.singleton(UUID.randomUUID()), 0, 0).join())
+                .isEqualTo(INewWriteOnceLogUnit.WriteResult.OK);
+
+        pooled.close();
+        // Give the reconnection backoff time to run, were it still scheduled.
+        Thread.sleep(500);
+        assertThat(pooled.getActiveConnections())
+                .isEqualTo(0);
+        assertThat(pooled.read(0).isCompletedExceptionally())
+                .isTrue();
+    }
+
+    @Test
+    public void requestsOnALostConnectionFail()
+            throws Exception {
+        // The read waits on the server, so no response arrives before the connection is lost.
+        CompletableFuture<INewWriteOnceLogUnit.ReadResult> waiting = proto.readWait(1000, 30_000);
+        Thread.sleep(100);
+        AbstractNettyProtocol<?> p = proto;
+        p.handler.channelList.get(0).close();
+        try {
+            waiting.get(5, TimeUnit.SECONDS);
+            fail("request on a lost connection completed");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause())
+                    .isInstanceOf(ClosedChannelException.class);
+        }
+    }
+
+    @Test
+    public void compactHeadersServeRequests()
+            throws Exception {
+        Map<String, String> options = new HashMap<>();
+        options.put("connections", "2");
+        options.put("compactHeader", "true");
+        NettyLogUnitProtocol compact =
+                new NettyLogUnitProtocol("localhost", port, options, 0);
+
+        UUID streamID = UUID.randomUUID();
+        for (int i = 0; i < 100; i++) {
+            assertThat(compact.write(i, Collections.singleton(streamID), 0, i).join())
+                    .isEqualTo(INewWriteOnceLogUnit.WriteResult.OK);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertThat(compact.read(i).join().getPayload())
+                    .isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void localTransportServesRequests()
+            throws Exception {
+        NettyLogUnitProtocol local =
+                new NettyLogUnitProtocol("localhost", port, Collections.singletonMap("transport", "local"), 0);
+        assertThat(local.isLocal())
+                .isTrue();
+        assertThat(local.ping())
+                .isTrue();
+
+        UUID streamID = UUID.randomUUID();
+        for (int i = 0; i < 100; i++) {
+            assertThat(local.write(i, Collections.singleton(streamID), 0, i).join())
+                    .isEqualTo(INewWriteOnceLogUnit.WriteResult.OK);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertThat(local.read(i).join().getPayload())
+                    .isEqualTo(i);
+            assertThat(proto.read(i).join().getPayload())
+                    .isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void requestsBeyondBudgetAreQueued()
+            throws Exception {
+        int throttledPort = RandomOpenPort.getOpenPort();
+        Map<String, Object> config = new HashMap<>();
+        config.put("maxOutstandingRequests", 2);
+        CorfuInfrastructureBuilder throttledInfrastructure =
+                CorfuInfrastructureBuilder.getBuilder()
+                        .addLoggingUnit(throttledPort, 0, NettyLogUnitServer.class, "nlu", config)
+                        .start(RandomOpenPort.getOpenPort());
+        try {
+            NettyLogUnitProtocol throttled =
+                    new NettyLogUnitProtocol("localhost", throttledPort, Collections.emptyMap(), 0);
+
+            UUID streamID = UUID.randomUUID();
+            List<CompletableFuture<INewWriteOnceLogUnit.WriteResult>> cfList = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                cfList.add(throttled.write(i, Collections.singleton(streamID), 0, i));
+            }
+            assertThat(cfList.stream()
+                    .map(CompletableFuture::join)
+                    .allMatch(wr -> wr == INewWriteOnceLogUnit.WriteResult.OK))
+                    .isTrue();
+            assertThat(throttled.getThrottledRequests())
+                    .isGreaterThan(0L);
+            assertThat(throttled.getQueuedRequests())
+                    .isEqualTo(0);
+        } finally {
+            throttledInfrastructure.shutdownAndWait();
+        }
+    }
+
+    @Test
+    public void largePayloadsAreChunked()
+            throws Exception {
+        Map<String, String> options = new HashMap<>();
+        options.put("chunkSize", "1024");
+        options.put("compactHeader", "true");
+        NettyLogUnitProtocol chunked =
+                new NettyLogUnitProtocol("localhost", port, options, 0);
+
+        UUID streamID = UUID.randomUUID();
+        byte[] large = new byte[1024 * 1024];
+        new Random(0).nextBytes(large);
+        CompletableFuture<INewWriteOnceLogUnit.WriteResult> largeWrite =
+                chunked.write(0, Collections.singleton(streamID), 0, large);
+        List<CompletableFuture<INewWriteOnceLogUnit.WriteResult>> cfList = new ArrayList<>();
+        for (int i = 1; i < 100; i++) {
+            cfList.add(chunked.write(i, Collections.singleton(streamID), 0, i));
+        }
+        assertThat(largeWrite.join())
+                .isEqualTo(INewWriteOnceLogUnit.WriteResult.OK);
+        assertThat(cfList.stream()
+                .map(CompletableFuture::join)
+                .allMatch(wr -> wr == INewWriteOnceLogUnit.WriteResult.OK))
+                .isTrue();
+
+        assertThat((byte[]) chunked.read(0).join().getPayload())
+                .isEqualTo(large);
+        assertThat((byte[]) proto.read(0).join().getPayload())
+                .isEqualTo(large);
+        for (int i = 1; i < 100; i++) {
+            assertThat(chunked.read(i).join().getPayload())
+                    .isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void readWaitReturnsOnceWritten()
+            throws Exception {
+        UUID streamID = UUID.randomUUID();
+        CompletableFuture<INewWriteOnceLogUnit.ReadResult> waiting = proto.readWait(0, 10_000);
+        CompletableFuture<INewWriteOnceLogUnit.ReadResult> filled = proto.readWait(1, 10_000);
+        Thread.sleep(100);
+        assertThat(waiting.isDone())
+                .isFalse();
+
+        assertThat(proto.write(0, Collections.singleton(streamID), 0, "Hello World").join())
+                .isEqualTo(INewWriteOnceLogUnit.WriteResult.OK);
+        proto.fillHole(1);
+
+        INewWriteOnceLogUnit.ReadResult rr = waiting.join();
+        assertThat(rr.getResult())
+                .isEqualTo(INewWriteOnceLogUnit.ReadResultType.DATA);
+        assertThat(rr.getPayload())
+                .isEqualTo("Hello World");
+        assertThat(filled.join().getResult())
+                .isEqualTo(INewWriteOnceLogUnit.ReadResultType.FILLED_HOLE);
+    }
+
+    @Test
+    public void readWaitTimesOutEmpty()
+            throws Exception {
+        assertThat(proto.readWait(0, 100).join().getResult())
+                .isEqualTo(INewWriteOnceLogUnit.ReadResultType.EMPTY);
+    }
+
+    @Test
+    public void payloadsAreDeserializedOnFirstAccess()
+            throws Exception {
+        UUID streamID = UUID.randomUUID();
+        proto.write(0, Collections.singleton(streamID), 0, "Hello World").join();
+        proto.write(1, Collections.singleton(streamID), 0, "Goodbye World").join();
+
+        INewWriteOnceLogUnit.ReadResult rr = proto.read(0).join();
+        assertThat(rr.getStreams())
+                .contains(streamID);
+        assertThat(rr.getSerializedSize())
+                .isGreaterThan(0);
+        assertThat(rr.getPayload())
+                .isEqualTo("Hello World");
+        rr.release();
+        assertThat(rr.getPayload())
+                .isEqualTo("Hello World");
+
+        INewWriteOnceLogUnit.ReadResult dropped = proto.read(1).join();
+        dropped.release();
+        assertThat(dropped.isReleased())
+                .isTrue();
+    }
+
+    @Test
+    public void multiReadReturnsEveryAddress()
+            throws Exception {
+        UUID streamID = UUID.randomUUID();
+        proto.write(0, Collections.singleton(streamID), 0, "Hello World").join();
+        proto.fillHole(1);
+        proto.write(2, Collections.singleton(streamID), 0, "Goodbye World").join();
+
+        Map<Long, INewWriteOnceLogUnit.ReadResult> results = proto.readAll(Arrays.asList(0L, 1L, 2L, 3L)).join();
+        assertThat(results)
+                .hasSize(4);
+        assertThat(results.get(0L).getPayload())
+                .isEqualTo("Hello World");
+        assertThat(results.get(0L).getStreams())
+                .contains(streamID);
+        assertThat(results.get(1L).getResult())
+                .isEqualTo(INewWriteOnceLogUnit.ReadResultType.FILLED_HOLE);
+        assertThat(results.get(2L).getPayload())
+                .isEqualTo("Goodbye World");
+        assertThat(results.get(3L).getResult())
+                .isEqualTo(INewWriteOnceLogUnit.ReadResultType.EMPTY);
+    }
+
     @After
     public void tearDown()
             throws Exception
@@ -0,0 +1,48 @@
+package org.corfudb.infrastructure.wireprotocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NettyCorfuChunkCodecTest {
+
+    static ByteBuf buffer(int size, int seed)
+    {
+        ByteBuf b = Unpooled.buffer(size);
+        for (int i = 0; i < size; i++) {
+            b.writeByte(i + seed);
+        }
+        return b;
+    }
+
+    @Test
+    public void largeMessagesAreChunkedAndReassembled()
+    {
+        EmbeddedChannel out = new EmbeddedChannel(new NettyCorfuChunkCodec(16, Integer.MAX_VALUE));
+        EmbeddedChannel in = new EmbeddedChannel(new NettyCorfuChunkCodec(16, Integer.MAX_VALUE));
+
+        out.write(buffer(40, 0));
+        out.writeAndFlush(buffer(8, 100));
+
+        int frames = 0;
+        ByteBuf frame;
+        while ((frame = (ByteBuf) out.readOutbound()) != null)
+        {
+            assertThat(frame.readableBytes())
+                    .isLessThanOrEqualTo(17);
+            in.writeInbound(frame);
+            frames++;
+        }
+        assertThat(frames)
+                .isEqualTo(4);
+
+        // Chunks are written as the previous chunk completes, which is immediate on an embedded channel.
+        assertThat((ByteBuf) in.readInbound())
+                .isEqualTo(buffer(40, 0));
+        assertThat((ByteBuf) in.readInbound())
+                .isEqualTo(buffer(8, 100));
+    }
+}
@@ -0,0 +1,65 @@
+package org.corfudb.infrastructure.wireprotocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NettyCorfuMessageCodecTest {
+
+    static NettyCorfuMsg ping(UUID clientID, long requestID, long epoch)
+    {
+        return new NettyCorfuMsg(clientID, requestID, epoch, NettyCorfuMsg.NettyCorfuMsgType.PING);
+    }
+
+    /** Write a message through the encoder, returning the size of the encoded message. */
+    static int transfer(EmbeddedChannel out, EmbeddedChannel in, NettyCorfuMsg msg)
+    {
+        out.writeOutbound(msg);
+        ByteBuf b = (ByteBuf) out.readOutbound();
+        int size = b.readableBytes();
+        in.writeInbound(b);
+        return size;
+    }
+
+    @Test
+    public void compactHeadersRoundTrip()
+    {
+        EmbeddedChannel out = new EmbeddedChannel(new NettyCorfuMessageEncoder());
+        EmbeddedChannel in = new EmbeddedChannel(new NettyCorfuMessageDecoder());
+        UUID clientID = UUID.randomUUID();
+
+        assertThat(transfer(out, in, ping(clientID, 0L, 5L)))
+                .isEqualTo(NettyCorfuMsg.HEADER_LENGTH);
+        assertThat(in.readInbound())
+                .isEqualTo(ping(clientID, 0L, 5L));
+
+        NettyCorfuMsg hello = new NettyCorfuHelloMsg(true);
+        hello.setClientID(clientID);
+        hello.setRequestID(1L);
+        hello.setEpoch(5L);
+        transfer(out, in, hello);
+        assertThat(((NettyCorfuHelloMsg) in.readInbound()).isCompactHeader())
+                .isTrue();
+
+        // Same epoch: type and a one byte request ID.
+        assertThat(transfer(out, in, ping(clientID, 2L, 5L)))
+                .isEqualTo(2);
+        assertThat(in.readInbound())
+                .isEqualTo(ping(clientID, 2L, 5L));
+
+        // Epoch changed: the epoch follows the request ID.
+        assertThat(transfer(out, in, ping(clientID, 300L, 6L)))
+                .isEqualTo(11);
+        assertThat(in.readInbound())
+                .isEqualTo(ping(clientID, 300L, 6L));
+
+        assertThat(transfer(out, in, ping(clientID, 301L, 6L)))
+                .isEqualTo(3);
+        assertThat(in.readInbound())
+                .isEqualTo(ping(clientID, 301L, 6L));
+    }
+}
@@ -4,7 +4,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.corfudb.infrastructure.NettyLogUnitServer;
 import org.corfudb.infrastructure.NettyStreamingSequencerServer;
 import org.corfudb.runtime.CorfuDBRuntime;
+import org.corfudb.runtime.exceptions.UnwrittenException;
 import org.corfudb.runtime.smr.*;
+import org.corfudb.runtime.smr.smrprotocol.LambdaSMRCommand;
 import org.corfudb.runtime.stream.IStream;
 import org.corfudb.runtime.stream.ITimestamp;
 import org.corfudb.runtime.view.*;
@@ -15,6 +17,13 @@ import org.junit.Test;
 import org.junit.experimental.ParallelComputer;
 import org.junit.runner.JUnitCore;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
@@ -78,6 +87,276 @@ public class CDBSimpleMapTest {
                 .isEqualTo(100);
     }
 
+    @Test
+    public void mapIsRestoredFromCheckpoint() throws Exception
+    {
+        for (int i = 0; i < 100; i++) {
+            testMap.put(i, i);
+        }
+        testMap.generateCheckpoint();
+        for (int i = 100; i < 105; i++) {
+            testMap.put(i, i);
+        }
+
+        ICorfuDBInstance instance2 = CorfuDBRuntime.createRuntime(infrastructure.getConfigString()).getLocalInstance();
+        CDBSimpleMap<Integer, Integer> testMap2 = instance2.openObject(streamID, CDBSimpleMap.class);
+        assertThat(((SimpleSMREngine) testMap2.getUnderlyingSMREngine()).getRestoredCheckpoint())
+                .isNotNull();
+        assertThat(testMap2.size())
+                .isEqualTo(105);
+        assertThat(testMap2.get(50))
+                .isEqualTo(50);
+        assertThat(testMap2.get(104))
+                .isEqualTo(104);
+    }
+
+    @Test
+    public void evictedMapsAreRebuiltWhenAccessed() throws Exception
+    {
+        Map<String, Object> options = new HashMap<>();
+        options.put("objectCacheSize", 2);
+        options.put("retireCheckpointEntries", 1);
+        LocalCorfuDBInstance bounded = (LocalCorfuDBInstance)
+                new CorfuDBRuntime(infrastructure.getConfigString(), options).getLocalInstance();
+        List<CDBSimpleMap<Integer, Integer>> maps = new ArrayList<>();
+        for (int m = 0; m < 5; m++) {
+            CDBSimpleMap<Integer, Integer> map = bounded.openObject(UUID.randomUUID(), CDBSimpleMap.class);
+            for (int i = 0; i < 10; i++) {
+                map.put(i, m * 100 + i);
+            }
+            maps.add(map);
+        }
+        bounded.getBaseEngineCache().cleanUp();
+        assertThat(bounded.getBaseEngineMap().size())
+                .isLessThanOrEqualTo(2);
+
+        for (int m = 0; m < 5; m++) {
+            assertThat(maps.get(m).size())
+                    .isEqualTo(10);
+            assertThat(maps.get(m).get(9))
+                    .isEqualTo(m * 100 + 9);
+            maps.get(m).put(10, m);
+            assertThat(maps.get(m).get(10))
+                    .isEqualTo(m);
+        }
+        // The evicted maps are checkpointed in the background.
+        for (int i = 0; i < 500 && bounded.getAutoCheckpointer().getCheckpoints().get() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(bounded.getAutoCheckpointer().getCheckpoints().get())
+                .isGreaterThan(0);
+    }
+
+    @Test
+    public void mapIsCheckpointedAutomatically() throws Exception
+    {
+        Map<String, Object> options = new HashMap<>();
+        options.put("checkpointEntries", 50);
+        options.put("checkpointInterval", 10);
+        ICorfuDBInstance checkpointed = new CorfuDBRuntime(infrastructure.getConfigString(), options)
+                .getLocalInstance();
+        UUID id = UUID.randomUUID();
+        CDBSimpleMap<Integer, Integer> map = checkpointed.openObject(id, CDBSimpleMap.class);
+        for (int i = 0; i < 60; i++) {
+            map.put(i, i);
+        }
+        SimpleSMREngine engine = (SimpleSMREngine) map.getUnderlyingSMREngine();
+        for (int i = 0; i < 500 && engine.getLastCheckpointPosition() == null; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(engine.getLastCheckpointPosition())
+                .isNotNull();
+        assertThat(engine.getEntriesSinceCheckpoint())
+                .isLessThan(50);
+
+        CDBSimpleMap<Integer, Integer> map2 = CorfuDBRuntime.createRuntime(infrastructure.getConfigString())
+                .getLocalInstance().openObject(id, CDBSimpleMap.class);
+        assertThat(((SimpleSMREngine) map2.getUnderlyingSMREngine()).getRestoredCheckpoint())
+                .isNotNull();
+        assertThat(map2.size())
+                .isEqualTo(60);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void drainedEnginesCompleteTheirProposals() throws Exception
+    {
+        SimpleSMREngine engine = (SimpleSMREngine) testMap.getUnderlyingSMREngine();
+        CompletableFuture<Object> completion = new CompletableFuture<>();
+        engine.proposeAsync(new LambdaSMRCommand<Map<Integer, Integer>, Object>(m -> m.put(1, 1)),
+                completion, false);
+        // Nothing syncs the engine, as when the instance drops it while its proposer waits.
+        engine.drain();
+        assertThat(completion.isDone())
+                .isTrue();
+        assertThat(testMap.get(1))
+                .isEqualTo(1);
+    }
+
+    @Test
+    public void unbatchedProposalsAreAllWritten() throws Exception
+    {
+        SimpleSMREngine engine = (SimpleSMREngine) testMap.getUnderlyingSMREngine();
+        engine.setProposalBatchSize(1);
+        engine.setProposalWriteWindow(4);
+        List<CompletableFuture<ITimestamp>> proposals = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            final int key = i;
+            proposals.add(engine.proposeAsync(
+                    new LambdaSMRCommand<Map<Integer, Integer>, Object>(m -> m.put(key, key)), null, false));
+        }
+        CompletableFuture.allOf(proposals.toArray(new CompletableFuture[0])).join();
+        assertThat(engine.getProposalEntries().get())
+                .isEqualTo(32);
+        assertThat(testMap.size())
+                .isEqualTo(32);
+    }
+
+    @Test
+    public void closedInstancesStopCheckpointing() throws Exception
+    {
+        CorfuDBRuntime closing = CorfuDBRuntime.createRuntime(infrastructure.getConfigString());
+        LocalCorfuDBInstance local = (LocalCorfuDBInstance) closing.getLocalInstance();
+        CDBSimpleMap<Integer, Integer> map = local.openObject(UUID.randomUUID(), CDBSimpleMap.class);
+        map.put(0, 0);
+        assertThat(local.getAutoCheckpointer().isClosed())
+                .isFalse();
+        closing.close();
+        assertThat(local.getAutoCheckpointer().isClosed())
+                .isTrue();
+    }
+
+    @Test
+    public void checkpointsInFlightAreWaitedFor() throws Exception
+    {
+        UUID id = UUID.randomUUID();
+        ICorfuDBInstance local = CorfuDBRuntime.createRuntime(infrastructure.getConfigString()).getLocalInstance();
+        CDBSimpleMap<Integer, Integer> map = local.openObject(id, CDBSimpleMap.class);
+        for (int i = 0; i < 10; i++) {
+            map.put(i, i);
+        }
+        SimpleSMREngine engine = (SimpleSMREngine) map.getUnderlyingSMREngine();
+        engine.checkpoint();
+
+        // A checkpoint of another client, whose write lands after its token is issued.
+        Set<UUID> streams = new HashSet<>(Arrays.asList(id, CheckpointIndex.getIndexStreamID(id)));
+        long token = local.getNewStreamingSequencer().nextToken(streams, 1);
+        SMRCheckpoint<Integer> inFlight = new SMRCheckpoint<>(engine.getLastCheckpointPosition(), 0);
+        CompletableFuture.runAsync(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ie) {
+                throw new RuntimeException(ie);
+            }
+            local.getStreamAddressSpace().write(token, streams, inFlight);
+        });
+        assertThat(CheckpointIndex.findLatest(local, id).getCheckpoint())
+                .isEqualTo(0);
+
+        // A checkpoint of a client which failed before writing it is not known, until another is written.
+        local.getNewStreamingSequencer().nextToken(streams, 1);
+        assertThatThrownBy(() -> CheckpointIndex.findLatest(local, id))
+                .isInstanceOf(UnwrittenException.class);
+        map.put(10, 10);
+        engine.checkpoint();
+        assertThat(CheckpointIndex.findLatest(local, id).getCheckpointPosition())
+                .isEqualTo(engine.getLastCheckpointPosition());
+
+        CDBSimpleMap<Integer, Integer> map2 = CorfuDBRuntime.createRuntime(infrastructure.getConfigString())
+                .getLocalInstance().openObject(id, CDBSimpleMap.class);
+        assertThat(((SimpleSMREngine) map2.getUnderlyingSMREngine()).getRestoredCheckpoint())
+                .isNotNull();
+        assertThat(map2.size())
+                .isEqualTo(11);
+    }
+
+    @Test
+    public void boundedStalenessReadsSkipTailChecks() throws Exception
+    {
+        UUID id = UUID.randomUUID();
+        CDBSimpleMap<Integer, Integer> map = CorfuDBRuntime.createRuntime(infrastructure.getConfigString())
+                .getLocalInstance().openObject(id, CDBSimpleMap.class);
+        CDBSimpleMap<Integer, Integer> other = CorfuDBRuntime.createRuntime(infrastructure.getConfigString())
+                .getLocalInstance().openObject(id, CDBSimpleMap.class);
+        map.setReadConsistency(ReadConsistency.BOUNDED_STALENESS, 60_000);
+        map.put(0, 10);
+        assertThat(map.get(0))
+                .isEqualTo(10);
+
+        SimpleSMREngine engine = (SimpleSMREngine) map.getUnderlyingSMREngine();
+        long checks = engine.getTailChecks().get();
+        other.put(1, 11);
+        for (int i = 0; i < 100; i++) {
+            assertThat(map.get(0))
+                    .isEqualTo(10);
+        }
+        assertThat(engine.getTailChecks().get())
+                .isEqualTo(checks);
+        assertThat(map.get(1))
+                .isNull();
+
+        map.put(2, 12);
+        assertThat(map.get(2))
+                .isEqualTo(12);
+        map.setReadConsistency(ReadConsistency.LINEARIZABLE, 0);
+        assertThat(map.get(1))
+                .isEqualTo(11);
+    }
+
+    @Test
+    public void coalescedReadsSeeCompletedWrites() throws Exception
+    {
+        UUID id = UUID.randomUUID();
+        CDBSimpleMap<Integer, Integer> map = CorfuDBRuntime.createRuntime(infrastructure.getConfigString())
+                .getLocalInstance().openObject(id, CDBSimpleMap.class);
+        CDBSimpleMap<Integer, Integer> other = CorfuDBRuntime.createRuntime(infrastructure.getConfigString())
+                .getLocalInstance().openObject(id, CDBSimpleMap.class);
+        map.setReadConsistency(ReadConsistency.COALESCED, 0);
+        ExecutorService readers = Executors.newFixedThreadPool(8);
+        try {
+            for (int i = 0; i < 50; i++) {
+                other.put(i, i);
+                final int key = i;
+                CompletableFuture<?>[] reads = new CompletableFuture<?>[8];
+                for (int j = 0; j < reads.length; j++) {
+                    reads[j] = CompletableFuture.runAsync(() ->
+                            assertThat(map.get(key)).isEqualTo(key), readers);
+                }
+                CompletableFuture.allOf(reads).get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            readers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void concurrentPutsAreBatched() throws Exception
+    {
+        CDBSimpleMap<Integer, Integer> map = instance.openObject(UUID.randomUUID(), CDBSimpleMap.class);
+        ExecutorService writers = Executors.newFixedThreadPool(8);
+        try {
+            CompletableFuture<?>[] puts = new CompletableFuture<?>[400];
+            for (int i = 0; i < puts.length; i++) {
+                final int key = i;
+                puts[i] = CompletableFuture.runAsync(() ->
+                        assertThat(map.put(key, key)).isNull(), writers);
+            }
+            CompletableFuture.allOf(puts).get(30, TimeUnit.SECONDS);
+        } finally {
+            writers.shutdownNow();
+        }
+        assertThat(map.size())
+                .isEqualTo(400);
+        assertThat(map.get(399))
+                .isEqualTo(399);
+
+        SimpleSMREngine engine = (SimpleSMREngine) map.getUnderlyingSMREngine();
+        assertThat(engine.getProposedCommands().get())
+                .isEqualTo(400);
+        assertThat(engine.getProposalEntries().get())
+                .isLessThan(400);
+    }
+
     @Test
     public void tokenBasedTest() throws Exception
     {
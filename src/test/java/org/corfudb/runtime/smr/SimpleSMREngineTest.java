@@ -1,13 +1,31 @@
 package org.corfudb.runtime.smr;
 
 import org.corfudb.runtime.CorfuDBRuntime;
+import org.corfudb.runtime.entries.IStreamEntry;
 import org.corfudb.runtime.protocols.configmasters.MemoryConfigMasterProtocol;
+import org.corfudb.runtime.smr.smrprotocol.LambdaSMRCommand;
+import org.corfudb.runtime.stream.IStream;
+import org.corfudb.runtime.stream.ITimestamp;
+import org.corfudb.runtime.stream.LogicalAsyncTimestamp;
 import org.corfudb.runtime.stream.NewStream;
 import org.corfudb.runtime.view.*;
+import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 /**
  * Created by mwei on 5/1/15.
@@ -67,4 +85,206 @@ public class SimpleSMREngineTest {
         assertThat(previous.get())
                 .isEqualTo(1);*/
     }
+
+    /** A stream which only orders logical timestamps, for feeding entries to an engine directly. */
+    static class OrderingStream implements IStream {
+        final UUID id = UUID.randomUUID();
+
+        @Override
+        public ITimestamp append(Object data) { throw new UnsupportedOperationException(); }
+
+        @Override
+        public IStreamEntry readNextEntry() { throw new UnsupportedOperationException(); }
+
+        @Override
+        public IStreamEntry readEntry(ITimestamp timestamp) { throw new UnsupportedOperationException(); }
+
+        @Override
+        public ITimestamp getNextTimestamp(ITimestamp ts) { return LogicalAsyncTimestamp.getNextTimestamp(ts); }
+
+        @Override
+        public ITimestamp getPreviousTimestamp(ITimestamp ts) { return LogicalAsyncTimestamp.getPreviousTimestamp(ts); }
+
+        @Override
+        public ITimestamp check(boolean cached) { throw new UnsupportedOperationException(); }
+
+        @Override
+        public ITimestamp getCurrentPosition() { return ITimestamp.getMinTimestamp(); }
+
+        @Override
+        public void trim(ITimestamp address) { }
+
+        @Override
+        public void close() { }
+
+        @Override
+        public UUID getStreamID() { return id; }
+
+        @Override
+        public ICorfuDBInstance getInstance() { return null; }
+    }
+
+    /** Build the entries of a batch, each of which appends its address to a list. */
+    static List<IStreamEntry> batch(long batch, int first, int count)
+    {
+        List<IStreamEntry> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            final int address = first + i;
+            IStreamEntry e = new IStreamAddressSpace.StreamAddressSpaceEntry<>(Collections.emptySet(),
+                    (long) address, IStreamAddressSpace.StreamAddressEntryCode.DATA,
+                    new LambdaSMRCommand<List<Integer>, Boolean>(l -> l.add(address)));
+            e.setLogicalTimestamp(new LogicalAsyncTimestamp(batch, i, i == count - 1 ? count : Long.MAX_VALUE));
+            entries.add(e);
+        }
+        return entries;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void batchesLearnedOutOfOrderAreAppliedInOrder()
+    {
+        SimpleSMREngine<ArrayList> smr = new SimpleSMREngine<>(new OrderingStream(), ArrayList.class);
+        batch(1, 3, 3).forEach(smr::learnAndApply);
+        assertThat(smr.getObject())
+                .isEmpty();
+        batch(0, 0, 3).forEach(smr::learnAndApply);
+        assertThat(smr.getObject())
+                .containsExactly(0, 1, 2, 3, 4, 5);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void batchesLearnedConcurrentlyAreAppliedInOrder() throws Exception
+    {
+        SimpleSMREngine<ArrayList> smr = new SimpleSMREngine<>(new OrderingStream(), ArrayList.class);
+        int batches = 16;
+        int batchSize = 100;
+        List<Integer> order = IntStream.range(0, batches).boxed().collect(Collectors.toList());
+        Collections.shuffle(order);
+        ExecutorService learners = Executors.newFixedThreadPool(8);
+        try {
+            CompletableFuture<?>[] learning = order.stream()
+                    .map(b -> CompletableFuture.runAsync(() ->
+                            batch(b, b * batchSize, batchSize).forEach(smr::learnAndApply), learners))
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(learning).get(30, TimeUnit.SECONDS);
+        } finally {
+            learners.shutdownNow();
+        }
+        smr.learned().get(30, TimeUnit.SECONDS);
+        assertThat(smr.getObject())
+                .isEqualTo(IntStream.range(0, batches * batchSize).boxed().collect(Collectors.toList()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void commandsWithDifferentConflictKeysAreAppliedInParallel()
+    {
+        SimpleSMREngine<ConcurrentHashMap> smr = new SimpleSMREngine<>(new OrderingStream(), ConcurrentHashMap.class);
+        int count = 1000;
+        List<IStreamEntry> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            final int seq = i;
+            // Every hundredth command has no conflict key, and records how many commands were applied before it.
+            LambdaSMRCommand<ConcurrentHashMap<Integer, List<Integer>>, Boolean> command = i % 100 == 99 ?
+                    new LambdaSMRCommand<>(m -> m.computeIfAbsent(-seq, k -> new ArrayList<>())
+                            .add(m.values().stream().mapToInt(List::size).sum())) :
+                    new LambdaSMRCommand<>(seq % 10, m -> m.computeIfAbsent(seq % 10, k -> new ArrayList<>())
+                            .add(seq));
+            IStreamEntry e = new IStreamAddressSpace.StreamAddressSpaceEntry<>(Collections.emptySet(),
+                    (long) i, IStreamAddressSpace.StreamAddressEntryCode.DATA, command);
+            e.setLogicalTimestamp(new LogicalAsyncTimestamp(0, i, i == count - 1 ? count : Long.MAX_VALUE));
+            entries.add(e);
+        }
+        // Learn the first entry last, so that the rest are applied as one run.
+        entries.subList(1, count).forEach(smr::learnAndApply);
+        smr.learnAndApply(entries.get(0));
+
+        assertThat(smr.getParallelCommands().get())
+                .isGreaterThan(0);
+        for (int key = 0; key < 10; key++)
+        {
+            final int k = key;
+            assertThat((List<Integer>) smr.getObject().get(key))
+                    .isEqualTo(IntStream.range(0, count).filter(i -> i % 100 != 99 && i % 10 == k)
+                            .boxed().collect(Collectors.toList()));
+        }
+        for (int i = 99; i < count; i += 100)
+        {
+            assertThat((List<Integer>) smr.getObject().get(-i))
+                    .containsExactly(i);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void commandsWhichThrowFailTheirCompletions() throws Exception
+    {
+        SimpleSMREngine<ConcurrentHashMap> smr = new SimpleSMREngine<>(new OrderingStream(), ConcurrentHashMap.class);
+        int count = 200;
+        List<IStreamEntry> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            final int seq = i;
+            // One keyed command, applied in parallel, and one command without a key, applied alone, throw.
+            LambdaSMRCommand<ConcurrentHashMap<Integer, Integer>, Integer> command = seq == 150 || seq == 175 ?
+                    new LambdaSMRCommand<>(seq == 150 ? seq % 10 : null, m -> { throw new IllegalStateException(); }) :
+                    new LambdaSMRCommand<>(seq % 10, m -> m.put(seq % 10, seq));
+            IStreamEntry e = new IStreamAddressSpace.StreamAddressSpaceEntry<>(Collections.emptySet(),
+                    (long) i, IStreamAddressSpace.StreamAddressEntryCode.DATA, command);
+            e.setLogicalTimestamp(new LogicalAsyncTimestamp(0, i, i == count - 1 ? count : Long.MAX_VALUE));
+            entries.add(e);
+        }
+        CompletableFuture<Integer> keyed = new CompletableFuture<>();
+        CompletableFuture<Integer> unkeyed = new CompletableFuture<>();
+        smr.completionTable.put(150, keyed);
+        smr.completionTable.put(175, unkeyed);
+        entries.subList(1, count).forEach(smr::learnAndApply);
+        smr.learnAndApply(entries.get(0));
+
+        assertThat(smr.getParallelCommands().get())
+                .isGreaterThan(0);
+        assertThatThrownBy(() -> keyed.get(30, TimeUnit.SECONDS))
+                .hasRootCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> unkeyed.get(30, TimeUnit.SECONDS))
+                .hasRootCauseInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void keyedCommandsMaySyncTheirOwnEngine() throws Exception
+    {
+        SimpleSMREngine<ConcurrentHashMap> smr = new SimpleSMREngine<>(new OrderingStream(), ConcurrentHashMap.class);
+        int count = 200;
+        List<IStreamEntry> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            final int seq = i;
+            // Every command waits for its own engine, as a mutator which syncs its object while applied does.
+            LambdaSMRCommand<ConcurrentHashMap<Integer, Integer>, Integer> command =
+                    new LambdaSMRCommand<>(seq % 10, m -> {
+                        try {
+                            smr.learned().get(30, TimeUnit.SECONDS);
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e);
+                        }
+                        return m.put(seq % 10, seq);
+                    });
+            IStreamEntry e = new IStreamAddressSpace.StreamAddressSpaceEntry<>(Collections.emptySet(),
+                    (long) i, IStreamAddressSpace.StreamAddressEntryCode.DATA, command);
+            e.setLogicalTimestamp(new LogicalAsyncTimestamp(0, i, i == count - 1 ? count : Long.MAX_VALUE));
+            entries.add(e);
+        }
+        CompletableFuture<Integer> last = new CompletableFuture<>();
+        smr.completionTable.put(count - 1, last);
+        entries.subList(1, count).forEach(smr::learnAndApply);
+        smr.learnAndApply(entries.get(0));
+
+        assertThat(smr.getParallelCommands().get())
+                .isGreaterThan(0);
+        assertThat(last.get(30, TimeUnit.SECONDS))
+                .isEqualTo(count - 11);
+    }
 }
@@ -1,33 +1,60 @@
 package org.corfudb.runtime.smr;
+import org.corfudb.infrastructure.NettyLogUnitServer;
+import org.corfudb.infrastructure.NettyStreamingSequencerServer;
 import org.corfudb.runtime.CorfuDBRuntime;
-import org.corfudb.runtime.protocols.configmasters.MemoryConfigMasterProtocol;
+import org.corfudb.runtime.exceptions.TrimmedException;
+import org.corfudb.runtime.smr.smrprotocol.LambdaSMRCommand;
 import org.corfudb.runtime.stream.IStream;
-import org.corfudb.runtime.view.ConfigurationMaster;
+import org.corfudb.runtime.stream.ITimestamp;
 import org.corfudb.runtime.view.ICorfuDBInstance;
+import org.corfudb.util.CorfuInfrastructureBuilder;
+import org.corfudb.util.RandomOpenPort;
+import org.junit.AfterClass;
 import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 /**
  * Created by mwei on 5/6/15.
  */
 public class TimeTravelSMREngineTest {
 
-    CorfuDBRuntime cdr;
-    ICorfuDBInstance instance;
+    static CorfuInfrastructureBuilder infrastructure;
+    static CorfuDBRuntime cdr;
+    static ICorfuDBInstance instance;
     IStream s;
 
+    @BeforeClass
+    public static void startInfrastructure()
+    {
+        infrastructure =
+                CorfuInfrastructureBuilder.getBuilder()
+                        .addSequencer(RandomOpenPort.getOpenPort(), NettyStreamingSequencerServer.class, "nsss", null)
+                        .addLoggingUnit(RandomOpenPort.getOpenPort(), 0, NettyLogUnitServer.class, "nlu", null)
+                        .start(RandomOpenPort.getOpenPort());
+        cdr = CorfuDBRuntime.getRuntime(infrastructure.getConfigString());
+        instance = cdr.getLocalInstance();
+    }
+
+    @AfterClass
+    public static void stopInfrastructure()
+    {
+        cdr.close();
+        infrastructure.shutdownAndWait();
+    }
+
     @Before
     public void createStream()
     {
-        MemoryConfigMasterProtocol.inMemoryClear();
-        cdr = CorfuDBRuntime.createRuntime("memory");
-        ConfigurationMaster cm = new ConfigurationMaster(cdr);
-        cm.resetAll();
-        instance = cdr.getLocalInstance();
         s = instance.openStream(UUID.randomUUID());
     }
 
@@ -101,4 +128,56 @@ public class TimeTravelSMREngineTest {
                 */
     }
 
+    @Test
+    public void travelReplaysFromTheNearestSnapshot() throws Exception
+    {
+        TimeTravelSMREngine<AtomicInteger> smr = new TimeTravelSMREngine<AtomicInteger>(s, AtomicInteger.class);
+        smr.setSnapshotInterval(4);
+        List<ITimestamp> proposals = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+        {
+            proposals.add(smr.propose(new LambdaSMRCommand<AtomicInteger, Integer>(AtomicInteger::incrementAndGet)));
+        }
+        smr.sync(null);
+        assertThat(smr.getObject().get())
+                .isEqualTo(20);
+
+        for (int i : new int[] {17, 2, 9, 19, 0})
+        {
+            long replayed = smr.getReplayedEntries().get();
+            smr.travelAndLock(proposals.get(i));
+            assertThat(smr.getObject().get())
+                    .isEqualTo(i + 1);
+            assertThat(smr.getReplayedEntries().get() - replayed)
+                    .isLessThan(4);
+        }
+
+        smr.unlock(null);
+        assertThat(smr.getObject().get())
+                .isEqualTo(20);
+    }
+
+    @Test
+    public void travelBeforeTheCheckpointOfARestoredEngineFails() throws Exception
+    {
+        TimeTravelSMREngine<AtomicInteger> smr = new TimeTravelSMREngine<AtomicInteger>(s, AtomicInteger.class);
+        List<ITimestamp> proposals = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+        {
+            proposals.add(smr.propose(new LambdaSMRCommand<AtomicInteger, Integer>(AtomicInteger::incrementAndGet)));
+        }
+        smr.sync(null);
+        smr.checkpoint();
+
+        TimeTravelSMREngine<AtomicInteger> restored = new TimeTravelSMREngine<AtomicInteger>(
+                instance.openStream(s.getStreamID(), EnumSet.of(ICorfuDBInstance.OpenStreamFlags.NON_CACHED)),
+                AtomicInteger.class);
+        assertThat(restored.restoreCheckpoint())
+                .isTrue();
+        restored.travelAndLock(proposals.get(9));
+        assertThat(restored.getObject().get())
+                .isEqualTo(10);
+        assertThatThrownBy(() -> restored.travelAndLock(proposals.get(2)))
+                .isInstanceOf(TrimmedException.class);
+    }
 }
@@ -0,0 +1,59 @@
+package org.corfudb.runtime.smr.smrprotocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BatchSMRCommandTest {
+
+    @Test
+    public void batchesAreLoggedWithEachCommand()
+    {
+        ByteBuf buffer = Unpooled.buffer();
+        new BatchSMRCommand<Object>(Arrays.asList(
+                new MethodTokenSMRCommand<>("put(java.lang.Object,java.lang.Object)", 1234, new Object[] {1, 2}),
+                new MethodTokenSMRCommand<>("remove(java.lang.Object)", -1, new Object[] {3})))
+                .serialize(buffer);
+
+        BatchSMRCommand read = (BatchSMRCommand) SMRCommand.deserialize(buffer);
+        assertThat(buffer.readableBytes())
+                .isEqualTo(0);
+        assertThat(read.getCommands())
+                .hasSize(2);
+        MethodTokenSMRCommand first = (MethodTokenSMRCommand) read.getCommands().get(0);
+        assertThat(first.getMethodId())
+                .isEqualTo(1234);
+        assertThat(first.getArguments())
+                .containsExactly(1, 2);
+        MethodTokenSMRCommand second = (MethodTokenSMRCommand) read.getCommands().get(1);
+        assertThat(second.getFunctionName())
+                .isEqualTo("remove(java.lang.Object)");
+        assertThat(second.getArguments())
+                .containsExactly(3);
+    }
+
+    @Test
+    public void eachCommandOfABatchHasItsOwnResult()
+    {
+        List<SMRCommand<List<Integer>,?>> commands = new ArrayList<>();
+        commands.add(new LambdaSMRCommand<List<Integer>, Boolean>(l -> l.add(1)));
+        commands.add(new LambdaSMRCommand<List<Integer>, Integer>(l -> l.get(5)));
+        commands.add(new LambdaSMRCommand<List<Integer>, Integer>(l -> l.size()));
+        List<Integer> state = new ArrayList<>();
+
+        Object[] results = new BatchSMRCommand<>(commands).execute(state, null, null);
+
+        assertThat(results[0])
+                .isEqualTo(true);
+        assertThat(results[1])
+                .isInstanceOf(BatchSMRCommand.Failure.class);
+        assertThat(results[2])
+                .isEqualTo(1);
+    }
+}
@@ -0,0 +1,47 @@
+package org.corfudb.runtime.smr.smrprotocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MethodTokenSMRCommandTest {
+
+    static final String TOKEN = "put(java.lang.Object,java.lang.Object)";
+
+    @Test
+    public void commandsWithMethodIdsAreLoggedCompactly()
+    {
+        ByteBuf byName = Unpooled.buffer();
+        new MethodTokenSMRCommand<>(TOKEN, -1, new Object[] {1, 2}).serialize(byName);
+        ByteBuf byId = Unpooled.buffer();
+        new MethodTokenSMRCommand<>(TOKEN, 1234, new Object[] {1, 2}).serialize(byId);
+
+        assertThat(byName.readableBytes() - byId.readableBytes())
+                .isGreaterThanOrEqualTo(TOKEN.length());
+
+        MethodTokenSMRCommand read = (MethodTokenSMRCommand) SMRCommand.deserialize(byId);
+        assertThat(read.getType())
+                .isEqualTo(SMRCommand.SMRCommandType.METHOD_ID);
+        assertThat(read.getMethodId())
+                .isEqualTo(1234);
+        assertThat(read.getArguments())
+                .containsExactly(1, 2);
+    }
+
+    @Test
+    public void commandsWithoutMethodIdsAreLoggedByName()
+    {
+        ByteBuf byName = Unpooled.buffer();
+        new MethodTokenSMRCommand<>(TOKEN, -1, new Object[] {1, 2}).serialize(byName);
+
+        MethodTokenSMRCommand read = (MethodTokenSMRCommand) SMRCommand.deserialize(byName);
+        assertThat(read.getType())
+                .isEqualTo(SMRCommand.SMRCommandType.METHOD_TOKEN);
+        assertThat(read.getFunctionName())
+                .isEqualTo(TOKEN);
+        assertThat(read.getMethodId())
+                .isEqualTo(-1);
+    }
+}
@@ -12,6 +12,9 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -65,6 +68,68 @@ public class NewStreamTest {
                 .isEqualTo(10);
     }
 
+    @Test
+    public void windowedReadDeliversInOrder()
+            throws Exception
+    {
+        NewStream ns = new NewStream(UUID.randomUUID(), instance);
+        int num = 100;
+        for (int i = 0; i < num; i++) {
+            ns.append(i);
+        }
+        List<IStreamEntry> entries = new ArrayList<>();
+        ns.readToAsync(new SimpleTimestamp(num), 4, entries::add)
+                .get();
+        assertThat(entries.size())
+                .isEqualTo(num);
+        ITimestamp previous = ITimestamp.getMinTimestamp();
+        for (int i = 0; i < num; i++) {
+            assertThat(entries.get(i).getPayload())
+                    .isEqualTo(i);
+            assertThat(entries.get(i).getLogicalTimestamp())
+                    .isEqualTo(ns.getNextTimestamp(previous));
+            previous = entries.get(i).getLogicalTimestamp();
+        }
+    }
+
+    @Test
+    public void subscribersShareAFollower()
+            throws Exception
+    {
+        UUID streamID = UUID.randomUUID();
+        NewStream ns = new NewStream(streamID, instance);
+        for (int i = 0; i < 10; i++) {
+            ns.append(i);
+        }
+        List<Object> first = Collections.synchronizedList(new ArrayList<>());
+        List<Object> second = Collections.synchronizedList(new ArrayList<>());
+        StreamFollower.Subscription s1 = ns.subscribe(ITimestamp.getMinTimestamp(), e -> first.add(e.getPayload()));
+        for (int i = 10; i < 20; i++) {
+            ns.append(i);
+        }
+        // The second subscriber catches up on what the follower has already published.
+        StreamFollower.Subscription s2 = new NewStream(streamID, instance)
+                .subscribe(ITimestamp.getMinTimestamp(), e -> second.add(e.getPayload()));
+        for (int i = 20; i < 30; i++) {
+            ns.append(i);
+        }
+        for (int i = 0; i < 500 && (first.size() < 30 || second.size() < 30); i++) {
+            Thread.sleep(10);
+        }
+        List<Object> expected = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            expected.add(i);
+        }
+        assertThat(first)
+                .isEqualTo(expected);
+        assertThat(second)
+                .isEqualTo(expected);
+        assertThat(instance.getStreamFollower(streamID).getPublishedTo())
+                .isGreaterThanOrEqualTo(30L);
+        s1.close();
+        s2.close();
+    }
+
    // @Test
     public void streamsAreIndependent()
             throws Exception
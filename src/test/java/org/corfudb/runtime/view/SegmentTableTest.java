@@ -0,0 +1,75 @@
+package org.corfudb.runtime.view;
+
+import org.corfudb.runtime.exceptions.OutOfSpaceException;
+import org.corfudb.runtime.protocols.IServerProtocol;
+import org.corfudb.runtime.protocols.replications.IReplicationProtocol;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SegmentTableTest {
+
+    static List<List<IServerProtocol>> chains(int count)
+    {
+        List<List<IServerProtocol>> groups = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            groups.add(new ArrayList<>(Collections.singletonList(null)));
+        }
+        return groups;
+    }
+
+    static CorfuDBViewSegment segment(long start, long sealed, List<List<IServerProtocol>> groups)
+    {
+        return new CorfuDBViewSegment(start, sealed, new IReplicationProtocol() {
+            @Override
+            public List<List<IServerProtocol>> getGroups() {
+                return groups;
+            }
+        });
+    }
+
+    @Test
+    public void addressesAreRoutedToTheSegmentWhichStoresThem()
+            throws Exception
+    {
+        List<List<IServerProtocol>> first = chains(2);
+        List<List<IServerProtocol>> second = chains(3);
+        SegmentTable t = new SegmentTable(null, Arrays.asList(segment(100, 0, second), segment(0, 100, first)));
+
+        assertThat(t.find(0)).isEqualTo(0);
+        assertThat(t.find(99)).isEqualTo(0);
+        assertThat(t.find(100)).isEqualTo(1);
+        assertThat(t.find(Long.MAX_VALUE - 1)).isEqualTo(1);
+
+        assertThat(t.getChain(0, 5)).isSameAs(first.get(1));
+        assertThat(t.getChainPosition(0, 5)).isEqualTo(2);
+        // Addresses are striped from the start of the segment, and chain numbers follow on from the first segment.
+        assertThat(t.getChain(1, 104)).isSameAs(second.get(1));
+        assertThat(t.getChainNumber(1, 104)).isEqualTo(3);
+        assertThat(t.getChainPosition(1, 104)).isEqualTo(1);
+
+        assertThat(t.getChainsUpTo(50)).hasSize(2);
+        assertThat(t.getChainsUpTo(100)).hasSize(5);
+    }
+
+    @Test
+    public void addressesOutsideEverySegmentAreNotRouted()
+    {
+        SegmentTable t = new SegmentTable(null, Arrays.asList(segment(10, 20, chains(1))));
+        for (long address : new long[] {0, 9, 20, 1000})
+        {
+            try {
+                t.find(address);
+                throw new AssertionError("Address " + address + " was routed");
+            } catch (OutOfSpaceException oose) {
+                assertThat(oose.address).isEqualTo(address);
+            }
+        }
+    }
+}
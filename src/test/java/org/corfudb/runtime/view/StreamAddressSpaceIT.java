@@ -3,6 +3,8 @@ package org.corfudb.runtime.view;
 import org.corfudb.infrastructure.NettyLogUnitServer;
 import org.corfudb.infrastructure.NettyStreamingSequencerServer;
 import org.corfudb.runtime.CorfuDBRuntime;
+import org.corfudb.runtime.protocols.logunits.INewWriteOnceLogUnit;
+import org.corfudb.runtime.protocols.logunits.NettyLogUnitProtocol;
 import org.corfudb.util.CorfuInfrastructureBuilder;
 import org.corfudb.util.RandomOpenPort;
 import org.junit.After;
@@ -11,8 +13,14 @@ import org.junit.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Created by mwei on 8/26/15.
@@ -105,6 +113,333 @@ public class StreamAddressSpaceIT {
        //         .isNull();  //TODO:: This test is broken until the reset all interface on the config master is restored.
     }
 
+    /** Ensure that the cache is bounded by the size of the entries it holds. */
+    @Test
+    public void cacheIsBoundedByWeight()
+            throws Exception
+    {
+        IStreamAddressSpace s = instance.getStreamAddressSpace();
+        UUID id = UUID.randomUUID();
+        for (int i = 0; i < 100; i++)
+        {
+            s.write(i, Collections.singleton(id), new byte[4096]);
+        }
+
+        Map<String, Object> configuration = new HashMap<>();
+        configuration.put("cacheMaximumWeight", 64 * 1024);
+        configuration.put("readAheadDepth", 0);
+        StreamAddressSpace small = new StreamAddressSpace(instance, configuration);
+        for (int i = 0; i < 100; i++)
+        {
+            assertThat((byte[]) small.read(i).getPayload())
+                    .hasSize(4096);
+        }
+        small.getCache().synchronous().cleanUp();
+
+        assertThat(small.getCacheStats().missCount())
+                .isEqualTo(100);
+        assertThat(small.getCacheStats().evictionCount())
+                .isGreaterThan(0);
+        assertThat(small.getCache().synchronous().estimatedSize())
+                .isLessThanOrEqualTo(16);
+    }
+
+    /** Ensure that entries cached by a write are weighed by the size they were written at. */
+    @Test
+    public void writtenEntriesAreWeighedBySize()
+            throws Exception
+    {
+        Map<String, Object> configuration = new HashMap<>();
+        configuration.put("cacheMaximumWeight", 64 * 1024);
+        StreamAddressSpace small = new StreamAddressSpace(instance, configuration);
+        UUID id = UUID.randomUUID();
+        for (int i = 0; i < 100; i++)
+        {
+            small.write(i, Collections.singleton(id), new byte[4096]);
+        }
+        assertThat(small.getCache().synchronous().getIfPresent(99L).getSerializedSize())
+                .isGreaterThanOrEqualTo(4096);
+        small.getCache().synchronous().cleanUp();
+
+        assertThat(small.getCache().synchronous().estimatedSize())
+                .isLessThanOrEqualTo(16);
+    }
+
+    /** Ensure that entries removed from the cache before their payload was read can still be read. */
+    @Test
+    public void removedEntriesStayReadable()
+            throws Exception
+    {
+        IStreamAddressSpace s = instance.getStreamAddressSpace();
+        UUID id = UUID.randomUUID();
+        for (int i = 0; i < 100; i++)
+        {
+            s.write(i, Collections.singleton(id), new byte[4096]);
+        }
+
+        Map<String, Object> configuration = new HashMap<>();
+        configuration.put("cacheMaximumWeight", 64 * 1024);
+        configuration.put("readAheadDepth", 0);
+        StreamAddressSpace small = new StreamAddressSpace(instance, configuration);
+        List<IStreamAddressSpace.StreamAddressSpaceEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+        {
+            entries.add(small.read(i));
+        }
+        small.getCache().synchronous().cleanUp();
+        small.getCache().synchronous().invalidateAll();
+
+        assertThat(small.getCacheStats().evictionCount())
+                .isGreaterThan(0);
+        for (IStreamAddressSpace.StreamAddressSpaceEntry e : entries)
+        {
+            assertThat((byte[]) e.getPayload())
+                    .hasSize(4096);
+        }
+        // The payloads of the removed entries were read again, rather than copied as they were removed.
+        assertThat(small.getCacheStats().missCount())
+                .isEqualTo(200);
+    }
+
+    /** Ensure that several offsets can be read at once. */
+    @Test
+    public void addressSpaceReadAll()
+            throws Exception
+    {
+        IStreamAddressSpace s = instance.getStreamAddressSpace();
+        UUID id = UUID.randomUUID();
+        for (int i = 0; i < 10; i++)
+        {
+            s.write(i, Collections.singleton(id), i);
+        }
+
+        StreamAddressSpace fresh = new StreamAddressSpace(instance);
+        Map<Long, IStreamAddressSpace.StreamAddressSpaceEntry> entries =
+                fresh.readAllAsync(Arrays.asList(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 1000L)).join();
+        assertThat(entries.get(1000L))
+                .isNull();
+        for (long i = 0; i < 10; i++)
+        {
+            assertThat(entries.get(i).getPayload())
+                    .isEqualTo((int) i);
+        }
+        assertThat(fresh.read(5).getPayload())
+                .isEqualTo(5);
+        assertThat(fresh.getCacheStats().hitCount())
+                .isEqualTo(1);
+    }
+
+    /** Ensure that sequential readers are read ahead of. */
+    @Test
+    public void sequentialReadsAreReadAhead()
+            throws Exception
+    {
+        IStreamAddressSpace s = instance.getStreamAddressSpace();
+        UUID id = UUID.randomUUID();
+        for (int i = 0; i < 200; i++)
+        {
+            s.write(i, Collections.singleton(id), i);
+        }
+
+        Map<String, Object> configuration = new HashMap<>();
+        configuration.put("readAheadDepth", 64);
+        StreamAddressSpace fresh = new StreamAddressSpace(instance, configuration);
+        for (int i = 0; i < 200; i++)
+        {
+            assertThat(fresh.read(i).getPayload())
+                    .isEqualTo(i);
+        }
+
+        assertThat(fresh.getPrefetcher().getPrefetched())
+                .isGreaterThan(0);
+        assertThat(fresh.getCacheStats().hitCount())
+                .isGreaterThan(100);
+    }
+
+    /** Ensure that writes reach every replica of a chain. */
+    @Test
+    public void writesAreChainReplicated()
+            throws Exception
+    {
+        int headPort = RandomOpenPort.getOpenPort();
+        int tailPort = RandomOpenPort.getOpenPort();
+        CorfuInfrastructureBuilder chained =
+                CorfuInfrastructureBuilder.getBuilder()
+                        .addSequencer(RandomOpenPort.getOpenPort(), NettyStreamingSequencerServer.class, "nsss", null)
+                        .addLoggingUnit(headPort, 0, NettyLogUnitServer.class, "nlu", null)
+                        .addLoggingUnit(tailPort, 0, NettyLogUnitServer.class, "nlu", null)
+                        .start(RandomOpenPort.getOpenPort());
+        try {
+            ICorfuDBInstance chainedInstance =
+                    CorfuDBRuntime.createRuntime(chained.getConfigString()).getLocalInstance();
+            Map<String, Object> configuration = new HashMap<>();
+            configuration.put("chainWriteWindow", 2);
+            StreamAddressSpace s = new StreamAddressSpace(chainedInstance, configuration);
+
+            UUID id = UUID.randomUUID();
+            List<CompletableFuture<IStreamAddressSpace.StreamAddressWriteResult>> writes = new ArrayList<>();
+            for (int i = 0; i < 20; i++)
+            {
+                writes.add(s.writeAsync(i, Collections.singleton(id), i));
+            }
+            for (CompletableFuture<IStreamAddressSpace.StreamAddressWriteResult> w : writes)
+            {
+                assertThat(w.join())
+                        .isEqualTo(IStreamAddressSpace.StreamAddressWriteResult.OK);
+            }
+
+            for (int port : new int[] {headPort, tailPort})
+            {
+                NettyLogUnitProtocol replica =
+                        new NettyLogUnitProtocol("localhost", port, Collections.emptyMap(), 0);
+                for (int i = 0; i < 20; i++)
+                {
+                    assertThat(replica.read(i).join().getPayload())
+                            .isEqualTo(i);
+                }
+            }
+            assertThat(s.writeAsync(0, Collections.singleton(id), 0).join())
+                    .isEqualTo(IStreamAddressSpace.StreamAddressWriteResult.OVERWRITE);
+        } finally {
+            chained.shutdownAndWait();
+        }
+    }
+
+    /** Ensure that holes are filled down a chain from the head, completing writes which only reached the head. */
+    @Test
+    public void holesAreFilledInChainOrder()
+            throws Exception
+    {
+        int headPort = RandomOpenPort.getOpenPort();
+        int tailPort = RandomOpenPort.getOpenPort();
+        CorfuInfrastructureBuilder chained =
+                CorfuInfrastructureBuilder.getBuilder()
+                        .addSequencer(RandomOpenPort.getOpenPort(), NettyStreamingSequencerServer.class, "nsss", null)
+                        .addLoggingUnit(headPort, 0, NettyLogUnitServer.class, "nlu", null)
+                        .addLoggingUnit(tailPort, 0, NettyLogUnitServer.class, "nlu", null)
+                        .start(RandomOpenPort.getOpenPort());
+        try {
+            ICorfuDBInstance chainedInstance =
+                    CorfuDBRuntime.createRuntime(chained.getConfigString()).getLocalInstance();
+            StreamAddressSpace s = new StreamAddressSpace(chainedInstance, Collections.emptyMap());
+            NettyLogUnitProtocol head = new NettyLogUnitProtocol("localhost", headPort, Collections.emptyMap(), 0);
+            NettyLogUnitProtocol tail = new NettyLogUnitProtocol("localhost", tailPort, Collections.emptyMap(), 0);
+
+            // A write which reached the head, but not the tail.
+            UUID id = UUID.randomUUID();
+            assertThat(head.write(0, Collections.singleton(id), 0, "partial").join())
+                    .isEqualTo(INewWriteOnceLogUnit.WriteResult.OK);
+            s.fillHole(0);
+            s.fillHole(1);
+
+            assertThat(tail.readWait(0, 5000).join().getPayload())
+                    .isEqualTo("partial");
+            for (NettyLogUnitProtocol replica : new NettyLogUnitProtocol[] {head, tail})
+            {
+                assertThat(replica.readWait(1, 5000).join().getResult())
+                        .isEqualTo(INewWriteOnceLogUnit.ReadResultType.FILLED_HOLE);
+            }
+        } finally {
+            chained.shutdownAndWait();
+        }
+    }
+
+    /** Ensure that a write completed down the chain by a hole fill while it is in flight still succeeds. */
+    @Test
+    public void writesCompletedByHoleFillSucceed()
+            throws Exception
+    {
+        int headPort = RandomOpenPort.getOpenPort();
+        int tailPort = RandomOpenPort.getOpenPort();
+        CorfuInfrastructureBuilder chained =
+                CorfuInfrastructureBuilder.getBuilder()
+                        .addSequencer(RandomOpenPort.getOpenPort(), NettyStreamingSequencerServer.class, "nsss", null)
+                        .addLoggingUnit(headPort, 0, NettyLogUnitServer.class, "nlu", null)
+                        .addLoggingUnit(tailPort, 0, NettyLogUnitServer.class, "nlu", null)
+                        .start(RandomOpenPort.getOpenPort());
+        try {
+            ICorfuDBInstance chainedInstance =
+                    CorfuDBRuntime.createRuntime(chained.getConfigString()).getLocalInstance();
+            StreamAddressSpace s = new StreamAddressSpace(chainedInstance, Collections.emptyMap());
+            NettyLogUnitProtocol head = new NettyLogUnitProtocol("localhost", headPort, Collections.emptyMap(), 0);
+            NettyLogUnitProtocol tail = new NettyLogUnitProtocol("localhost", tailPort, Collections.emptyMap(), 0);
+
+            // The writer has reached the head, and a reader fills the hole before it reaches the tail.
+            UUID id = UUID.randomUUID();
+            assertThat(s.writeChain(s.getChain(0), 0, 0, Collections.singleton(id), "first", size -> {}).join())
+                    .isEqualTo(INewWriteOnceLogUnit.WriteResult.OK);
+            assertThat(head.write(1, Collections.singleton(id), 0, "raced").join())
+                    .isEqualTo(INewWriteOnceLogUnit.WriteResult.OK);
+            s.fillHole(1);
+            assertThat(tail.readWait(1, 5000).join().getPayload())
+                    .isEqualTo("raced");
+
+            assertThat(s.writeChain(s.getChain(1), 1, 1, Collections.singleton(id), "raced", size -> {}).join())
+                    .isEqualTo(INewWriteOnceLogUnit.WriteResult.OK);
+            // An overwrite at the head still loses the offset.
+            assertThat(s.writeAsync(1, Collections.singleton(id), "other").join())
+                    .isEqualTo(IStreamAddressSpace.StreamAddressWriteResult.OVERWRITE);
+        } finally {
+            chained.shutdownAndWait();
+        }
+    }
+
+    /** Ensure that committed entries are read from every replica of a chain, and read correctly. */
+    @Test
+    public void committedReadsAreSpreadAcrossReplicas()
+            throws Exception
+    {
+        CorfuInfrastructureBuilder chained =
+                CorfuInfrastructureBuilder.getBuilder()
+                        .addSequencer(RandomOpenPort.getOpenPort(), NettyStreamingSequencerServer.class, "nsss", null)
+                        .addLoggingUnit(RandomOpenPort.getOpenPort(), 0, NettyLogUnitServer.class, "nlu", null)
+                        .addLoggingUnit(RandomOpenPort.getOpenPort(), 0, NettyLogUnitServer.class, "nlu", null)
+                        .start(RandomOpenPort.getOpenPort());
+        try {
+            ICorfuDBInstance chainedInstance =
+                    CorfuDBRuntime.createRuntime(chained.getConfigString()).getLocalInstance();
+            Map<String, Object> configuration = new HashMap<>();
+            configuration.put("replicaReads", true);
+            configuration.put("readAheadDepth", 0);
+            StreamAddressSpace s = new StreamAddressSpace(chainedInstance, configuration);
+
+            UUID id = UUID.randomUUID();
+            for (int i = 0; i < 20; i++)
+            {
+                s.write(i, Collections.singleton(id), i);
+            }
+            // Nothing beyond what was written is committed, so it is read from the tail.
+            assertThat(s.getReplicaReader().isCommitted(0, 20))
+                    .isFalse();
+            assertThat(s.getReplicaReader().isCommitted(0, 19))
+                    .isTrue();
+
+            s.getCache().synchronous().invalidateAll();
+            for (int i = 0; i < 20; i++)
+            {
+                assertThat(s.read(i).getPayload())
+                        .isEqualTo(i);
+            }
+            assertThat(s.getReplicaReader().getReplicaReads().get())
+                    .isGreaterThan(0);
+
+            s.getCache().synchronous().invalidateAll();
+            List<Long> offsets = new ArrayList<>();
+            for (long i = 0; i < 20; i++)
+            {
+                offsets.add(i);
+            }
+            Map<Long, IStreamAddressSpace.StreamAddressSpaceEntry> entries = s.readAllAsync(offsets).join();
+            for (long i = 0; i < 20; i++)
+            {
+                assertThat(entries.get(i).getPayload())
+                        .isEqualTo((int) i);
+            }
+        } finally {
+            chained.shutdownAndWait();
+        }
+    }
+
     @After
     public void tearDown()
     {